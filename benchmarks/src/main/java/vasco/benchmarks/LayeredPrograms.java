@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import vasco.synthetic.SyntheticMethod;
+import vasco.synthetic.SyntheticNode;
+import vasco.synthetic.SyntheticProgram;
+
+/**
+ * A factory of synthetic programs whose methods are arranged in levels.
+ *
+ * <p>
+ * The entry point <tt>main</tt> is the only method at level 0, and each of
+ * the levels from 1 to <tt>depth</tt> contains <tt>fanOut</tt> methods. The
+ * body of every method is a loop containing two call sites: a virtual call
+ * which resolves to all methods of the next level, and a static call to one
+ * method of the next level. Methods at the last level make no calls, unless
+ * the program is <tt>recursive</tt>, in which case their virtual call
+ * resolves to the methods of level 1, so that all methods but <tt>main</tt>
+ * form a single strongly connected component.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+public class LayeredPrograms {
+
+	/** The number of nodes in the body of each method. */
+	private static final int BODY_SIZE = 6;
+
+	/** The position of the virtual call in the body of a method. */
+	private static final int VIRTUAL_CALL = 1;
+
+	/** The position of the static call in the body of a method. */
+	private static final int STATIC_CALL = 3;
+
+	/** The position of the node which closes the loop in the body of a method. */
+	private static final int LOOP_END = 4;
+
+	/**
+	 * Creates a layered program.
+	 *
+	 * @param depth     the length of the longest chain of calls from <tt>main</tt>
+	 * @param fanOut    the number of methods at each level below <tt>main</tt>,
+	 *                  and hence the number of targets of each virtual call
+	 * @param recursive whether the methods at the last level call back into the
+	 *                  first level
+	 * @return a new synthetic program
+	 */
+	public static SyntheticProgram create(int depth, int fanOut, boolean recursive) {
+		if (depth < 0 || fanOut < 1) {
+			throw new IllegalArgumentException("depth must be non-negative and fanOut must be positive");
+		}
+		SyntheticProgram program = new SyntheticProgram();
+
+		// Create the methods of each level
+		List<List<SyntheticMethod>> levels = new ArrayList<List<SyntheticMethod>>(depth + 1);
+		List<SyntheticMethod> top = new ArrayList<SyntheticMethod>(1);
+		top.add(program.newMethod("main"));
+		levels.add(top);
+		for (int level = 1; level <= depth; level++) {
+			List<SyntheticMethod> methods = new ArrayList<SyntheticMethod>(fanOut);
+			for (int i = 0; i < fanOut; i++) {
+				methods.add(program.newMethod("m" + level + "_" + i));
+			}
+			levels.add(methods);
+		}
+		program.addEntryPoint(top.get(0));
+
+		// Create the method bodies, with calls into the next level
+		for (int level = 0; level <= depth; level++) {
+			List<SyntheticMethod> methods = levels.get(level);
+			List<SyntheticMethod> next = null;
+			if (level < depth) {
+				next = levels.get(level + 1);
+			} else if (recursive && depth > 0) {
+				next = levels.get(1);
+			}
+			for (int i = 0; i < methods.size(); i++) {
+				List<SyntheticNode> nodes = buildBody(methods.get(i));
+				if (next != null) {
+					nodes.get(VIRTUAL_CALL).setTargets(next);
+					if (level < depth) {
+						List<SyntheticMethod> target = new ArrayList<SyntheticMethod>(1);
+						target.add(next.get(i % next.size()));
+						nodes.get(STATIC_CALL).setTargets(target);
+					}
+				}
+			}
+		}
+		return program;
+	}
+
+	// Creates the nodes of a method body, which is a loop around the call sites
+	private static List<SyntheticNode> buildBody(SyntheticMethod method) {
+		List<SyntheticNode> nodes = new ArrayList<SyntheticNode>(BODY_SIZE);
+		for (int i = 0; i < BODY_SIZE; i++) {
+			nodes.add(method.newNode());
+		}
+		for (int i = 0; i + 1 < BODY_SIZE; i++) {
+			method.addEdge(nodes.get(i), nodes.get(i + 1));
+		}
+		method.addEdge(nodes.get(LOOP_END), nodes.get(VIRTUAL_CALL));
+		return nodes;
+	}
+
+	private LayeredPrograms() {
+	}
+
+}
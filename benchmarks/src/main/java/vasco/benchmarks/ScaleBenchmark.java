@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vasco.InterProceduralAnalysis;
+import vasco.synthetic.BackwardCountdownAnalysis;
+import vasco.synthetic.CountdownLattice;
+import vasco.synthetic.ForwardCountdownAnalysis;
+import vasco.synthetic.SyntheticMethod;
+import vasco.synthetic.SyntheticNode;
+import vasco.synthetic.SyntheticProgram;
+import vasco.synthetic.SyntheticProgramGenerator;
+
+/**
+ * Benchmarks of the work-list solvers over large generated programs, to
+ * find how their running time scales with the size of the program.
+ *
+ * <p>
+ * Programs are created by a {@link SyntheticProgramGenerator} with a fixed
+ * seed and the default shape of control-flow graphs, which averages about a
+ * dozen nodes per method. As a single analysis of the largest programs takes
+ * seconds, each measurement is a single run of a solver.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScaleBenchmark {
+
+	/** The number of methods in the program. */
+	@Param({"1000", "10000", "100000"})
+	public int methodCount;
+
+	/** The maximum number of targets of each call. */
+	@Param({"1", "4"})
+	public int fanOut;
+
+	/** The number of methods in each recursive strongly connected component. */
+	@Param({"1", "16"})
+	public int sccSize;
+
+	/** The height of the lattice of data flow values. */
+	@Param({"4"})
+	public int latticeHeight;
+
+	private SyntheticProgram program;
+
+	private CountdownLattice lattice;
+
+	@Setup
+	public void setUp() {
+		SyntheticProgramGenerator generator = new SyntheticProgramGenerator();
+		generator.setMethodCount(methodCount);
+		generator.setFanOut(fanOut);
+		generator.setSccSize(sccSize);
+		program = generator.generate();
+		lattice = new CountdownLattice(latticeHeight);
+	}
+
+	@Benchmark
+	public InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> forward() {
+		ForwardCountdownAnalysis analysis = new ForwardCountdownAnalysis(program, lattice);
+		analysis.doAnalysis();
+		return analysis;
+	}
+
+	@Benchmark
+	public InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> backward() {
+		BackwardCountdownAnalysis analysis = new BackwardCountdownAnalysis(program, lattice);
+		analysis.doAnalysis();
+		return analysis;
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vasco.InterProceduralAnalysis;
+import vasco.synthetic.BackwardCountdownAnalysis;
+import vasco.synthetic.CountdownLattice;
+import vasco.synthetic.ForwardCountdownAnalysis;
+import vasco.synthetic.OldForwardCountdownAnalysis;
+import vasco.synthetic.SyntheticMethod;
+import vasco.synthetic.SyntheticNode;
+import vasco.synthetic.SyntheticProgram;
+
+/**
+ * Benchmarks of the inter-procedural solvers over synthetic programs.
+ *
+ * <p>
+ * Each benchmark runs one solver to completion on a program created by
+ * {@link LayeredPrograms} using a {@link CountdownLattice}. The shape of the
+ * program and the height of the lattice, which bounds both the number of
+ * iterations of each loop and the number of value contexts of each method,
+ * are benchmark parameters.
+ * </p>
+ *
+ * <p>
+ * After <tt>mvn package</tt>, run the benchmarks with
+ * <tt>java -jar target/benchmarks.jar</tt>. Allocation rates are reported
+ * when the option <tt>-prof gc</tt> is added.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+	/** The length of the longest chain of calls from the entry point. */
+	@Param({"2", "6"})
+	public int depth;
+
+	/** The number of targets of each virtual call. */
+	@Param({"2", "4"})
+	public int fanOut;
+
+	/** Whether the deepest methods call back into the shallowest ones. */
+	@Param({"false", "true"})
+	public boolean recursive;
+
+	/** The height of the lattice of data flow values. */
+	@Param({"4", "16"})
+	public int latticeHeight;
+
+	private SyntheticProgram program;
+
+	private CountdownLattice lattice;
+
+	@Setup
+	public void setUp() {
+		program = LayeredPrograms.create(depth, fanOut, recursive);
+		lattice = new CountdownLattice(latticeHeight);
+	}
+
+	@Benchmark
+	public InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> forward() {
+		return run(new ForwardCountdownAnalysis(program, lattice));
+	}
+
+	@Benchmark
+	public InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> backward() {
+		return run(new BackwardCountdownAnalysis(program, lattice));
+	}
+
+	@Benchmark
+	public InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> oldForward() {
+		return run(new OldForwardCountdownAnalysis(program, lattice));
+	}
+
+	// Runs an analysis, returning it so that its results are not optimised away
+	private static InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> run(InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> analysis) {
+		analysis.doAnalysis();
+		return analysis;
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+/**
+ * A listener of the progress of an {@link InterProceduralAnalysis}.
+ *
+ * <p>
+ * Listeners are registered with {@link InterProceduralAnalysis#addListener(AnalysisListener)}.
+ * When no listener is registered, the solvers do not gather any of the
+ * information reported here. Listeners of an analysis using a parallel solver
+ * may be notified concurrently from several threads.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ * @see AnalysisMetrics
+ *
+ * @param <M> the type of a method
+ * @param <N> the type of a node in the CFG
+ * @param <A> the type of a data flow value
+ */
+public interface AnalysisListener<M,N,A> {
+
+	/**
+	 * Notifies that a new value context has been created.
+	 *
+	 * @param context the new value context
+	 */
+	public void contextCreated(Context<M,N,A> context);
+
+	/**
+	 * Notifies that a value context has been looked up.
+	 *
+	 * @param method the method whose context was looked up
+	 * @param hit    <tt>true</tt> if a context with the given value existed
+	 */
+	public void contextLookedUp(M method, boolean hit);
+
+	/**
+	 * Notifies that a node has been processed by the flow functions.
+	 *
+	 * @param context     the value context of the node
+	 * @param node        the node which was processed
+	 * @param invocations the number of flow functions invoked for the node
+	 * @param nanos       the time spent computing the result of the node, in nanoseconds
+	 */
+	public void nodeProcessed(Context<M,N,A> context, N node, int invocations, long nanos);
+
+	/**
+	 * Notifies that a context has been added to the work-list of contexts.
+	 *
+	 * @param size the number of contexts on the work-list
+	 */
+	public void workListGrown(int size);
+
+	/**
+	 * Notifies that the data flow values of a context's nodes have been
+	 * released.
+	 *
+	 * @param context the value context whose memory was freed
+	 * @param nodes   the number of nodes whose values were released
+	 */
+	public void contextFreed(Context<M,N,A> context, int nodes);
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link AnalysisListener} which aggregates counters about an analysis.
+ *
+ * <p>
+ * The counters may be polled while the analysis is running, and are
+ * exported by {@link #snapshot()} as a map from counter names to values.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ * @param <M> the type of a method
+ * @param <N> the type of a node in the CFG
+ * @param <A> the type of a data flow value
+ */
+public class AnalysisMetrics<M,N,A> implements AnalysisListener<M,N,A> {
+
+	private final AtomicLong contextsCreated = new AtomicLong();
+	private final AtomicLong contextHits = new AtomicLong();
+	private final AtomicLong contextMisses = new AtomicLong();
+	private final AtomicLong nodesProcessed = new AtomicLong();
+	private final AtomicLong flowFunctionInvocations = new AtomicLong();
+	private final AtomicLong flowFunctionNanos = new AtomicLong();
+	private final AtomicLong workListHighWaterMark = new AtomicLong();
+	private final AtomicLong contextsFreed = new AtomicLong();
+	private final AtomicLong nodesFreed = new AtomicLong();
+
+	@Override
+	public void contextCreated(Context<M,N,A> context) {
+		contextsCreated.incrementAndGet();
+	}
+
+	@Override
+	public void contextLookedUp(M method, boolean hit) {
+		if (hit) {
+			contextHits.incrementAndGet();
+		} else {
+			contextMisses.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void nodeProcessed(Context<M,N,A> context, N node, int invocations, long nanos) {
+		nodesProcessed.incrementAndGet();
+		flowFunctionInvocations.addAndGet(invocations);
+		flowFunctionNanos.addAndGet(nanos);
+	}
+
+	@Override
+	public void workListGrown(int size) {
+		long max = workListHighWaterMark.get();
+		while (size > max && !workListHighWaterMark.compareAndSet(max, size)) {
+			max = workListHighWaterMark.get();
+		}
+	}
+
+	@Override
+	public void contextFreed(Context<M,N,A> context, int nodes) {
+		contextsFreed.incrementAndGet();
+		nodesFreed.addAndGet(nodes);
+	}
+
+	/** Returns the number of value contexts created. */
+	public long getContextsCreated() {
+		return contextsCreated.get();
+	}
+
+	/** Returns the number of look-ups which found an existing context. */
+	public long getContextHits() {
+		return contextHits.get();
+	}
+
+	/** Returns the number of look-ups which did not find an existing context. */
+	public long getContextMisses() {
+		return contextMisses.get();
+	}
+
+	/** Returns the number of nodes processed. */
+	public long getNodesProcessed() {
+		return nodesProcessed.get();
+	}
+
+	/** Returns the number of flow functions invoked. */
+	public long getFlowFunctionInvocations() {
+		return flowFunctionInvocations.get();
+	}
+
+	/** Returns the total time spent computing the results of nodes, in nanoseconds. */
+	public long getFlowFunctionNanos() {
+		return flowFunctionNanos.get();
+	}
+
+	/** Returns the largest number of contexts that were on the work-list at once. */
+	public long getWorkListHighWaterMark() {
+		return workListHighWaterMark.get();
+	}
+
+	/** Returns the number of contexts whose node-level values were released. */
+	public long getContextsFreed() {
+		return contextsFreed.get();
+	}
+
+	/** Returns the number of nodes whose values were released. */
+	public long getNodesFreed() {
+		return nodesFreed.get();
+	}
+
+	/** Resets all counters to zero. */
+	public void reset() {
+		contextsCreated.set(0);
+		contextHits.set(0);
+		contextMisses.set(0);
+		nodesProcessed.set(0);
+		flowFunctionInvocations.set(0);
+		flowFunctionNanos.set(0);
+		workListHighWaterMark.set(0);
+		contextsFreed.set(0);
+		nodesFreed.set(0);
+	}
+
+	/**
+	 * Returns the current values of all counters.
+	 *
+	 * @return a map from counter names to their values, in a fixed order
+	 */
+	public Map<String,Long> snapshot() {
+		Map<String,Long> counters = new LinkedHashMap<String,Long>();
+		counters.put("contextsCreated", getContextsCreated());
+		counters.put("contextHits", getContextHits());
+		counters.put("contextMisses", getContextMisses());
+		counters.put("nodesProcessed", getNodesProcessed());
+		counters.put("flowFunctionInvocations", getFlowFunctionInvocations());
+		counters.put("flowFunctionNanos", getFlowFunctionNanos());
+		counters.put("workListHighWaterMark", getWorkListHighWaterMark());
+		counters.put("contextsFreed", getContextsFreed());
+		counters.put("nodesFreed", getNodesFreed());
+		return counters;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+}
@@ -17,7 +17,6 @@
  */
 package vasco;
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
@@ -57,9 +56,16 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 	@Override
 	public void doAnalysis() {
 
-		// Initial contexts
+		// Initial contexts (unless retained from a previous analysis)
 		for (M method : programRepresentation().getEntryPoints()) {
-			initContext(method, boundaryValue(method));
+			if (entryContexts.containsKey(method) == false) {
+				A boundaryValue = boundaryValue(method);
+				Context<M,N,A> context = getContext(method, boundaryValue);
+				if (context == null) {
+					context = initContext(method, boundaryValue);
+				}
+				entryContexts.put(method, context);
+			}
 		}
 
 		// Perform work-list based analysis
@@ -75,34 +81,48 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 
 
 			// Remove the next node to process from the context's work-list
-			N node = currentContext.getBackwardWorkList().pollFirst();
+			int index = currentContext.getBackwardWorkList().pollFirstIndex();
+			NodeNumbering<N> numbering = currentContext.getNodeNumbering();
+
+			// Apply a pending widening of the context, if any
+			A widenedValue = currentContext.takeWidenedValue();
+			if (widenedValue != null) {
+				applyWidening(currentContext, widenedValue);
+			}
+
+			if (index >= 0) {
+				N node = numbering.getNode(index);
 
-			if (node != null) {
 				// Compute the OUT data flow value (only for non-exit units).
-				List<N> successors = currentContext.getControlFlowGraph().getSuccsOf(node);
-				if (successors.size() != 0) {
+				int[] successors = numbering.getSuccessors(index);
+				if (successors.length != 0) {
 					// Initialise to the TOP value
 					A out = topValue();					
 					// Merge IN values of all successors
-					for (N succ : successors) {
+					for (int succ : successors) {
 						A succIn = currentContext.getValueBefore(succ);
 						out = meet(out, succIn);
 					}					
 					// Set the OUT value at the node to the result
-					currentContext.setValueAfter(node, out);
+					currentContext.setValueAfter(index, out);
 				}
 				
 				// Store the value of IN before the flow function is processed.
-				A prevIn = currentContext.getValueBefore(node);
+				A prevIn = currentContext.getValueBefore(index);
 				
 				// Get the value of OUT 
-				A out = currentContext.getValueAfter(node);
+				A out = currentContext.getValueAfter(index);
 				
 
 				//System.out.println("OUT(" + node + ") = " + out);
 				
 				// Now to compute the IN value
 				A in;
+
+				// Count flow functions invoked and measure time taken, if monitored
+				boolean monitored = isMonitored();
+				long startTime = monitored ? System.nanoTime() : 0L;
+				int invocations = 0;
 				
 				// Handle flow functions depending on whether this is a call statement or not
 				if (programRepresentation().isCall(node)) {
@@ -112,12 +132,27 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 					boolean hit = false;
 					
 					for (M targetMethod : programRepresentation().resolveTargets(currentContext.getMethod(), node)) {
-						A exitValue = callExitFlowFunction(currentContext, targetMethod, node, out);
+						A returnValue = callExitFlowFunction(currentContext, targetMethod, node, out);
+						invocations++;
+
+						// Only the part of the value relevant to the target identifies its context
+						A exitValue = projectEntryValue(targetMethod, returnValue);
 						
-						CallSite<M,N,A> callSite = new CallSite<M,N,A>(currentContext, node);
+						CallSite<M,N,A> callSite = currentContext.getCallSite(node);
 						
 						// Check if the called method has a context associated with this exit flow:
-						Context<M,N,A> targetContext = getContext(targetMethod, exitValue);
+						Context<M,N,A> targetContext = findContext(targetMethod, exitValue);
+						// If not, then look for a summary stored in an earlier run.
+						if (targetContext == null) {
+							targetContext = loadSummary(targetMethod, exitValue);
+							if (targetContext != null && verbose) {
+								System.out.println("[SUMMARY] X" + currentContext + " -> X" + targetContext + " " + targetMethod + " ");
+							}
+						}
+						// If not, then merge into the summary context if the method has exhausted its budget.
+						if (targetContext == null) {
+							targetContext = mergeContext(targetMethod, exitValue);
+						}
 						// If not, then set 'targetContext' to a new context with the given exit flow.
 						if (targetContext == null) {
 							targetContext = initContext(targetMethod, exitValue);
@@ -139,7 +174,8 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 							A entryValue = targetContext.getEntryValue();
 							//System.out.println("ENTRY(X"+targetContext+") = " + entryValue);
 							
-							A callValue = callEntryFlowFunction(currentContext, targetMethod, node, entryValue);
+							A callValue = callEntryFlowFunction(currentContext, targetMethod, node, restoreExitValue(targetMethod, returnValue, entryValue));
+							invocations++;
 							
 							in = meet(in, callValue);
 							
@@ -149,10 +185,15 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 					// If there was at least one hit, continue propagation
 					if (hit) {
 						A localValue = callLocalFlowFunction(currentContext, node, out); 
+						invocations++;
 						in = meet(in, localValue);
 					}
 				} else {
 					in = normalFlowFunction(currentContext, node, out);
+					invocations++;
+				}
+				if (monitored) {
+					fireNodeProcessed(currentContext, node, invocations, System.nanoTime() - startTime);
 				}
 				
 				//System.out.println("IN(" + node + ") = " + in);
@@ -161,19 +202,20 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 				// Merge with previous IN to force monotonicity (harmless if flow functions are monotonic)
 				in = meet(in, prevIn);
 				
-				// Set the IN value
-				currentContext.setValueBefore(node, in);
+				// Set the IN value, and read back its canonical instance if values are interned
+				currentContext.setValueBefore(index, in);
+				in = currentContext.getValueBefore(index);
 				
 				// If IN has changed...
-				if (in.equals(prevIn) == false) {
+				if (sameValue(in, prevIn) == false) {
 					// Then add predecessors to the work-list.
-					for (N predecessors : currentContext.getControlFlowGraph().getPredsOf(node)) {
-						currentContext.getBackwardWorkList().add(predecessors);
+					for (int predecessor : numbering.getPredecessors(index)) {
+						currentContext.getBackwardWorkList().add(predecessor);
 					}
 				}
 				// If the unit is in HEADS, then we have at least one
 				// path to the start of the method, so add the NULL unit
-				if (currentContext.getControlFlowGraph().getHeads().contains(node)) {
+				if (numbering.isHead(index)) {
 					currentContext.getBackwardWorkList().add(null);
 				}
 			} else {
@@ -203,28 +245,13 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 						// Add the calling unit to the calling context's node work-list.
 						callingContext.getBackwardWorkList().add(callNode);
 						// Ensure that the calling context is on the context work-list.
-						workList.add(callingContext);
+						addToWorkList(callingContext);
 					}
 				}
 				
 				// Free memory on-the-fly if not needed
 				if (freeResultsOnTheFly) {
-					Set<Context<M,N,A>> reachableContexts = contextTransitions.reachableSet(currentContext, true);
-					// If any reachable contexts exist on the work-list, then we cannot free memory
-					boolean canFree = true;
-					for (Context<M,N,A> reachableContext : reachableContexts) {
-						if (workList.contains(reachableContext)) {
-							canFree = false;
-							break;
-						}
-					}
-					// If no reachable contexts on the stack, then free memory associated
-					// with this context
-					if (canFree) {
-						for (Context<M,N,A> reachableContext : reachableContexts) {
-							reachableContext.freeMemory();
-						}
-					}
+					freeIfNotPending(currentContext, workList);
 				}					
 			}
 			
@@ -239,6 +266,9 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 				}
 			}			
 		}
+
+		// Persist the results of contexts for later runs
+		saveSummaries();
 	}
 
 	/**
@@ -260,7 +290,7 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 	 */
 	protected Context<M,N,A> initContext(M method, A exitValue) {
 		// Construct the context
-		Context<M,N,A> context = new Context<M,N,A>(method, programRepresentation().getControlFlowGraph(method), true);
+		Context<M,N,A> context = newContext(method);
 
 		// Initialise IN/OUT for all nodes and add them to the work-list
 		for (N unit : context.getControlFlowGraph()) {
@@ -277,13 +307,10 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 		context.setEntryValue(topValue());
 
 		// Add this new context to the given method's mapping.
-		if (!contexts.containsKey(method)) {
-			contexts.put(method, new LinkedList<Context<M,N,A>>());
-		}
-		contexts.get(method).add(context);
+		addContext(context);
 		
 		// Add this context to the global work-list
-		workList.add(context);
+		addToWorkList(context);
 		
 		return context;
 
@@ -22,18 +22,22 @@ import java.util.List;
 import java.util.Set;
 
 /**
- * A generic forward-flow inter-procedural analysis which is fully
+ * A generic bidirectional inter-procedural analysis which is fully
  * context-sensitive.
  *
  * <p>
- * This class essentially captures a forward data flow problem which can be
- * solved using the context-sensitive inter-procedural analysis framework as
- * described in {@link InterProceduralAnalysis}.
+ * Data flow values are pairs of a forward value and a backward value. A value
+ * context is identified by the forward value at the entry of a method and the
+ * backward value at its exit; the results of a context are the forward value
+ * at its exit and the backward value at its entry.
  * </p>
  *
  * <p>
- * This is the class that client analyses will extend in order to perform
- * forward-flow inter-procedural analysis.
+ * The forward and backward passes are interleaved within each context using
+ * its forward and backward node work-lists, so that a change in one direction
+ * only re-processes the affected nodes in the other direction. Contexts whose
+ * work-lists are empty are not revisited unless the results of a callee
+ * change.
  * </p>
  *
  * @author Rohan Padhye
@@ -44,13 +48,21 @@ import java.util.Set;
  * @param <B> the type of a backward data flow value
  */
 public abstract class BidirectionalAnalysis<M,N,F,B> extends InterProceduralAnalysis<M,N,Pair<F,B>> {
+
+    /**
+     * The direction which is processed first when a context has pending
+     * nodes in both of its work-lists.
+     */
+    protected final Direction firstDirection;
+
     /**
-     * Constructs a new inter-procedural analysis.
+     * Constructs a new bidirectional inter-procedural analysis.
+     *
+     * @param firstDirection the direction to prefer when both passes of a context have pending nodes
      */
-    Direction currentAnalysisDirection;
     public BidirectionalAnalysis(Direction firstDirection) {
         super(Direction.BI_DIRECTION);
-        currentAnalysisDirection = firstDirection;
+        this.firstDirection = firstDirection;
     }
 
     public abstract F forwardBoundaryValue(M entryPoint);
@@ -69,20 +81,14 @@ public abstract class BidirectionalAnalysis<M,N,F,B> extends InterProceduralAnal
         return new Pair<>(forwardCopy(src.getKey()), backwardCopy(src.getValue()));
     }
 
+    /**
+     * Returns the pair of the forward data flow value at the entry of the
+     * method and the backward data flow value at the exit of the method,
+     * which together identify a bidirectional value context.
+     */
     @Override
-    public Context<M, N, Pair<F, B>> getContext(M method, Pair<F, B> value) {
-        // If this method does not have any contexts, then we'll have to return nothing.
-        if (!contexts.containsKey(method)) {
-            return null;
-        }
-        // Otherwise, look for a context in this method's list with the given value.
-        // Forward flow, so check for ENTRY FLOWS
-        for (Context<M,N,Pair<F,B>> context : contexts.get(method)) {
-            if (value.getKey().equals(context.getEntryValue().getKey()) && value.getValue().equals(context.getExitValue().getValue())) {
-                return context;
-            }
-        }
-        return null;
+    protected Pair<F, B> contextKey(Context<M, N, Pair<F, B>> context) {
+        return new Pair<F, B>(context.getEntryValue().getKey(), context.getExitValue().getValue());
     }
 
     public abstract F forwardMeet(F op1, F op2);
@@ -101,26 +107,70 @@ public abstract class BidirectionalAnalysis<M,N,F,B> extends InterProceduralAnal
         return new Pair<>(forwardTopValue(), backwardTopValue());
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>A {@link #contextBudget} is not supported, as a summary context
+     * would have to be widened in both directions at once.</p>
+     * 
+     * @throws UnsupportedOperationException if a context budget is set
+     */
     @Override
     public void doAnalysis() {
-        // Initial contexts
-        for (M method : programRepresentation().getEntryPoints()) {
-            Context<M,N,Pair<F,B>> context = initContext(method, boundaryValue(method));
+        if (contextBudget > 0) {
+            throw new UnsupportedOperationException("Context budgets are not supported by the bidirectional solver");
         }
 
-        while(true)
-        {
-            addEntryPointsToWorkList();
-            if(workList.isEmpty())
-                break;
-            forwardAnalysis();
-
+        // Initial contexts (unless retained from a previous analysis)
+        for (M method : programRepresentation().getEntryPoints()) {
+            if (entryContexts.containsKey(method) == false) {
+                Pair<F,B> boundaryValue = boundaryValue(method);
+                Context<M,N,Pair<F,B>> context = getContext(method, boundaryValue);
+                if (context == null) {
+                    context = initContext(method, boundaryValue);
+                }
+                entryContexts.put(method, context);
+            }
+        }
 
-            addEntryPointsToWorkList();
-            if(workList.isEmpty())
-                break;
-            backwardAnalysis();
+        // Perform work-list based analysis
+        while (!workList.isEmpty()) {
+            // Get the newest context on the work-list
+            Context<M,N,Pair<F,B>> currentContext = workList.last();
+
+            // Pick the direction in which this context still has pending nodes, preferring
+            // the first direction, so that both passes are interleaved within the context.
+            boolean forward;
+            if (currentContext.getForwardWorkList().isEmpty() && currentContext.getBackwardWorkList().isEmpty()) {
+                // Both passes have converged, so take the context out of the work-list
+                currentContext.markAnalysed();
+                workList.remove(currentContext);
+                continue;
+            } else if (currentContext.getForwardWorkList().isEmpty()) {
+                forward = false;
+            } else if (currentContext.getBackwardWorkList().isEmpty()) {
+                forward = true;
+            } else {
+                forward = (firstDirection != Direction.BACKWARD);
+            }
 
+            if (forward) {
+                // Remove the next node to process from the context's forward work-list
+                N node = currentContext.getForwardWorkList().pollFirst();
+                if (node != null) {
+                    processForwardNode(currentContext, node);
+                } else {
+                    processExit(currentContext);
+                }
+            } else {
+                // Remove the next node to process from the context's backward work-list
+                N node = currentContext.getBackwardWorkList().pollFirst();
+                if (node != null) {
+                    processBackwardNode(currentContext, node);
+                } else {
+                    processEntry(currentContext);
+                }
+            }
         }
 
         // Sanity check
@@ -134,205 +184,360 @@ public abstract class BidirectionalAnalysis<M,N,F,B> extends InterProceduralAnal
         }
     }
 
-    private void addEntryPointsToWorkList()
-    {
-        for( M method : programRepresentation().getEntryPoints()) {
-            Context context = getContext(method, boundaryValue(method));
-            if(!context.isAnalysed()) {
-                workList.add(context);
+    /**
+     * Processes the forward flow of a single node, updating the forward
+     * component of its OUT value.
+     */
+    private void processForwardNode(Context<M,N,Pair<F,B>> currentContext, N node) {
+        // Compute the forward IN value, and re-compute the backward OUT value, which
+        // the backward pass may not have updated since the successors last changed.
+        F forwardIn = forwardIn(currentContext, node);
+        B backwardOut = backwardOut(currentContext, node);
+
+        // Set the IN value at the node, retaining its backward component
+        currentContext.setValueBefore(node, new Pair<F,B>(forwardIn, currentContext.getValueBefore(node).getValue()));
+
+        // Store the value of OUT before the flow function is processed.
+        Pair<F,B> prevOut = currentContext.getValueAfter(node);
+
+        if (verbose) {
+            System.out.println("FORWARD_IN = " + forwardIn);
+            System.err.println(node);
+        }
+
+        // Now to compute the OUT value
+        F forwardOut;
+
+        // Count flow functions invoked and measure time taken, if monitored
+        boolean monitored = isMonitored();
+        long startTime = monitored ? System.nanoTime() : 0L;
+        int invocations = 0;
+
+        // Handle flow functions depending on whether this is a call statement or not
+        if (programRepresentation().isCall(node)) {
+            forwardOut = forwardTopValue();
+            boolean hit = false;
+            List<M> targets = programRepresentation().resolveTargets(currentContext.getMethod(), node);
+            for (M targetMethod : targets) {
+                Context<M,N,Pair<F,B>> targetContext = resolveContext(currentContext, targetMethod, node, forwardIn, backwardOut);
+                invocations++;
+                // Check if the target context has been analysed (surely not if it is just newly made):
+                if (targetContext.isAnalysed()) {
+                    hit = true;
+                    Pair<F,B> returnedValue = callExitFlowFunction(currentContext, targetMethod, node,
+                            targetContext.getExitValue().getKey(), targetContext.getEntryValue().getValue());
+                    invocations++;
+                    forwardOut = forwardMeet(forwardOut, returnedValue.getKey());
+                }
+            }
+
+            // If there was at least one hit (or there are no targets), continue propagation
+            F localValue = forwardCallLocalFlowFunction(currentContext, node, forwardIn, backwardOut);
+            invocations++;
+            if (hit) {
+                forwardOut = forwardMeet(forwardOut, localValue);
+            } else {
+                forwardOut = localValue;
             }
+        } else {
+            forwardOut = forwardFlowFunction(currentContext, node, forwardIn, backwardOut);
+            invocations++;
+        }
+        if (monitored) {
+            fireNodeProcessed(currentContext, node, invocations, System.nanoTime() - startTime);
+        }
+        if (verbose) {
+            System.out.println("FORWARD_OUT = " + forwardOut);
+            System.out.println("---------------------------------------");
         }
-    }
 
-    void backwardAnalysis(){
+        // Merge with previous OUT to force monotonicity (harmless if flow functions are monotinic)
+        forwardOut = forwardMeet(forwardOut, prevOut.getKey());
 
+        // Set the OUT value, retaining its backward component
+        currentContext.setValueAfter(node, new Pair<F,B>(forwardOut, backwardOut));
+
+        // If OUT has changed...
+        if (forwardOut.equals(prevOut.getKey()) == false) {
+            // Then the successors must be re-processed in both directions, as
+            // their backward flow depends on their forward IN.
+            for (N successor : currentContext.getControlFlowGraph().getSuccsOf(node)) {
+                currentContext.getForwardWorkList().add(successor);
+                currentContext.getBackwardWorkList().add(successor);
+            }
+        }
+        // If the unit is in TAILS, then we have at least one
+        // path to the end of the method, so add the NULL unit
+        if (currentContext.getControlFlowGraph().getTails().contains(node)) {
+            currentContext.getForwardWorkList().add(null);
+        }
     }
 
-    void forwardAnalysis() {
-        while (!workList.isEmpty()) {
+    /**
+     * Processes the backward flow of a single node, updating the backward
+     * component of its IN value.
+     */
+    private void processBackwardNode(Context<M,N,Pair<F,B>> currentContext, N node) {
+        // Compute the backward OUT value, and re-compute the forward IN value, which
+        // the forward pass may not have updated since the predecessors last changed.
+        B backwardOut = backwardOut(currentContext, node);
+        F forwardIn = forwardIn(currentContext, node);
 
-            // Get the newest context on the work-list
-            Context<M, N, Pair<F, B>> currentContext = workList.last();
+        // Set the OUT value at the node, retaining its forward component
+        currentContext.setValueAfter(node, new Pair<F,B>(currentContext.getValueAfter(node).getKey(), backwardOut));
 
-            // If this context has no more nodes to analyze, then take it out of the work-list
-            if (currentContext.getForwardWorkList().isEmpty()) {
-                if(currentContext.getBackwardWorkList().isEmpty())
-                    currentContext.markAnalysed();
+        // Store the value of IN before the flow function is processed.
+        Pair<F,B> prevIn = currentContext.getValueBefore(node);
 
-                workList.remove(currentContext);
-                continue;
-            }
+        if (verbose) {
+            System.out.println("BACKWARD_OUT = " + backwardOut);
+            System.err.println(node);
+        }
 
-            // Remove the next node to process from the context's work-list
-            N node = currentContext.getForwardWorkList().pollFirst();
-
-            if (node != null) {
-                // Compute the IN data flow value (only for non-entry units).
-                List<N> predecessors = currentContext.getControlFlowGraph().getPredsOf(node);
-                if (predecessors.size() != 0) {
-                    // Initialise to the TOP value
-                    F forwardIn = forwardTopValue();
-                    // Merge OUT values of all predecessors
-                    for (N predecessor : predecessors) {
-                        F predecessorForwardOut = currentContext.getValueAfter(predecessor).getKey();
-                        forwardIn = forwardMeet(forwardIn, predecessorForwardOut);
-                    }
-                    // Set the IN value at the node to the result
-                    B backwardIn = currentContext.getValueBefore(node).getValue();
-                    currentContext.setValueBefore(node, new Pair<F, B>(forwardIn,backwardIn));
+        // Now to compute the IN value
+        B backwardIn;
+
+        // Count flow functions invoked and measure time taken, if monitored
+        boolean monitored = isMonitored();
+        long startTime = monitored ? System.nanoTime() : 0L;
+        int invocations = 0;
+
+        // Handle flow functions depending on whether this is a call statement or not
+        if (programRepresentation().isCall(node)) {
+            backwardIn = backwardTopValue();
+            boolean hit = false;
+            List<M> targets = programRepresentation().resolveTargets(currentContext.getMethod(), node);
+            for (M targetMethod : targets) {
+                Context<M,N,Pair<F,B>> targetContext = resolveContext(currentContext, targetMethod, node, forwardIn, backwardOut);
+                invocations++;
+                // Check if the target context has been analysed (surely not if it is just newly made):
+                if (targetContext.isAnalysed()) {
+                    hit = true;
+                    Pair<F,B> returnedValue = callExitFlowFunction(currentContext, targetMethod, node,
+                            targetContext.getExitValue().getKey(), targetContext.getEntryValue().getValue());
+                    invocations++;
+                    backwardIn = backwardMeet(backwardIn, returnedValue.getValue());
                 }
+            }
 
-                // Store the value of OUT before the flow function is processed.
-                Pair<F,B> prevOut = currentContext.getValueAfter(node);
+            // If there was at least one hit (or there are no targets), continue propagation
+            B localValue = backwardCallLocalFlowFunction(currentContext, node, backwardOut, forwardIn);
+            invocations++;
+            if (hit) {
+                backwardIn = backwardMeet(backwardIn, localValue);
+            } else {
+                backwardIn = localValue;
+            }
+        } else {
+            backwardIn = backwardFlowFunction(currentContext, node, backwardOut, forwardIn);
+            invocations++;
+        }
+        if (monitored) {
+            fireNodeProcessed(currentContext, node, invocations, System.nanoTime() - startTime);
+        }
+        if (verbose) {
+            System.out.println("BACKWARD_IN = " + backwardIn);
+            System.out.println("---------------------------------------");
+        }
 
-                // Get the value of IN
-                F forwardIn = currentContext.getValueBefore(node).getKey();
+        // Merge with previous IN to force monotonicity (harmless if flow functions are monotinic)
+        backwardIn = backwardMeet(backwardIn, prevIn.getValue());
 
-                if (verbose) {
-                    System.out.println("FORWARD_IN = " + forwardIn);
-                    System.err.println(node);
-                }
+        // Set the IN value, retaining its forward component
+        currentContext.setValueBefore(node, new Pair<F,B>(forwardIn, backwardIn));
 
-                // Now to compute the OUT value
-                F forwardOut = forwardTopValue();
-                B backwardOut = currentContext.getValueAfter(node).getValue();
-
-                // Handle flow functions depending on whether this is a call statement or not
-                if (programRepresentation().isCall(node)) {
-                    boolean hit = false;
-                    if (!programRepresentation().resolveTargets(currentContext.getMethod(), node).isEmpty()) {
-                        for (M targetMethod : programRepresentation().resolveTargets(currentContext.getMethod(), node)) {
-                            Pair<F,B> entryValue = callEntryFlowFunction(currentContext, targetMethod, node, forwardIn, backwardOut);
-
-                            CallSite<M, N, Pair<F,B>> callSite = new CallSite<M, N, Pair<F,B>>(currentContext, node);
-
-                            // Check if the called method has a context associated with this entry flow:
-                            Context<M, N, Pair<F,B>> targetContext = getContext(targetMethod, entryValue);
-                            // If not, then set 'targetContext' to a new context with the given entry flow.
-                            if (targetContext == null) {
-                                targetContext = initContext(targetMethod, entryValue);
-                                if (verbose) {
-                                    System.out.println("[NEW] X" + currentContext + " -> X" + targetContext + " " + targetMethod + " ");
-                                    System.out.println("ENTRY(X" + targetContext + ") = " + entryValue);
-                                }
-
-                            }
-
-                            // Store the transition from the calling context and site to the called context.
-                            contextTransitions.addTransition(callSite, targetContext);
-
-                            // Check if the target context has been analysed (surely not if it is just newly made):
-                            if (targetContext.isAnalysed()) {
-                                hit = true;
-                                Pair<F,B> exitValue = targetContext.getExitValue();
-                                if (verbose) {
-                                    System.out.println("[HIT] X" + currentContext + " -> X" + targetContext + " " + targetMethod + " ");
-                                    System.out.println("EXIT(X" + targetContext + ") = " + exitValue);
-                                }
-                                Pair<F,B> returnedValue = callExitFlowFunction(currentContext, targetMethod, node, exitValue.getKey(), exitValue.getValue());
-                                forwardOut = forwardMeet(forwardOut, returnedValue.getKey());
-                            }
-                        }
-
-                        // If there was at least one hit, continue propagation
-                        if (hit) {
-                            F localValue = forwardCallLocalFlowFunction(currentContext, node, forwardIn,backwardOut);
-                            forwardOut = forwardMeet(forwardOut, localValue);
-                        } else {
-                            forwardOut = forwardCallLocalFlowFunction(currentContext, node, forwardIn, backwardOut);
-                        }
-                    } else {
-                        // handle phantom method
-                        forwardOut = forwardCallLocalFlowFunction(currentContext, node, forwardIn, backwardOut);
-                    }
-                } else {
-                    forwardOut = forwardFlowFunction(currentContext, node, forwardIn, backwardOut);
-                }
-                if (verbose) {
-                    System.out.println("OUT = " + forwardOut);
-                    System.out.println("---------------------------------------");
-                }
+        // If IN has changed...
+        if (backwardIn.equals(prevIn.getValue()) == false) {
+            // Then the predecessors must be re-processed in both directions, as
+            // their forward flow depends on their backward OUT.
+            for (N predecessor : currentContext.getControlFlowGraph().getPredsOf(node)) {
+                currentContext.getBackwardWorkList().add(predecessor);
+                currentContext.getForwardWorkList().add(predecessor);
+            }
+        }
+        // If the unit is in HEADS, then we have at least one
+        // path to the start of the method, so add the NULL unit
+        if (currentContext.getControlFlowGraph().getHeads().contains(node)) {
+            currentContext.getBackwardWorkList().add(null);
+        }
+    }
 
+    /**
+     * Returns the forward IN value of a node, which is the meet of the forward
+     * OUT values of its predecessors, or the boundary value at an entry node.
+     */
+    private F forwardIn(Context<M,N,Pair<F,B>> currentContext, N node) {
+        List<N> predecessors = currentContext.getControlFlowGraph().getPredsOf(node);
+        if (predecessors.size() == 0) {
+            return currentContext.getValueBefore(node).getKey();
+        }
+        // Merge forward OUT values of all predecessors
+        F forwardIn = forwardTopValue();
+        for (N predecessor : predecessors) {
+            forwardIn = forwardMeet(forwardIn, currentContext.getValueAfter(predecessor).getKey());
+        }
+        return forwardIn;
+    }
 
-                // Merge with previous OUT to force monotonicity (harmless if flow functions are monotinic)
-                forwardOut = forwardMeet(forwardOut, prevOut.getKey());
+    /**
+     * Returns the backward OUT value of a node, which is the meet of the backward
+     * IN values of its successors, or the boundary value at an exit node.
+     */
+    private B backwardOut(Context<M,N,Pair<F,B>> currentContext, N node) {
+        List<N> successors = currentContext.getControlFlowGraph().getSuccsOf(node);
+        if (successors.size() == 0) {
+            return currentContext.getValueAfter(node).getValue();
+        }
+        // Merge backward IN values of all successors
+        B backwardOut = backwardTopValue();
+        for (N successor : successors) {
+            backwardOut = backwardMeet(backwardOut, currentContext.getValueBefore(successor).getValue());
+        }
+        return backwardOut;
+    }
 
-                // Set the OUT value
-                currentContext.setValueAfter(node, new Pair<F, B>(forwardOut, backwardOut));
+    /**
+     * Finds (or creates) the value context of a call target for the given values
+     * at the call-site, and records the context transition.
+     */
+    private Context<M,N,Pair<F,B>> resolveContext(Context<M,N,Pair<F,B>> currentContext, M targetMethod, N node, F forwardIn, B backwardOut) {
+        Pair<F,B> entryValue = callEntryFlowFunction(currentContext, targetMethod, node, forwardIn, backwardOut);
+
+        CallSite<M,N,Pair<F,B>> callSite = currentContext.getCallSite(node);
+
+        // Check if the called method has a context associated with this boundary flow:
+        Context<M,N,Pair<F,B>> targetContext = findContext(targetMethod, entryValue);
+        // If not, then set 'targetContext' to a new context with the given boundary flow.
+        if (targetContext == null) {
+            targetContext = initContext(targetMethod, entryValue);
+            if (verbose) {
+                System.out.println("[NEW] X" + currentContext + " -> X" + targetContext + " " + targetMethod + " ");
+                System.out.println("BOUNDARY(X" + targetContext + ") = " + entryValue);
+            }
+        }
 
-                // If OUT has changed...
-                if (forwardOut.equals(prevOut.getKey()) == false) {
-                    // Then add successors to the work-list.
-                    for (N successor : currentContext.getControlFlowGraph().getSuccsOf(node)) {
-                        currentContext.getForwardWorkList().add(successor);
-                        currentContext.getBackwardWorkList().add(successor);
-                    }
-                }
-                // If the unit is forwardIn TAILS, then we have at least one
-                // path to the end of the method, so add the NULL unit
-                if (currentContext.getControlFlowGraph().getTails().contains(node)) {
-                    currentContext.getForwardWorkList().add(null);
-                }
-            } else {
-                // NULL unit, which means the end of the method.
-                assert (currentContext.getForwardWorkList().isEmpty());
-
-                // Exit value is the merge of the OUTs of the tail nodes.
-                Pair<F,B> exitValue = topValue();
-                for (N tailNode : currentContext.getControlFlowGraph().getTails()) {
-                    Pair<F,B> tailOut = currentContext.getValueAfter(tailNode);
-                    exitValue = meet(exitValue, tailOut);
-                }
+        // Store the transition from the calling context and site to the called context.
+        contextTransitions.addTransition(callSite, targetContext);
 
-                // Set the exit value of the context.
-                currentContext.setExitValue(exitValue);
-
-                // Mark this context as analysed at least once.
-//                currentContext.markAnalysed();
-
-                // Add callers to work-list, if any
-                Set<CallSite<M, N, Pair<F,B>>> callers = contextTransitions.getCallers(currentContext);
-                if (callers != null) {
-                    for (CallSite<M, N, Pair<F,B>> callSite : callers) {
-                        // Extract the calling context and node from the caller site.
-                        Context<M, N, Pair<F,B>> callingContext = callSite.getCallingContext();
-                        N callNode = callSite.getCallNode();
-                        // Add the calling unit to the calling context's node work-list.
-                        callingContext.getForwardWorkList().add(callNode);
-                        callingContext.getBackwardWorkList().add(callNode);
-                        // Ensure that the calling context is on the context work-list.
-                        workList.add(callingContext);
-                    }
-                }
+        return targetContext;
+    }
 
-                // Free memory on-the-fly if not needed
-                if (freeResultsOnTheFly) {
-                    Set<Context<M, N, Pair<F,B>>> reachableContexts = contextTransitions.reachableSet(currentContext, true);
-                    // If any reachable contexts exist on the work-list, then we cannot free memory
-                    boolean canFree = true;
-                    for (Context<M, N, Pair<F,B>> reachableContext : reachableContexts) {
-                        if (workList.contains(reachableContext)) {
-                            canFree = false;
-                            break;
-                        }
-                    }
-                    // If no reachable contexts on the stack, then free memory associated
-                    // with this context
-                    if (canFree) {
-                        for (Context<M, N, Pair<F,B>> reachableContext : reachableContexts) {
-                            reachableContext.freeMemory();
-                        }
-                    }
-                }
-            }
+    /**
+     * Aggregates the forward flow at the end of the method, which is the
+     * forward result of the context.
+     */
+    private void processExit(Context<M,N,Pair<F,B>> currentContext) {
+        // Forward exit value is the merge of the OUTs of the tail nodes.
+        F forwardExit = forwardTopValue();
+        for (N tailNode : currentContext.getControlFlowGraph().getTails()) {
+            forwardExit = forwardMeet(forwardExit, currentContext.getValueAfter(tailNode).getKey());
         }
+
+        // Set the exit value of the context, keeping the backward boundary value which identifies it.
+        Pair<F,B> prevExit = currentContext.getExitValue();
+        currentContext.setExitValue(new Pair<F,B>(forwardExit, prevExit.getValue()));
+
+        // Mark this context as analysed at least once and notify callers if the result changed.
+        resultsComputed(currentContext, forwardExit.equals(prevExit.getKey()) == false);
     }
 
-    private Context<M,N,Pair<F,B>> initContext(M method, Pair<F, B> boundaryValue) {
-        return null;
+    /**
+     * Aggregates the backward flow at the start of the method, which is the
+     * backward result of the context.
+     */
+    private void processEntry(Context<M,N,Pair<F,B>> currentContext) {
+        // Backward entry value is the merge of the INs of the head nodes.
+        B backwardEntry = backwardTopValue();
+        for (N headNode : currentContext.getControlFlowGraph().getHeads()) {
+            backwardEntry = backwardMeet(backwardEntry, currentContext.getValueBefore(headNode).getValue());
+        }
+
+        // Set the entry value of the context, keeping the forward boundary value which identifies it.
+        Pair<F,B> prevEntry = currentContext.getEntryValue();
+        currentContext.setEntryValue(new Pair<F,B>(prevEntry.getKey(), backwardEntry));
 
+        // Mark this context as analysed at least once and notify callers if the result changed.
+        resultsComputed(currentContext, backwardEntry.equals(prevEntry.getValue()) == false);
     }
 
+    /**
+     * Marks a context as analysed after one of its results has been recomputed,
+     * and adds the call-sites of its callers to their work-lists if they have
+     * not yet seen the results, or the result has changed.
+     */
+    private void resultsComputed(Context<M,N,Pair<F,B>> currentContext, boolean changed) {
+        // Callers have ignored this context if it had not been analysed before
+        boolean firstResult = currentContext.isAnalysed() == false;
+
+        // Mark this context as analysed at least once.
+        currentContext.markAnalysed();
+
+        // Add callers to work-list, if any
+        Set<CallSite<M,N,Pair<F,B>>> callers = contextTransitions.getCallers(currentContext);
+        if (callers != null && (changed || firstResult)) {
+            for (CallSite<M,N,Pair<F,B>> callSite : callers) {
+                // Extract the calling context and node from the caller site.
+                Context<M,N,Pair<F,B>> callingContext = callSite.getCallingContext();
+                N callNode = callSite.getCallNode();
+                // Add the calling unit to the calling context's node work-lists.
+                callingContext.getForwardWorkList().add(callNode);
+                callingContext.getBackwardWorkList().add(callNode);
+                // Ensure that the calling context is on the context work-list.
+                addToWorkList(callingContext);
+            }
+        }
+
+        // Free memory on-the-fly if not needed
+        if (freeResultsOnTheFly) {
+            freeIfNotPending(currentContext, workList);
+        }
+    }
+
+    /**
+     * Creates a new value context and initialises data flow values.
+     *
+     * <p>
+     * The context is identified by the forward value at the entry of the
+     * method and the backward value at its exit. All nodes are added to both
+     * the forward and backward node work-lists of the new context, which is
+     * then added to the global work-list.
+     * </p>
+     *
+     * @param method        the method whose context to create
+     * @param boundaryValue the forward entry value and backward exit value
+     * @return              the new value context
+     */
+    protected Context<M,N,Pair<F,B>> initContext(M method, Pair<F,B> boundaryValue) {
+        // Construct the context
+        Context<M,N,Pair<F,B>> context = newContext(method);
+
+        // Initialise IN/OUT for all nodes and add them to both work-lists
+        for (N unit : context.getControlFlowGraph()) {
+            context.setValueBefore(unit, topValue());
+            context.setValueAfter(unit, topValue());
+            context.getForwardWorkList().add(unit);
+            context.getBackwardWorkList().add(unit);
+        }
+
+        // Now, initialise the forward IN of entry points and the backward OUT of
+        // exit points with copies of the given boundary values.
+        for (N unit : context.getControlFlowGraph().getHeads()) {
+            context.setValueBefore(unit, new Pair<F,B>(forwardCopy(boundaryValue.getKey()), backwardTopValue()));
+        }
+        for (N unit : context.getControlFlowGraph().getTails()) {
+            context.setValueAfter(unit, new Pair<F,B>(forwardTopValue(), backwardCopy(boundaryValue.getValue())));
+        }
+        context.setEntryValue(new Pair<F,B>(forwardCopy(boundaryValue.getKey()), backwardTopValue()));
+        context.setExitValue(new Pair<F,B>(forwardTopValue(), backwardCopy(boundaryValue.getValue())));
+
+        // Add this new context to the given method's mapping.
+        addContext(context);
+
+        // Add this context to the global work-list
+        addToWorkList(context);
+
+        return context;
+    }
 
     /**
      * Processes the intra-procedural forward flow function of a statement that does
@@ -341,22 +546,22 @@ public abstract class BidirectionalAnalysis<M,N,F,B> extends InterProceduralAnal
      * @param context           the value context at the call-site
      * @param node              the statement whose flow function to process
      * @param forwardInValue    the forward data flow value before the statement
-     * @param backwardInValue   the backward data flow value before the statement
-     * @return                  the data flow value after the statement
+     * @param backwardOutValue  the backward data flow value after the statement
+     * @return                  the forward data flow value after the statement
      */
-    public abstract F forwardFlowFunction(Context<M, N, Pair<F,B>> context, N node, F forwardInValue, B backwardInValue);
+    public abstract F forwardFlowFunction(Context<M, N, Pair<F,B>> context, N node, F forwardInValue, B backwardOutValue);
 
     /**
-     * Processes the intra-procedural forward flow function of a statement that does
+     * Processes the intra-procedural backward flow function of a statement that does
      * not contain a method call.
      *
      * @param context           the value context at the call-site
      * @param node              the statement whose flow function to process
-     * @param forwardOutValue   the forward data flow value after the statement
      * @param backwardOutValue  the backward data flow value after the statement
-     * @return                  the data flow value after the statement
+     * @param forwardInValue    the forward data flow value before the statement
+     * @return                  the backward data flow value before the statement
      */
-    public abstract B backwardFlowFunction(Context<M, N, Pair<F,B>> context, N node, B backwardOutValue, F forwardOutValue);
+    public abstract B backwardFlowFunction(Context<M, N, Pair<F,B>> context, N node, B backwardOutValue, F forwardInValue);
 
     /**
      * Processes the inter-procedural flow function for a method call at
@@ -366,10 +571,11 @@ public abstract class BidirectionalAnalysis<M,N,F,B> extends InterProceduralAnal
      * @param targetMethod      the target (or one of the targets) of this call site
      * @param node              the statement containing the method call
      * @param forwardInValue    the forward data flow value before the call
-     * @param backwardInValue   the forward data flow value before the call
+     * @param backwardOutValue  the backward data flow value after the call
      * @return                  the forward data flow value at the entry to the called procedure
+     *                          and the backward data flow value at its exit
      */
-    public abstract Pair<F,B> callEntryFlowFunction(Context<M,N,Pair<F,B>> context, M targetMethod, N node, F forwardInValue, B backwardInValue);
+    public abstract Pair<F,B> callEntryFlowFunction(Context<M,N,Pair<F,B>> context, M targetMethod, N node, F forwardInValue, B backwardOutValue);
 
 
     /**
@@ -379,37 +585,36 @@ public abstract class BidirectionalAnalysis<M,N,F,B> extends InterProceduralAnal
      * @param context        the value context at the call-site
      * @param targetMethod      the target (or one of the targets) of this call site
      * @param node              the statement containing the method call
-     * @param forwardExitValue  the forward data flow value at the exit of the called procedure
-     * @param backwardExitValue the backward data flow value at the exit of the called procedure
-     * @return                  the data flow value after the call (returned component)
+     * @param forwardExitValue   the forward data flow value at the exit of the called procedure
+     * @param backwardEntryValue the backward data flow value at the entry of the called procedure
+     * @return                   the forward data flow value after the call and the backward
+     *                           data flow value before the call (returned components)
      */
-    public abstract Pair<F,B> callExitFlowFunction(Context<M,N,Pair<F,B>> context, M targetMethod, N node,F forwardExitValue, B backwardExitValue);
+    public abstract Pair<F,B> callExitFlowFunction(Context<M,N,Pair<F,B>> context, M targetMethod, N node, F forwardExitValue, B backwardEntryValue);
 
     /**
-     *
-     * Processes the intra-procedural flow function for a method call at the
+     * Processes the intra-procedural forward flow function for a method call at the
      * call-site itself, to handle propagation of local values that are not
      * involved in the call.
      *
      * @param context           the value context at the call-site
      * @param node              the statement containing the method call
-     * @param forwardOutValue   the data flow value after the call
-     * @param backwardOutValue  the data flow value after the call
-     * @return                  the data flow value before the call (local component)
+     * @param forwardInValue    the forward data flow value before the call
+     * @param backwardOutValue  the backward data flow value after the call
+     * @return                  the forward data flow value after the call (local component)
      */
-    public abstract F forwardCallLocalFlowFunction(Context<M,N,Pair<F,B>> context, N node, F forwardOutValue, B backwardOutValue);
+    public abstract F forwardCallLocalFlowFunction(Context<M,N,Pair<F,B>> context, N node, F forwardInValue, B backwardOutValue);
 
     /**
-     *
-     * Processes the intra-procedural flow function for a method call at the
+     * Processes the intra-procedural backward flow function for a method call at the
      * call-site itself, to handle propagation of local values that are not
      * involved in the call.
      *
      * @param context           the value context at the call-site
      * @param node              the statement containing the method call
-     * @param forwardOutValue   the data flow value after the call
-     * @param backwardOutValue  the data flow value after the call
-     * @return                  the data flow value before the call (local component)
+     * @param backwardOutValue  the backward data flow value after the call
+     * @param forwardInValue    the forward data flow value before the call
+     * @return                  the backward data flow value before the call (local component)
      */
-    public abstract B backwardCallLocalFlowFunction(Context<M,N,Pair<F,B>> context, N node, B backwardOutValue, F forwardOutValue);
+    public abstract B backwardCallLocalFlowFunction(Context<M,N,Pair<F,B>> context, N node, B backwardOutValue, F forwardInValue);
 }
@@ -17,12 +17,16 @@
  */
 package vasco;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A context-sensitive location of a method invocation.
  * 
  * <p>
  * A call-site is a uniquely identified by the calling context and the 
- * node containing the call statement.
+ * node containing the call statement. The canonical call-site of a node
+ * in a context is obtained by {@link Context#getCallSite(Object)}, so
+ * that re-visiting a call node does not create a new object.
  * </p>
  * 
  * @author Rohan Padhye
@@ -33,16 +37,27 @@ package vasco;
  */
 public class CallSite<M,N,A> implements Comparable<CallSite<M,N,A>> {
 
+	/** A counter for global call-site identifiers. */
+	private static final AtomicInteger count = new AtomicInteger();
+
+	/** A globally unique identifier. */
+	private final int id;
+
 	/** The context at the caller. */
 	private final Context<M,N,A> callingContext;
 
 	/** The node at which the call is made. */
 	private final N callNode;
 
-	/** Constructs a new call site with the given parameters. */
-	public CallSite(Context<M,N,A> callingContext, N callStmt) {
+	/**
+	 * Constructs a new call site with the given parameters. Call-sites are
+	 * only created by {@link Context#getCallSite(Object)}, so that each has
+	 * a single identifier.
+	 */
+	CallSite(Context<M,N,A> callingContext, N callStmt) {
 		this.callingContext = callingContext;
 		this.callNode = callStmt;
+		this.id = count.incrementAndGet();
 	}
 
 	/**
@@ -94,6 +109,15 @@ public class CallSite<M,N,A> implements Comparable<CallSite<M,N,A>> {
 		return callingContext;
 	}
 
+	/**
+	 * Returns the globally unique identifier of this call-site.
+	 * 
+	 * @return the globally unique identifier of this call-site
+	 */
+	public int getId() {
+		return id;
+	}
+
 	/**
 	 * Returns the calling node.
 	 * 
@@ -17,19 +17,14 @@
  */
 package vasco;
 
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
-import java.util.TreeSet;
 
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 
 import soot.toolkits.graph.DirectedGraph;
-import soot.toolkits.graph.SlowPseudoTopologicalOrderer;
 import soot.toolkits.scalar.Pair;
 
 /**
@@ -49,8 +44,9 @@ import soot.toolkits.scalar.Pair;
  *
  * <p>
  * Each value context has its own work-list of CFG nodes to analyse, and the
- * results of analysis are stored in a map from nodes to the data flow values
- * before/after the node.
+ * results of analysis are stored in a map (or, in dense mode, an array
+ * indexed by node number) from nodes to the data flow values before/after
+ * the node.
  * </p>
  *
  * @author Rohan Padhye
@@ -81,6 +77,12 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
     /** The data flow value associated with the exit of the method. */
     private A exitValue;
 
+    /**
+     * A lowered boundary value which is yet to be applied to the boundary
+     * nodes by the thread analysing this context, or <tt>null</tt>.
+     */
+    private A widenedValue;
+
     /** A globally unique identifier. */
     private int id;
 
@@ -94,11 +96,26 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
     /** The data flow values at the entry of each node. */
     private Map<N,A> inValues;
 
+    /** The numbering of nodes, which indexes the dense value arrays. */
+    private NodeNumbering<N> numbering;
+
+    /** The data flow values at the exit of each node, indexed by node number, in dense mode. */
+    private Object[] denseOutValues;
+
+    /** The data flow values at the entry of each node, indexed by node number, in dense mode. */
+    private Object[] denseInValues;
+
+    /** The table of canonical values, or <tt>null</tt> if values are not interned. */
+    private ValueInterner<A> interner;
+
+    /** The canonical call-sites of the call nodes of this context, created on demand. */
+    private Map<N,CallSite<M,N,A>> callSites;
+
     private Table<N, N, A> vals = HashBasedTable.create();
 
-    /** The work-list of nodes that still need to be analysed. */
-    private NavigableSet<N> forwardWorkList;
-    private NavigableSet<N> backwardWorkList;
+    /** The work-lists of nodes that still need to be analysed. */
+    private NodeWorkList<N> forwardWorkList;
+    private NodeWorkList<N> backwardWorkList;
 
     private LinkedList<Pair<N, N>> workListOfEdges;
     /**
@@ -113,8 +130,8 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
         this.inValues = new HashMap<N, A>();
         this.outValues = new HashMap<N, A>();
         this.analysed = false;
-        this.forwardWorkList = new TreeSet<N>();
-        this.backwardWorkList = new TreeSet<N>();
+        this.forwardWorkList = new NodeWorkList<N>(null, false);
+        this.backwardWorkList = new NodeWorkList<N>(null, true);
         this.workListOfEdges = new LinkedList<Pair<N, N>>();
     }
 
@@ -128,49 +145,106 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
      * @param reverse
      *            <tt>true</tt> if the analysis is in the reverse direction, and
      *            <tt>false</tt> if the analysis is in the forward direction
+     * @deprecated the direction is now implied by the work-list being used, and
+     *            the numbering should be shared across contexts; use
+     *            {@link #Context(Object, NodeNumbering)} instead
      */
+    @Deprecated
     public Context(M method, DirectedGraph<N> cfg, boolean reverse) {
+        this(method, new NodeNumbering<N>(cfg));
+    }
+
+    /**
+     * Creates a new context for the given method, whose nodes have already
+     * been numbered.
+     *
+     * <p>
+     * The numbering is typically computed once per method and shared by all of
+     * its contexts. The forward work-list processes nodes in increasing order
+     * of their number and the backward work-list in decreasing order.
+     * </p>
+     *
+     * @param method
+     *            the method to which this value context belongs
+     * @param numbering
+     *            the numbering of the nodes of the control-flow graph of
+     *            <tt>method</tt>
+     */
+    public Context(M method, NodeNumbering<N> numbering) {
+        this(method, numbering, false);
+    }
+
+    /**
+     * Creates a new context for the given method, whose nodes have already
+     * been numbered, optionally storing data flow values in arrays.
+     *
+     * <p>
+     * In dense mode, the values before and after each node are stored in
+     * arrays indexed by the node's number, instead of in hash maps of the
+     * context. This avoids a map entry per node and value in every context.
+     * </p>
+     *
+     * @param method
+     *            the method to which this value context belongs
+     * @param numbering
+     *            the numbering of the nodes of the control-flow graph of
+     *            <tt>method</tt>
+     * @param denseStorage
+     *            <tt>true</tt> to store data flow values in arrays indexed by
+     *            node number, or <tt>false</tt> to store them in hash maps
+     */
+    public Context(M method, NodeNumbering<N> numbering, boolean denseStorage) {
+        this(method, numbering, denseStorage, null);
+    }
+
+    /**
+     * Creates a new context for the given method, whose nodes have already
+     * been numbered, optionally storing data flow values in arrays and
+     * interning them.
+     *
+     * <p>
+     * If an interner is given, every value stored into this context is
+     * replaced by its canonical representative, so that stored values which
+     * are equal are also identical.
+     * </p>
+     *
+     * @param method
+     *            the method to which this value context belongs
+     * @param numbering
+     *            the numbering of the nodes of the control-flow graph of
+     *            <tt>method</tt>
+     * @param denseStorage
+     *            <tt>true</tt> to store data flow values in arrays indexed by
+     *            node number, or <tt>false</tt> to store them in hash maps
+     * @param interner
+     *            the table of canonical values, or <tt>null</tt> to store
+     *            values as given
+     */
+    public Context(M method, NodeNumbering<N> numbering, boolean denseStorage, ValueInterner<A> interner) {
         // Increment count and set id.
         count++;
         this.id = count;
 
         // Initialise fields.
         this.method = method;
-        this.controlFlowGraph = cfg;
-        this.inValues = new HashMap<N,A>();
-        this.outValues = new HashMap<N,A>();
+        this.controlFlowGraph = numbering.getControlFlowGraph();
+        this.numbering = numbering;
+        this.interner = interner;
+        if (denseStorage) {
+            this.denseInValues = new Object[numbering.size()];
+            this.denseOutValues = new Object[numbering.size()];
+        } else {
+            this.inValues = new HashMap<N,A>();
+            this.outValues = new HashMap<N,A>();
+        }
         this.analysed = false;
 
         totalNodes = totalNodes + controlFlowGraph.size();
         liveNodes = liveNodes + controlFlowGraph.size();
 
-        // Now to initialise work-list. First, let's create a total order.
-        @SuppressWarnings("unchecked")
-        List<N> orderedNodes = new SlowPseudoTopologicalOrderer().newList(controlFlowGraph, reverse);
-        // Then a mapping from a N to the position in the order.
-        final Map<N,Integer> numbers = new HashMap<N,Integer>();
-        int num = 1;
-        for (N N : orderedNodes) {
-            numbers.put(N, num);
-            num++;
-        }
-        // Map the lowest priority to the null N, which is used to aggregate
-        // ENTRY/EXIT flows.
-        numbers.put(null, Integer.MAX_VALUE);
-        // Now, create a sorted set with a comparator created on-the-fly using
-        // the total order.
-        this.forwardWorkList = new TreeSet<N>(new Comparator<N>() {
-            @Override
-            public int compare(N u, N v) {
-                return numbers.get(u) - numbers.get(v);
-            }
-        });
-        this.backwardWorkList = new TreeSet<N>(new Comparator<N>() {
-            @Override
-            public int compare(N u, N v) {
-                return numbers.get(u) - numbers.get(v);
-            }
-        });
+        // Now to initialise work-lists, which share the method's total order.
+        this.forwardWorkList = new NodeWorkList<N>(numbering, false);
+        this.backwardWorkList = new NodeWorkList<N>(numbering, true);
         this.workListOfEdges = new LinkedList<Pair<N, N>>();
     }
 
@@ -191,15 +265,51 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
      * of this context.
      */
     public void freeMemory() {
-        liveNodes = liveNodes - controlFlowGraph.size();
+        if (controlFlowGraph != null) {
+            liveNodes = liveNodes - controlFlowGraph.size();
+        }
         inValues = null;
         outValues = null;
+        denseInValues = null;
+        denseOutValues = null;
         controlFlowGraph = null;
         forwardWorkList = null;
         backwardWorkList = null;
         freeContexts.add(this);
     }
 
+    /**
+     * Returns the canonical call-site of a node in this context, creating it
+     * when the node is first visited.
+     *
+     * @param node a call node of this context's method
+     * @return the unique call-site of <tt>node</tt> in this context
+     */
+    public synchronized CallSite<M,N,A> getCallSite(N node) {
+        if (callSites == null) {
+            callSites = new HashMap<N,CallSite<M,N,A>>();
+        }
+        CallSite<M,N,A> callSite = callSites.get(node);
+        if (callSite == null) {
+            callSite = new CallSite<M,N,A>(this, node);
+            callSites.put(node, callSite);
+        }
+        return callSite;
+    }
+
+    /**
+     * Returns the canonical call-site of a node in this context, if the node
+     * has been visited as a call node. Unlike {@link #getCallSite(Object)},
+     * this never creates a call-site.
+     *
+     * @param node a node of this context's method
+     * @return the unique call-site of <tt>node</tt> in this context, or
+     *         <tt>null</tt> if there is none
+     */
+    public synchronized CallSite<M,N,A> findCallSite(N node) {
+        return callSites == null ? null : callSites.get(node);
+    }
+
     /**
      * Returns a reference to the control flow graph of this context's method.
      *
@@ -266,7 +376,12 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
      * @param node a node in the control flow graph
      * @return the data flow value at the exit of the given node
      */
+    @SuppressWarnings("unchecked")
     public A getValueAfter(N node) {
+        if (denseOutValues != null) {
+            int index = numbering.indexOf(node);
+            return index < 0 ? null : (A) denseOutValues[index];
+        }
         return outValues.get(node);
     }
 
@@ -276,20 +391,70 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
      * @param node a node in the control flow graph
      * @return the data flow value at the entry of the given node
      */
+    @SuppressWarnings("unchecked")
     public A getValueBefore(N node) {
+        if (denseInValues != null) {
+            int index = numbering.indexOf(node);
+            return index < 0 ? null : (A) denseInValues[index];
+        }
         return inValues.get(node);
     }
 
     /**
-     * Returns a reference to this context's work-list.
+     * Gets the data flow value at the exit of a node given by its index in
+     * the {@link #getNodeNumbering() numbering}.
+     *
+     * @param index the index of a node in the control flow graph
+     * @return the data flow value at the exit of the node
+     */
+    @SuppressWarnings("unchecked")
+    public A getValueAfter(int index) {
+        if (denseOutValues != null) {
+            return (A) denseOutValues[index];
+        }
+        return outValues.get(numbering.getNode(index));
+    }
+
+    /**
+     * Gets the data flow value at the entry of a node given by its index in
+     * the {@link #getNodeNumbering() numbering}.
      *
-     * @return a reference to this context's work-list
+     * @param index the index of a node in the control flow graph
+     * @return the data flow value at the entry of the node
      */
-    public NavigableSet<N> getForwardWorkList() {
+    @SuppressWarnings("unchecked")
+    public A getValueBefore(int index) {
+        if (denseInValues != null) {
+            return (A) denseInValues[index];
+        }
+        return inValues.get(numbering.getNode(index));
+    }
+
+    /**
+     * Returns the numbering of the nodes of this context's method.
+     *
+     * @return the numbering of the nodes of the control flow graph, or
+     * <tt>null</tt> for a context without a control flow graph
+     */
+    public NodeNumbering<N> getNodeNumbering() {
+        return numbering;
+    }
+
+    /**
+     * Returns a reference to this context's work-list for forward flows.
+     *
+     * @return a reference to this context's work-list for forward flows
+     */
+    public NodeWorkList<N> getForwardWorkList() {
         return forwardWorkList;
     }
 
-    public NavigableSet<N> getBackwardWorkList() {
+    /**
+     * Returns a reference to this context's work-list for backward flows.
+     *
+     * @return a reference to this context's work-list for backward flows
+     */
+    public NodeWorkList<N> getBackwardWorkList() {
         return backwardWorkList;
     }
 
@@ -314,7 +479,33 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
      * @return <tt>true</tt> if the context data has been released
      */
     boolean isFreed() {
-        return inValues == null && outValues == null;
+        return inValues == null && outValues == null
+                && denseInValues == null && denseOutValues == null;
+    }
+
+    /**
+     * Removes and returns the boundary value of a pending widening of this
+     * context, which must then be applied to its boundary nodes. The caller
+     * must hold the lock on this context.
+     *
+     * @return the new value at the boundary nodes, or <tt>null</tt> if this
+     * context has not been widened since the last call
+     */
+    A takeWidenedValue() {
+        A value = widenedValue;
+        widenedValue = null;
+        return value;
+    }
+
+    /**
+     * Records a widening of this context, to be applied to its boundary nodes
+     * by the thread analysing it. The caller must hold the lock on this
+     * context.
+     *
+     * @param value the new value at the boundary nodes
+     */
+    void setWidenedValue(A value) {
+        this.widenedValue = value;
     }
 
     /**
@@ -330,7 +521,7 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
      * @param entryValue the new data flow value at the method entry
      */
     public void setEntryValue(A entryValue) {
-        this.entryValue = entryValue;
+        this.entryValue = intern(entryValue);
     }
 
     /**
@@ -339,7 +530,7 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
      * @param exitValue the new data flow value at the method exit
      */
     public void setExitValue(A exitValue) {
-        this.exitValue = exitValue;
+        this.exitValue = intern(exitValue);
     }
     /**
      * Sets the data flow value at the exit of the given node.
@@ -348,7 +539,11 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
      * @param value the new data flow at the node exit
      */
     public void setValueAfter(N node, A value) {
-        outValues.put(node, value);
+        if (denseOutValues != null) {
+            denseOutValues[denseIndex(node)] = intern(value);
+        } else {
+            outValues.put(node, intern(value));
+        }
     }
     /**
      * Sets the data flow value at the entry of the given node.
@@ -357,7 +552,55 @@ public class Context<M,N,A> implements soot.Context, Comparable<Context<M,N,A>>
      * @param value the new data flow at the node entry
      */
     public void setValueBefore(N node, A value) {
-        inValues.put(node, value);
+        if (denseInValues != null) {
+            denseInValues[denseIndex(node)] = intern(value);
+        } else {
+            inValues.put(node, intern(value));
+        }
+    }
+
+    /**
+     * Sets the data flow value at the exit of a node given by its index in
+     * the {@link #getNodeNumbering() numbering}.
+     *
+     * @param index the index of a node in the control flow graph
+     * @param value the new data flow at the node exit
+     */
+    public void setValueAfter(int index, A value) {
+        if (denseOutValues != null) {
+            denseOutValues[index] = intern(value);
+        } else {
+            outValues.put(numbering.getNode(index), intern(value));
+        }
+    }
+
+    /**
+     * Sets the data flow value at the entry of a node given by its index in
+     * the {@link #getNodeNumbering() numbering}.
+     *
+     * @param index the index of a node in the control flow graph
+     * @param value the new data flow at the node entry
+     */
+    public void setValueBefore(int index, A value) {
+        if (denseInValues != null) {
+            denseInValues[index] = intern(value);
+        } else {
+            inValues.put(numbering.getNode(index), intern(value));
+        }
+    }
+
+    // Returns the canonical representative of a value, if values are interned
+    private A intern(A value) {
+        return interner == null ? value : interner.intern(value);
+    }
+
+    // Returns the index of a node in the dense value arrays
+    private int denseIndex(N node) {
+        int index = numbering.indexOf(node);
+        if (index < 0) {
+            throw new IllegalArgumentException("Node is not in the control-flow graph: " + node);
+        }
+        return index;
     }
 
     /** {@inheritDoc} */
@@ -54,6 +54,9 @@ public class ContextTransitionTable<M,N,A> {
 	
 	/** A set of call-sites from which transitions are unknown. */
 	protected Set<CallSite<M,N,A>> defaultCallSites;
+
+	/** The number of times that transitions have been replaced or removed. */
+	protected int modificationCount;
 	
 	/** Constructs a new context transition table with no initial entries. */
 	public ContextTransitionTable() {
@@ -91,7 +94,10 @@ public class ContextTransitionTable<M,N,A> {
 			// Remove previous entry in the reverse direction
 			if (transitions.containsKey(callSite) && transitions.get(callSite).containsKey(targetMethod)) {
 				Context<M,N,A> oldTarget = transitions.get(callSite).get(targetMethod);
-				callers.get(oldTarget).remove(callSite);
+				if (oldTarget != targetContext) {
+					callers.get(oldTarget).remove(callSite);
+					modificationCount++;
+				}
 			}
 	
 			// Ensure memory allocated in the forward direction
@@ -113,7 +119,9 @@ public class ContextTransitionTable<M,N,A> {
 				}
 			}
 			// Add to default call sites
-			defaultCallSites.add(callSite);
+			if (defaultCallSites.add(callSite)) {
+				modificationCount++;
+			}
 		}
 		
 		// Ensure memory allocated for call-site index
@@ -231,7 +239,58 @@ public class ContextTransitionTable<M,N,A> {
 		}		
 		return reachableContexts;
 	}
-	
-	
+
+	/**
+	 * Returns the number of times that a transition has been replaced or
+	 * removed, including when a call-site is marked "default".
+	 * 
+	 * <p>As long as this count does not change, transitions are only added,
+	 * and hence any context found to be reachable from another remains
+	 * reachable from it.</p>
+	 * 
+	 * @return the number of times that a transition has been replaced or removed
+	 */
+	public int getModificationCount() {
+		return modificationCount;
+	}
+
+	/**
+	 * Removes all transitions into and out of a value context.
+	 * 
+	 * <p>The call-sites of the context are removed as sources of transitions,
+	 * and call-sites of other contexts no longer transition to it.</p>
+	 * 
+	 * @param context the value context to remove
+	 */
+	public void removeContext(Context<M,N,A> context) {
+		modificationCount++;
+
+		// Remove transitions from call-sites within the context
+		Set<CallSite<M,N,A>> callSites = callSitesOfContexts.remove(context);
+		if (callSites != null) {
+			for (CallSite<M,N,A> callSite : callSites) {
+				Map<M,Context<M,N,A>> targets = transitions.remove(callSite);
+				if (targets != null) {
+					for (Context<M,N,A> target : targets.values()) {
+						if (callers.containsKey(target)) {
+							callers.get(target).remove(callSite);
+						}
+					}
+				}
+				defaultCallSites.remove(callSite);
+			}
+		}
+		
+		// Remove transitions from call-sites of other contexts to this context
+		Set<CallSite<M,N,A>> callingSites = callers.remove(context);
+		if (callingSites != null) {
+			for (CallSite<M,N,A> callSite : callingSites) {
+				Map<M,Context<M,N,A>> targets = transitions.get(callSite);
+				if (targets != null && targets.get(context.getMethod()) == context) {
+					targets.remove(context.getMethod());
+				}
+			}
+		}
+	}
 
 }
@@ -17,9 +17,10 @@
  */
 package vasco;
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A generic forward-flow inter-procedural analysis which is fully
@@ -44,6 +45,36 @@ import java.util.Set;
  */
 public abstract class ForwardInterProceduralAnalysis<M,N,A> extends InterProceduralAnalysis<M,N,A> {
 
+	/**
+	 * The number of worker threads used to analyse value contexts concurrently.
+	 * 
+	 * <p>If this is greater than one, then {@link #doAnalysis()} uses a parallel
+	 * solver which analyses independent value contexts concurrently on a 
+	 * fork-join pool, where each context is analysed by at most one thread at a
+	 * time. The flow functions of the client analysis must then be safe for
+	 * concurrent invocation on distinct contexts. As the flow functions are 
+	 * monotonic, the parallel solver computes the same fixed point as the
+	 * sequential solver, although it may construct additional (intermediate)
+	 * value contexts due to the different order of processing.</p>
+	 * 
+	 * <p>The default value is <tt>0</tt>, which selects the sequential solver.</p>
+	 */
+	protected int parallelism;
+
+	/** 
+	 * A lock guarding the state shared between contexts, i.e. the work-list of
+	 * contexts, the mapping of methods to contexts, the context transition table 
+	 * and the entry/exit values of contexts. The work-list of nodes of a context
+	 * is additionally guarded by the lock on the context itself.
+	 */
+	private final Object lock = new Object();
+
+	/** The pool of worker threads used by the parallel solver, if any. */
+	private ForkJoinPool pool;
+
+	/** The first exception thrown by a worker thread of the parallel solver. */
+	private Throwable failure;
+
 	/** Constructs a new forward-flow inter-procedural analysis. */
 	public ForwardInterProceduralAnalysis() {
 		// Kick-up to the super with the FORWARD direction.
@@ -57,69 +88,162 @@ public abstract class ForwardInterProceduralAnalysis<M,N,A> extends InterProcedu
 	@Override
 	public void doAnalysis() {
 
-		// Initial contexts
-		for (M method : programRepresentation().getEntryPoints()) {
-			initContext(method, boundaryValue(method));
+		// Create worker threads if the parallel solver is enabled
+		if (parallelism > 1) {
+			pool = new ForkJoinPool(parallelism);
+			failure = null;
 		}
 
-		// Perform work-list based analysis
-		while (!worklist.isEmpty()) {
-			// Get the newest context on the work-list
-			Context<M,N,A> currentContext = worklist.last();
-
-			// If this context has no more nodes to analyze, then take it out of the work-list
-			if (currentContext.getForwardWorkList().isEmpty()) {
-				currentContext.markAnalysed();
-				worklist.remove(currentContext);
-				continue;
+		try {
+			// Initial contexts (unless retained from a previous analysis)
+			synchronized (lock) {
+				for (M method : programRepresentation().getEntryPoints()) {
+					if (entryContexts.containsKey(method) == false) {
+						A boundaryValue = boundaryValue(method);
+						Context<M,N,A> context = getContext(method, boundaryValue);
+						if (context == null) {
+							context = initContext(method, boundaryValue);
+						}
+						entryContexts.put(method, context);
+					}
+				}
 			}
 
+			if (pool != null) {
+				// Contexts are analysed by tasks submitted to the pool; wait for them
+				awaitWorkers();
+			} else {
+				// Perform work-list based analysis
+				while (!workList.isEmpty()) {
+					// Get the newest context on the work-list
+					Context<M,N,A> currentContext = workList.last();
+
+					// If this context has no more nodes to analyze, then take it out of the work-list
+					if (currentContext.getForwardWorkList().isEmpty()) {
+						currentContext.markAnalysed();
+						workList.remove(currentContext);
+						continue;
+					}
 
-			// Remove the next node to process from the context's work-list
-			N node = currentContext.getForwardWorkList().pollFirst();
+					// Remove the next node to process from the context's work-list
+					int index = currentContext.getForwardWorkList().pollFirstIndex();
 
-			if (node != null) {
-				// Compute the IN data flow value (only for non-entry units).
-				List<N> predecessors = currentContext.getControlFlowGraph().getPredsOf(node);
-				if (predecessors.size() != 0) {
-					// Initialise to the TOP value
-					A in = topValue();
-					// Merge OUT values of all predecessors
-					for (N pred : predecessors) {
-						A predOut = currentContext.getValueAfter(pred);
-						in = meet(in, predOut);
+					// Apply a pending widening of the context, if any
+					A widenedValue = currentContext.takeWidenedValue();
+					if (widenedValue != null) {
+						applyWidening(currentContext, widenedValue);
 					}
-					// Set the IN value at the node to the result
-					currentContext.setValueBefore(node, in);
+
+					// Process it
+					processNode(currentContext, index);
 				}
+			}
+		} finally {
+			// Release worker threads
+			if (pool != null) {
+				pool.shutdownNow();
+				pool = null;
+			}
+		}
 
-				// Store the value of OUT before the flow function is processed.
-				A prevOut = currentContext.getValueAfter(node);
+		// Sanity check
+		for (List<Context<M,N,A>> contextList : contexts.values()) {
+			for (Context<M,N,A> context : contextList) {
+				if (context.isAnalysed() == false) {
+					System.err.println("*** ATTENTION ***: Only partial analysis of X" + context +
+							" " + context.getMethod());
+				}
+			}
+		}
 
-				// Get the value of IN 
-				A in = currentContext.getValueBefore(node);
+		// Persist the results of contexts for later runs
+		saveSummaries();
+	}
 
-				if (verbose) {
-					System.out.println("IN = " + in);
-					System.err.println(node);
+	/**
+	 * Processes a node removed from the work-list of a context.
+	 * 
+	 * <p>For a non-null node, the IN value is computed as the meet of the OUT 
+	 * values of its predecessors, after which the flow function is applied. For
+	 * the <tt>null</tt> node, the exit value of the context is computed and its
+	 * callers are added to the work-list.</p>
+	 * 
+	 * <p>This method may be invoked concurrently for distinct contexts, and
+	 * therefore acquires {@link #lock} whenever shared state is accessed.</p>
+	 * 
+	 * @param currentContext the context being analysed
+	 * @param index the index of the node to process in the context's
+	 *              {@link NodeNumbering}, or <tt>-1</tt> for the end of the method
+	 */
+	private void processNode(Context<M,N,A> currentContext, int index) {
+		NodeNumbering<N> numbering = currentContext.getNodeNumbering();
+		if (index >= 0) {
+			N node = numbering.getNode(index);
+
+			// Compute the IN data flow value (only for non-entry units).
+			int[] predecessors = numbering.getPredecessors(index);
+			if (predecessors.length != 0) {
+				// Initialise to the TOP value
+				A in = topValue();
+				// Merge OUT values of all predecessors
+				for (int pred : predecessors) {
+					A predOut = currentContext.getValueAfter(pred);
+					in = meet(in, predOut);
 				}
+				// Set the IN value at the node to the result
+				currentContext.setValueBefore(index, in);
+			}
+
+			// Store the value of OUT before the flow function is processed.
+			A prevOut = currentContext.getValueAfter(index);
 
-				// Now to compute the OUT value
-				A out;
+			// Get the value of IN 
+			A in = currentContext.getValueBefore(index);
 
-				// Handle flow functions depending on whether this is a call statement or not
-				if (programRepresentation().isCall(node)) {
+			if (verbose) {
+				System.out.println("IN = " + in);
+				System.err.println(node);
+			}
 
-					out = topValue();
-					boolean hit = false;
-					if (!programRepresentation().resolveTargets(currentContext.getMethod(), node).isEmpty()) {
-						for (M targetMethod : programRepresentation().resolveTargets(currentContext.getMethod(), node)) {
-							A entryValue = callEntryFlowFunction(currentContext, targetMethod, node, in);
+			// Now to compute the OUT value
+			A out;
 
-							CallSite<M,N,A> callSite = new CallSite<M,N,A>(currentContext, node);
+			// Count flow functions invoked and measure time taken, if monitored
+			boolean monitored = isMonitored();
+			long startTime = monitored ? System.nanoTime() : 0L;
+			int invocations = 0;
 
+			// Handle flow functions depending on whether this is a call statement or not
+			if (programRepresentation().isCall(node)) {
+
+				out = topValue();
+				boolean hit = false;
+				if (!programRepresentation().resolveTargets(currentContext.getMethod(), node).isEmpty()) {
+					for (M targetMethod : programRepresentation().resolveTargets(currentContext.getMethod(), node)) {
+						A callValue = callEntryFlowFunction(currentContext, targetMethod, node, in);
+						invocations++;
+
+						// Only the part of the value relevant to the target identifies its context
+						A entryValue = projectEntryValue(targetMethod, callValue);
+
+						CallSite<M,N,A> callSite = currentContext.getCallSite(node);
+
+						Context<M,N,A> targetContext;
+						A exitValue = null;
+						synchronized (lock) {
 							// Check if the called method has a context associated with this entry flow:
-							Context<M,N,A> targetContext = getContext(targetMethod, entryValue);
+							targetContext = findContext(targetMethod, entryValue);
+							// If not, then look for a summary stored in an earlier run.
+							if (targetContext == null) {
+								targetContext = loadSummary(targetMethod, entryValue);
+								if (targetContext != null && verbose) {
+									System.out.println("[SUMMARY] X" + currentContext + " -> X" + targetContext + " " + targetMethod + " ");
+								}
+							}
+							// If not, then merge into the summary context if the method has exhausted its budget.
+							if (targetContext == null) {
+								targetContext = mergeContext(targetMethod, entryValue);
+							}
 							// If not, then set 'targetContext' to a new context with the given entry flow.
 							if (targetContext == null) {
 								targetContext = initContext(targetMethod, entryValue);
@@ -136,68 +260,85 @@ public abstract class ForwardInterProceduralAnalysis<M,N,A> extends InterProcedu
 							// Check if the target context has been analysed (surely not if it is just newly made):
 							if (targetContext.isAnalysed()) {
 								hit = true;
-								A exitValue = targetContext.getExitValue();
-								if (verbose) {
-									System.out.println("[HIT] X" + currentContext + " -> X" + targetContext + " " + targetMethod + " ");
-									System.out.println("EXIT(X" + targetContext + ") = " + exitValue);
-								}
-								A returnedValue = callExitFlowFunction(currentContext, targetMethod, node, exitValue);
-								out = meet(out, returnedValue);
+								exitValue = targetContext.getExitValue();
 							}
 						}
 
-						// If there was at least one hit, continue propagation
-						if (hit) {
-							A localValue = callLocalFlowFunction(currentContext, node, in);
-							out = meet(out, localValue);
-						}
-						else {
-							out = callLocalFlowFunction(currentContext, node, in);
+						if (exitValue != null) {
+							if (verbose) {
+								System.out.println("[HIT] X" + currentContext + " -> X" + targetContext + " " + targetMethod + " ");
+								System.out.println("EXIT(X" + targetContext + ") = " + exitValue);
+							}
+							A returnedValue = callExitFlowFunction(currentContext, targetMethod, node, restoreExitValue(targetMethod, callValue, exitValue));
+							invocations++;
+							out = meet(out, returnedValue);
 						}
 					}
-					else
-					{
-						// handle phantom method
+
+					// If there was at least one hit, continue propagation
+					if (hit) {
+						A localValue = callLocalFlowFunction(currentContext, node, in);
+						invocations++;
+						out = meet(out, localValue);
+					}
+					else {
 						out = callLocalFlowFunction(currentContext, node, in);
+						invocations++;
 					}
-				} else {
-					out = normalFlowFunction(currentContext, node, in);
 				}
-				if (verbose) {
-					System.out.println("OUT = " + out);
-					System.out.println("---------------------------------------");
+				else
+				{
+					// handle phantom method
+					out = callLocalFlowFunction(currentContext, node, in);
+					invocations++;
 				}
+			} else {
+				out = normalFlowFunction(currentContext, node, in);
+				invocations++;
+			}
+			if (monitored) {
+				fireNodeProcessed(currentContext, node, invocations, System.nanoTime() - startTime);
+			}
+			if (verbose) {
+				System.out.println("OUT = " + out);
+				System.out.println("---------------------------------------");
+			}
 
 
-				// Merge with previous OUT to force monotonicity (harmless if flow functions are monotinic)
-				out = meet(out, prevOut);
+			// Merge with previous OUT to force monotonicity (harmless if flow functions are monotinic)
+			out = meet(out, prevOut);
 
-				// Set the OUT value
-				currentContext.setValueAfter(node, out);
+			// Set the OUT value, and read back its canonical instance if values are interned
+			currentContext.setValueAfter(index, out);
+			out = currentContext.getValueAfter(index);
 
+			synchronized (currentContext) {
 				// If OUT has changed...
-				if (out.equals(prevOut) == false) {
+				if (sameValue(out, prevOut) == false) {
 					// Then add successors to the work-list.
-					for (N successor : currentContext.getControlFlowGraph().getSuccsOf(node)) {
+					for (int successor : numbering.getSuccessors(index)) {
 						currentContext.getForwardWorkList().add(successor);
 					}
 				}
 				// If the unit is in TAILS, then we have at least one
 				// path to the end of the method, so add the NULL unit
-				if (currentContext.getControlFlowGraph().getTails().contains(node)) {
+				if (numbering.isTail(index)) {
 					currentContext.getForwardWorkList().add(null);
 				}
-			} else {
-				// NULL unit, which means the end of the method.
-				assert (currentContext.getForwardWorkList().isEmpty());
-
-				// Exit value is the merge of the OUTs of the tail nodes.
-				A exitValue = topValue();
-				for (N tailNode : currentContext.getControlFlowGraph().getTails()) {
-					A tailOut = currentContext.getValueAfter(tailNode);
-					exitValue = meet(exitValue, tailOut);
-				}
+			}
+		} else {
+			// NULL unit, which means the end of the method (other workers 
+			// may since have added call nodes if the solver is parallel).
+			assert (pool != null || currentContext.getForwardWorkList().isEmpty());
+
+			// Exit value is the merge of the OUTs of the tail nodes.
+			A exitValue = topValue();
+			for (N tailNode : currentContext.getControlFlowGraph().getTails()) {
+				A tailOut = currentContext.getValueAfter(tailNode);
+				exitValue = meet(exitValue, tailOut);
+			}
 
+			synchronized (lock) {
 				// Set the exit value of the context.
 				currentContext.setExitValue(exitValue);
 
@@ -212,41 +353,135 @@ public abstract class ForwardInterProceduralAnalysis<M,N,A> extends InterProcedu
 						Context<M,N,A> callingContext = callSite.getCallingContext();
 						N callNode = callSite.getCallNode();
 						// Add the calling unit to the calling context's node work-list.
-						callingContext.getForwardWorkList().add(callNode);
+						synchronized (callingContext) {
+							callingContext.getForwardWorkList().add(callNode);
+						}
 						// Ensure that the calling context is on the context work-list.
-						worklist.add(callingContext);
+						addToWorkList(callingContext);
 					}
 				}
 
 				// Free memory on-the-fly if not needed
 				if (freeResultsOnTheFly) {
-					Set<Context<M,N,A>> reachableContexts = contextTransitions.reachableSet(currentContext, true);
-					// If any reachable contexts exist on the work-list, then we cannot free memory
-					boolean canFree = true;
-					for (Context<M,N,A> reachableContext : reachableContexts) {
-						if (worklist.contains(reachableContext)) {
-							canFree = false;
-							break;
-						}
-					}
-					// If no reachable contexts on the stack, then free memory associated
-					// with this context
-					if (canFree) {
-						for (Context<M,N,A> reachableContext : reachableContexts) {
-							reachableContext.freeMemory();
-						}
-					}
+					freeIfNotPending(currentContext, workList);
 				}
 			}
+		}
+	}
 
+	/**
+	 * Adds a context to the work-list of contexts. If the parallel solver is
+	 * in use and the context was not already on the work-list, then a task
+	 * to analyse it is also submitted to the pool of worker threads.
+	 * 
+	 * <p>The caller must hold {@link #lock}.</p>
+	 * 
+	 * @param context the context to add to the work-list
+	 * @return <tt>true</tt> if the context was not already on the work-list
+	 */
+	@Override
+	protected boolean addToWorkList(Context<M,N,A> context) {
+		if (super.addToWorkList(context)) {
+			if (pool != null) {
+				pool.execute(new ContextTask(context));
+			}
+			return true;
 		}
+		return false;
+	}
 
-		// Sanity check
-		for (List<Context<M,N,A>> contextList : contexts.values()) {
-			for (Context<M,N,A> context : contextList) {
-				if (context.isAnalysed() == false) {
-					System.err.println("*** ATTENTION ***: Only partial analysis of X" + context +
-							" " + context.getMethod());
+	/**
+	 * Waits until the work-list of contexts becomes empty, which means that
+	 * all tasks submitted to the pool of worker threads have completed.
+	 * 
+	 * <p>If any worker failed with an exception, it is re-thrown here.</p>
+	 */
+	private void awaitWorkers() {
+		synchronized (lock) {
+			while (!workList.isEmpty() && failure == null) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for analysis to complete", e);
+				}
+			}
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			} else if (failure instanceof Error) {
+				throw (Error) failure;
+			} else if (failure != null) {
+				throw new RuntimeException(failure);
+			}
+		}
+	}
+
+	/**
+	 * A task of the parallel solver which processes nodes from the work-list of
+	 * a single context until it becomes empty, after which the context is taken
+	 * out of the work-list of contexts.
+	 * 
+	 * <p>A task is only submitted when its context is added to the work-list
+	 * of contexts, hence at most one task analyses a context at any time.</p>
+	 */
+	private class ContextTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The context to analyse. */
+		private final Context<M,N,A> context;
+
+		ContextTask(Context<M,N,A> context) {
+			this.context = context;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				while (true) {
+					// Remove the next node to process from the context's work-list
+					int index = -1;
+					A widenedValue = null;
+					boolean empty;
+					synchronized (context) {
+						empty = context.getForwardWorkList().isEmpty();
+						if (!empty) {
+							index = context.getForwardWorkList().pollFirstIndex();
+							widenedValue = context.takeWidenedValue();
+						}
+					}
+
+					// Apply a pending widening of the context, which this task owns
+					if (widenedValue != null) {
+						applyWidening(context, widenedValue);
+					}
+
+					if (empty) {
+						// If this context has no more nodes to analyze, then take it out of the 
+						// work-list unless some other worker has added a node in the meantime.
+						synchronized (lock) {
+							synchronized (context) {
+								if (context.getForwardWorkList().isEmpty()) {
+									context.markAnalysed();
+									workList.remove(context);
+									if (workList.isEmpty()) {
+										lock.notifyAll();
+									}
+									return;
+								}
+							}
+						}
+					} else {
+						processNode(context, index);
+					}
+				}
+			} catch (Throwable t) {
+				// Record the failure and wake up the waiting thread
+				synchronized (lock) {
+					if (failure == null) {
+						failure = t;
+					}
+					lock.notifyAll();
 				}
 			}
 		}
@@ -286,7 +521,7 @@ public abstract class ForwardInterProceduralAnalysis<M,N,A> extends InterProcedu
 	 */
 	protected Context<M,N,A> initContext(M method, A entryValue) {
 		// Construct the context
-		Context<M,N,A> context = new Context<M,N,A>(method, programRepresentation().getControlFlowGraph(method), false);
+		Context<M,N,A> context = newContext(method);
 
 		// Initialise IN/OUT for all nodes and add them to the work-list
 		for (N unit : context.getControlFlowGraph()) {
@@ -303,13 +538,10 @@ public abstract class ForwardInterProceduralAnalysis<M,N,A> extends InterProcedu
 		context.setExitValue(topValue());
 
 		// Add this new context to the given method's mapping.
-		if (!contexts.containsKey(method)) {
-			contexts.put(method, new LinkedList<Context<M,N,A>>());
-		}
-		contexts.get(method).add(context);
+		addContext(context);
 
 		// Add this context to the global work-list
-		worklist.add(context);
+		addToWorkList(context);
 
 		return context;
 
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package vasco;
+
+/**
+ * A program representation which caches control-flow graphs, and can discard
+ * them when the bodies of methods change.
+ * 
+ * <p>{@link InterProceduralAnalysis#doIncrementalAnalysis(java.util.Collection)}
+ * invalidates the cached graphs of the changed methods, so that the analysis
+ * sees their new bodies.</p>
+ * 
+ * @author Rohan Padhye
+ *
+ * @param <M> the type of a method
+ * @param <N> the type of a node in the CFG
+ */
+public interface IncrementalProgramRepresentation<M,N> extends ProgramRepresentation<M,N> {
+
+	/**
+	 * Discards the cached control flow graph of a method whose body has
+	 * changed, so that it is re-built on the next request.
+	 * 
+	 * @param method the method whose body has changed
+	 */
+	public void invalidateControlFlowGraph(M method);
+
+}
@@ -17,14 +17,19 @@
  */
 package vasco;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A generic inter-procedural analysis which is fully context-sensitive.
@@ -54,6 +59,28 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	/** A mapping from methods to a list of contexts for quick lookups. */
 	protected final Map<M,List<Context<M,N,A>>> contexts;
 
+	/**
+	 * A mapping from methods to an index of their contexts, keyed by the
+	 * data flow value which identifies each context.
+	 * 
+	 * @see #contextKey(Context)
+	 */
+	protected final Map<M,Map<A,Context<M,N,A>>> contextIndex;
+
+	/**
+	 * A mapping from the program entry points to their value contexts, which
+	 * are created with the {@link #boundaryValue(Object) boundary value} by
+	 * {@link #doAnalysis()}, and retained across incremental re-analyses
+	 * unless invalidated.
+	 */
+	protected final Map<M,Context<M,N,A>> entryContexts;
+
+	/**
+	 * A mapping from methods to the numbering of the nodes of their
+	 * control-flow graphs, which is shared by all contexts of a method.
+	 */
+	protected final Map<M,NodeNumbering<N>> nodeNumberings;
+
 	/**
 	 * A record of transitions from calling context and call-site to 
 	 * called method and called context.
@@ -64,6 +91,21 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	    FORWARD, BACKWARD, BI_DIRECTION
     }
 
+	/**
+	 * Policies for re-using a value context at a call-site whose data flow
+	 * value is not exactly the value identifying the context.
+	 * 
+	 * @see InterProceduralAnalysis#subsumption
+	 */
+	protected enum Subsumption {
+		/** Only re-use a context identified by an equal value. */
+		NONE,
+		/** Also re-use an analysed context identified by a value which subsumes the call's value. */
+		ANALYSED,
+		/** Also re-use any context identified by a value which subsumes the call's value. */
+		ALL
+	}
+
 	/**
 	 * <tt>true</tt> if the direction of analysis is backward, or <tt>false</tt>
 	 * if it is forward.
@@ -84,7 +126,7 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	 * <p>Memory is freed when a context is removed from the work-list and no context
 	 * reachable from it in the transition table is also on the work-list. This 
 	 * ensures that the removed context will not be added again on the work-list
-	 * for re-analysis of any statement.</p>
+	 * for re-analysis of any statement. See {@link #freeIfNotPending(Context, Collection)}.</p>
 	 * 
 	 * <p>Note that the data flow values at the entry/exit of the context are
 	 * not freed, and hence it is still used to terminate recursion or as a cache
@@ -99,6 +141,132 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	 * Whether to print information about contexts.
 	 */
 	protected boolean verbose;
+
+	/**
+	 * A flag, if set, directs the analysis to store the data flow values of
+	 * individual statements in arrays indexed by the method's node numbering,
+	 * rather than in a hash map per context.
+	 * 
+	 * <p>This reduces the memory retained by each context, which is useful
+	 * for analyses that create many contexts of large methods.</p>
+	 * 
+	 * <p>The default value for this flag is <tt>false</tt>.</p>
+	 * 
+	 * @see Context#Context(Object, NodeNumbering, boolean)
+	 */
+	protected boolean denseValueStorage;
+
+	/**
+	 * A flag, if set, directs the analysis to intern data flow values as they
+	 * are stored into contexts, so that equal values share a single instance
+	 * and changes are detected by reference comparison.
+	 * 
+	 * <p>This is only safe if flow functions and the meet operation never
+	 * modify a value that has already been stored, since a canonical value
+	 * may be shared by many nodes and contexts.</p>
+	 * 
+	 * <p>The default value for this flag is <tt>false</tt>.</p>
+	 * 
+	 * @see ValueInterner
+	 */
+	protected boolean internValues;
+
+	/**
+	 * The table of canonical data flow values, used if values are interned.
+	 */
+	protected final ValueInterner<A> interner;
+
+	/**
+	 * A persistent store of context summaries from earlier runs, or
+	 * <tt>null</tt> if summaries are not to be re-used.
+	 * 
+	 * <p>When a call-site requires a context which has not been created, the
+	 * store is consulted before creating a new context. A stored summary
+	 * yields a context which is already analysed and has no node-level data
+	 * flow values. At the end of the analysis, the results of contexts of
+	 * methods accepted by {@link #isSummaryCacheable(Object)}, which accepts
+	 * no method by default, are added to the store and flushed to its file.</p>
+	 * 
+	 * <p>The default value is <tt>null</tt>.</p>
+	 */
+	protected SummaryStore<M,A> summaryStore;
+
+	/**
+	 * The policy for re-using contexts whose identifying value subsumes, i.e.
+	 * is more conservative than, the value at a call-site for which no
+	 * context with an equal value exists.
+	 * 
+	 * <p>Re-using a context trades precision for fewer contexts: the call
+	 * receives the result computed for the more conservative value instead
+	 * of a result specific to its own value. This is sound, and is useful for
+	 * methods which are called with many slightly different values, but the
+	 * results of the analysis may be less precise than with exact contexts.
+	 * The policy {@link Subsumption#ANALYSED ANALYSED} only re-uses contexts
+	 * which have been analysed at least once, while {@link Subsumption#ALL ALL}
+	 * also re-uses contexts still being analysed, hence re-using more contexts
+	 * at the cost of more precision.</p>
+	 * 
+	 * <p>The partial order of the lattice is given by {@link #subsumes(Object, Object)}.</p>
+	 * 
+	 * <p>The default value is {@link Subsumption#NONE NONE}.</p>
+	 * 
+	 * @see #findContext(Object, Object)
+	 */
+	protected Subsumption subsumption;
+
+	/**
+	 * The number of value contexts of a method after which the values of
+	 * further calls to the method are merged into a single summary context,
+	 * or <tt>0</tt> if the number of contexts is not bounded.
+	 * 
+	 * <p>Once a method has this many contexts, the next context created for it
+	 * becomes its summary context. A call whose value has no context of its own
+	 * is then directed to the summary context, whose identifying value is
+	 * lowered to the meet of its old value and the call's value, and which is
+	 * re-analysed if that changes it. Each method therefore has at most one
+	 * context more than the budget, and the analysis of methods called with
+	 * very many values degrades in precision instead of running out of
+	 * memory.</p>
+	 * 
+	 * <p>If the results of the summary context, or of one of its callers, have
+	 * been freed on-the-fly, the summary context can no longer be re-analysed,
+	 * so a new summary context is started instead.</p>
+	 * 
+	 * <p>The budget is honoured by the forward and backward solvers, while
+	 * {@link BidirectionalAnalysis} and the deprecated
+	 * {@link OldForwardInterProceduralAnalysis} refuse to run with a budget.
+	 * The default value is <tt>0</tt>.</p>
+	 * 
+	 * @see #mergeContext(Object, Object)
+	 */
+	protected int contextBudget;
+
+	/**
+	 * A mapping from methods whose context budget is exhausted to their
+	 * summary contexts.
+	 * 
+	 * @see #contextBudget
+	 */
+	protected final Map<M,Context<M,N,A>> mergedContexts;
+
+	/**
+	 * Listeners which are notified of the progress of the analysis.
+	 */
+	protected final List<AnalysisListener<M,N,A>> listeners;
+
+	/**
+	 * A mapping from contexts whose results could not be freed on-the-fly to
+	 * a context reachable from each which was pending at the time.
+	 * 
+	 * @see #freeIfNotPending(Context, Collection)
+	 */
+	private final Map<Context<M,N,A>,Context<M,N,A>> freeBlockers;
+
+	/**
+	 * The modification count of the transition table when {@link #freeBlockers}
+	 * was last known to be valid.
+	 */
+	private int freeBlockersModificationCount;
 	
 	/**
 	 * Constructs a new inter-procedural analysis.
@@ -112,8 +280,24 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 		// Set direction
 		this.direction = direction;
 
+		// Only re-use contexts with equal values by default
+		this.subsumption = Subsumption.NONE;
+
 		// Initialise map of methods to contexts.
 		contexts = new HashMap<M,List<Context<M,N,A>>>();
+		contextIndex = new HashMap<M,Map<A,Context<M,N,A>>>();
+		entryContexts = new HashMap<M,Context<M,N,A>>();
+		nodeNumberings = new HashMap<M,NodeNumbering<N>>();
+		mergedContexts = new HashMap<M,Context<M,N,A>>();
+
+		// Initialise the table of canonical values
+		interner = new ValueInterner<A>();
+
+		// Initialise listeners
+		listeners = new CopyOnWriteArrayList<AnalysisListener<M,N,A>>();
+
+		// Initialise the contexts blocking memory from being freed
+		freeBlockers = new HashMap<Context<M,N,A>,Context<M,N,A>>();
 
 		// Initialise context transition table
 		contextTransitions = new ContextTransitionTable<M,N,A>();
@@ -128,8 +312,11 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	 * while for backward analyses this is the OUT value at the EXIT to each
 	 * entry method.
 	 * 
-	 * <p>Note that this method will be called exactly once per entry point 
-	 * specified by the program representation.</p>
+	 * <p>Note that this method will be called once per entry point specified
+	 * by the program representation, when its context is created by
+	 * {@link #doAnalysis()}. It is called again by
+	 * {@link #doIncrementalAnalysis(Collection)} only for the entry points
+	 * whose contexts have been invalidated.</p>
 	 * 
 	 * @param entryPoint an entry point specified by the program representation
 	 * @return the data flow value at the boundary
@@ -167,6 +354,111 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	 */
 	public abstract void doAnalysis();
 
+	/**
+	 * Re-analyses the program after the bodies of some methods have changed,
+	 * re-using the results of a previous call to {@link #doAnalysis()}.
+	 * 
+	 * <p>
+	 * The value contexts of the changed methods are invalidated along with
+	 * all contexts which transitively call them, as their results may depend
+	 * on the changed code. Only these contexts are re-solved; the contexts of
+	 * other methods are re-used as already analysed. Finally, contexts that
+	 * are no longer reachable from the program entry points are discarded, so
+	 * that the set of contexts is the same as if the program were analysed
+	 * from scratch.
+	 * </p>
+	 * 
+	 * <p>
+	 * The program representation must return the new control-flow graphs of
+	 * the changed methods. If it is an {@link IncrementalProgramRepresentation},
+	 * its cached graphs of the changed methods are invalidated first.
+	 * </p>
+	 * 
+	 * @param changedMethods the methods whose bodies have changed
+	 */
+	public void doIncrementalAnalysis(Collection<M> changedMethods) {
+		invalidate(changedMethods);
+		doAnalysis();
+		removeUnreachableContexts();
+	}
+
+	/**
+	 * Removes the value contexts of the given methods and of all their
+	 * transitive callers, so that they are re-created when analysis resumes.
+	 * The cached control-flow graphs of the given methods are discarded.
+	 * 
+	 * @param changedMethods the methods whose bodies have changed
+	 * @return the set of contexts which were removed
+	 */
+	@SuppressWarnings("unchecked")
+	protected Set<Context<M,N,A>> invalidate(Collection<M> changedMethods) {
+		Set<Context<M,N,A>> invalidated = new HashSet<Context<M,N,A>>();
+
+		// Initialise a stack with the contexts of changed methods
+		Stack<Context<M,N,A>> stack = new Stack<Context<M,N,A>>();
+		for (M method : changedMethods) {
+			// The old control-flow graph and its numbering are out of date
+			if (programRepresentation() instanceof IncrementalProgramRepresentation) {
+				((IncrementalProgramRepresentation<M,N>) programRepresentation()).invalidateControlFlowGraph(method);
+			}
+			nodeNumberings.remove(method);
+			if (contexts.containsKey(method)) {
+				stack.addAll(contexts.get(method));
+			}
+			// Contexts created from stored summaries are only in the index
+			if (contextIndex.containsKey(method)) {
+				for (Context<M,N,A> context : contextIndex.get(method).values()) {
+					stack.push(context);
+				}
+			}
+		}
+
+		// Now add callers transitively
+		while (stack.isEmpty() == false) {
+			Context<M,N,A> context = stack.pop();
+			if (invalidated.add(context)) {
+				Set<CallSite<M,N,A>> callers = contextTransitions.getCallers(context);
+				if (callers != null) {
+					for (CallSite<M,N,A> callSite : callers) {
+						stack.push(callSite.getCallingContext());
+					}
+				}
+			}
+		}
+
+		// Remove all invalidated contexts
+		for (Context<M,N,A> context : invalidated) {
+			removeContext(context);
+		}
+		return invalidated;
+	}
+
+	/**
+	 * Removes all value contexts which are not reachable from the contexts of
+	 * the program entry points.
+	 */
+	protected void removeUnreachableContexts() {
+		// Find all contexts reachable from the entry points
+		Set<Context<M,N,A>> reachable = new HashSet<Context<M,N,A>>();
+		for (Context<M,N,A> entryContext : entryContexts.values()) {
+			reachable.add(entryContext);
+			reachable.addAll(contextTransitions.reachableSet(entryContext, false));
+		}
+
+		// Remove the rest
+		List<Context<M,N,A>> unreachable = new LinkedList<Context<M,N,A>>();
+		for (List<Context<M,N,A>> contextList : contexts.values()) {
+			for (Context<M,N,A> context : contextList) {
+				if (reachable.contains(context) == false) {
+					unreachable.add(context);
+				}
+			}
+		}
+		for (Context<M,N,A> context : unreachable) {
+			removeContext(context);
+		}
+	}
+
 
 	/**
 	 * Returns the callers of a value context.
@@ -181,6 +473,11 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	/**
 	 * Retrieves a particular value context if it has been constructed.
 	 * 
+	 * <p>Contexts are looked up in a per-method hash index, so the cost
+	 * of a lookup does not depend on the number of contexts of the method.
+	 * The hash codes of the values identifying existing contexts are
+	 * retained by the index, hence only the given value is hashed.</p>
+	 * 
 	 * @param method the method whose value context to find
 	 * @param value the data flow value at the entry (forward flow) or exit
 	 *            (backward flow) of the method
@@ -189,35 +486,666 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	 */
 	public Context<M,N,A> getContext(M method, A value) {
 		// If this method does not have any contexts, then we'll have to return nothing.
+		Map<A,Context<M,N,A>> index = contextIndex.get(method);
+		if (index == null) {
+			if (isMonitored()) {
+				for (AnalysisListener<M,N,A> listener : listeners) {
+					listener.contextLookedUp(method, false);
+				}
+			}
+			return null;
+		}
+		// Otherwise, look for a context in this method's index with the given value.
+		Context<M,N,A> context = index.get(value);
+		if (isMonitored()) {
+			for (AnalysisListener<M,N,A> listener : listeners) {
+				listener.contextLookedUp(method, context != null);
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Retrieves a value context to be used at a call-site with the given
+	 * data flow value.
+	 * 
+	 * <p>A context with an equal value is returned if one exists. Otherwise,
+	 * if the {@link #subsumption} policy permits, the most precise of the
+	 * eligible contexts whose value subsumes the given value is returned.
+	 * If several such contexts have incomparable values, the one with the
+	 * lowest identifier is chosen, so that the choice does not depend on the
+	 * iteration order of the index. Finding such a context requires a scan of
+	 * the method's contexts on every miss, so the policy is best suited to
+	 * methods with few contexts, e.g. together with a {@link #contextBudget}.</p>
+	 * 
+	 * @param method the method whose value context to find
+	 * @param value the data flow value at the entry (forward flow) or exit
+	 *            (backward flow) of the method
+	 * @return a value context which may be used for the given value, or
+	 *         <tt>null</tt> if there is none
+	 */
+	protected Context<M,N,A> findContext(M method, A value) {
+		Context<M,N,A> context = getContext(method, value);
+		if (context != null || subsumption == Subsumption.NONE || contextIndex.get(method) == null) {
+			return context;
+		}
+		// Collect the eligible subsuming contexts, in order of their identifiers
+		List<Context<M,N,A>> candidates = new ArrayList<Context<M,N,A>>();
+		for (Map.Entry<A,Context<M,N,A>> entry : contextIndex.get(method).entrySet()) {
+			Context<M,N,A> candidate = entry.getValue();
+			if (subsumption == Subsumption.ANALYSED && candidate.isAnalysed() == false) {
+				continue;
+			}
+			if (subsumes(entry.getKey(), value)) {
+				candidates.add(candidate);
+			}
+		}
+		Collections.sort(candidates);
+		// Choose the oldest of the candidates which no other candidate is more precise than
+		for (Context<M,N,A> candidate : candidates) {
+			A key = contextKey(candidate);
+			boolean mostPrecise = true;
+			for (Context<M,N,A> other : candidates) {
+				if (other != candidate && subsumes(key, contextKey(other))) {
+					mostPrecise = false;
+					break;
+				}
+			}
+			if (mostPrecise) {
+				context = candidate;
+				break;
+			}
+		}
+		if (context != null && verbose) {
+			System.out.println("[SUBSUMED] X" + context + " " + method + " for " + value);
+		}
+		return context;
+	}
+
+	/**
+	 * Retrieves the summary context of a method whose context budget is
+	 * exhausted, merging the given data flow value into it.
+	 * 
+	 * <p>If the value identifying the summary context does not already
+	 * subsume the given value, it is replaced by the meet of the two, the
+	 * context is re-indexed under the new value and it is re-analysed by
+	 * {@link #widenContext(Object, Object)}. If a context identified by the
+	 * meet already exists, that context is returned instead.</p>
+	 * 
+	 * @param method the method whose value context is required
+	 * @param value the data flow value at the entry (forward flow) or exit
+	 *            (backward flow) of the method
+	 * @return the summary context, or <tt>null</tt> if a new context is to
+	 *         be created for the value
+	 * @see #contextBudget
+	 */
+	protected Context<M,N,A> mergeContext(M method, A value) {
+		Context<M,N,A> context = mergedContexts.get(method);
+		if (contextBudget <= 0 || context == null || isWidenable(context) == false) {
+			return null;
+		}
+		A key = contextKey(context);
+		A merged = meet(key, value);
+		if (merged.equals(key) == false) {
+			Map<A,Context<M,N,A>> index = contextIndex.get(method);
+			if (index.containsKey(merged)) {
+				return index.get(merged);
+			}
+			// Re-index the context under the merged value
+			if (index.get(key) == context) {
+				index.remove(key);
+			}
+			widenContext(context, merged);
+			index.put(contextKey(context), context);
+		}
+		if (verbose) {
+			System.out.println("[MERGED] X" + context + " " + method + " for " + value);
+		}
+		return context;
+	}
+
+	// Returns whether a context and its callers still have the values needed to re-analyse them
+	private boolean isWidenable(Context<M,N,A> context) {
+		if (context.isFreed()) {
+			return false;
+		}
+		Set<CallSite<M,N,A>> callers = contextTransitions.getCallers(context);
+		if (callers != null) {
+			for (CallSite<M,N,A> callSite : callers) {
+				if (callSite.getCallingContext().isFreed()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the value identifying a context with a lower value, and adds
+	 * the context to the work-list so that its results are re-computed.
+	 * 
+	 * <p>The data flow values of the context's nodes are retained, as the
+	 * results for the lower value can only be lower still. The caller is
+	 * responsible for re-indexing the context.</p>
+	 * 
+	 * <p>The context may be being analysed by another thread, which owns the
+	 * values of its nodes. Hence the boundary nodes are only added to the
+	 * context's work-list here, and the new value is handed over to the
+	 * solver, which applies it with {@link #applyWidening(Context, Object)}
+	 * when it next removes a node from the work-list.</p>
+	 * 
+	 * @param context the value context to widen
+	 * @param value   the new value at the entry (forward flow) or exit
+	 *                (backward flow) of the method
+	 */
+	protected void widenContext(Context<M,N,A> context, A value) {
+		synchronized (context) {
+			switch (direction) {
+				case FORWARD:
+					// Re-start the flow at the ENTRY of the method
+					context.setEntryValue(copy(value));
+					for (N unit : context.getControlFlowGraph().getHeads()) {
+						context.getForwardWorkList().add(unit);
+					}
+					break;
+				case BACKWARD:
+					// Re-start the flow at the EXIT of the method
+					context.setExitValue(copy(value));
+					for (N unit : context.getControlFlowGraph().getTails()) {
+						context.getBackwardWorkList().add(unit);
+					}
+					break;
+				default:
+					throw new UnsupportedOperationException("No summary contexts for direction " + direction);
+			}
+			context.setWidenedValue(copy(value));
+		}
+		addToWorkList(context);
+	}
+
+	/**
+	 * Applies a pending widening of a context to the values of its boundary
+	 * nodes, i.e. the IN of its heads for forward flows or the OUT of its
+	 * tails for backward flows.
+	 * 
+	 * <p>This is to be called by the thread analysing the context, after it
+	 * has taken the value from the context while removing a node from the
+	 * context's work-list.</p>
+	 * 
+	 * @param context the value context which was widened
+	 * @param value   the new value at the boundary nodes
+	 * @see #widenContext(Context, Object)
+	 */
+	protected void applyWidening(Context<M,N,A> context, A value) {
+		if (direction == Direction.FORWARD) {
+			for (N unit : context.getControlFlowGraph().getHeads()) {
+				context.setValueBefore(unit, copy(value));
+			}
+		} else {
+			for (N unit : context.getControlFlowGraph().getTails()) {
+				context.setValueAfter(unit, copy(value));
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a data flow value subsumes another, i.e. whether it is
+	 * lower than or equal to the other in the partial order of the lattice,
+	 * so that results computed for it are conservative for the other.
+	 * 
+	 * <p>The default implementation checks whether the meet of the two
+	 * values equals the first value. Analyses whose lattices have a cheaper
+	 * test for their partial order should override this method.</p>
+	 * 
+	 * @param general  the value which may subsume the other
+	 * @param specific the value which may be subsumed
+	 * @return <tt>true</tt> if <tt>general</tt> is lower than or equal to <tt>specific</tt>
+	 * @see #subsumption
+	 */
+	protected boolean subsumes(A general, A specific) {
+		return meet(general, specific).equals(general);
+	}
+
+	/**
+	 * Projects the data flow value passed to a called method down to the
+	 * part which is relevant to the method, before its value context is
+	 * looked up. This is the value at the entry of the method for forward
+	 * flows, or at its exit for backward flows.
+	 * 
+	 * <p>Parts of the value which the called method never reads make
+	 * otherwise equal values differ, and hence create redundant contexts.
+	 * Removing them increases the number of calls which share a context. The
+	 * removed part may be re-attached to the result of the call by
+	 * {@link #restoreExitValue(Object, Object, Object) restoreExitValue}.</p>
+	 * 
+	 * <p>The default implementation returns the value unchanged.</p>
+	 * 
+	 * @param method the method being called
+	 * @param value  the data flow value computed for the called method at
+	 *               the call-site
+	 * @return the part of <tt>value</tt> which is relevant to <tt>method</tt>
+	 */
+	protected A projectEntryValue(M method, A value) {
+		return value;
+	}
+
+	/**
+	 * Re-attaches the part of the data flow value passed to a called method
+	 * which was removed by {@link #projectEntryValue(Object, Object) projectEntryValue}
+	 * to the value returned by the method, before it flows back to the
+	 * call-site. The returned value is the value at the exit of the method
+	 * for forward flows, or at its entry for backward flows.
+	 * 
+	 * <p>The default implementation returns the result unchanged, which is
+	 * sufficient if the flow functions at call-sites do not read the removed
+	 * part from the returned value.</p>
+	 * 
+	 * @param method the method which was called
+	 * @param value  the data flow value computed for the called method at
+	 *               the call-site, before it was projected
+	 * @param result the data flow value returned by the called method
+	 * @return the returned value with the removed part of <tt>value</tt> re-attached
+	 */
+	protected A restoreExitValue(M method, A value, A result) {
+		return result;
+	}
+
+	/**
+	 * Returns the data flow value which identifies a value context, i.e. 
+	 * the value at the entry of the method for forward flows or the value 
+	 * at the exit of the method for backward flows.
+	 * 
+	 * <p>The returned value is used as the key of the context in the
+	 * index searched by {@link #getContext(Object, Object) getContext}, and 
+	 * must therefore not be modified once the context has been added.</p>
+	 * 
+	 * @param context a value context
+	 * @return the data flow value which identifies <tt>context</tt>
+	 */
+	protected A contextKey(Context<M,N,A> context) {
+		switch (direction) {
+			case FORWARD:
+				// Forward flow, so contexts are identified by ENTRY FLOWS
+				return context.getEntryValue();
+			case BACKWARD:
+				// Backward flow, so contexts are identified by EXIT FLOWS
+				return context.getExitValue();
+			default:
+				// Cannot decide here. This function has to be overridden in Bidirectional class
+				throw new UnsupportedOperationException("No context key for direction " + direction);
+		}
+	}
+
+	/**
+	 * Returns the numbering of the nodes of a method's control-flow graph,
+	 * computing it on the first request.
+	 * 
+	 * @param method the method whose nodes to number
+	 * @return the numbering shared by all contexts of <tt>method</tt>
+	 */
+	protected NodeNumbering<N> getNodeNumbering(M method) {
+		synchronized (nodeNumberings) {
+			NodeNumbering<N> numbering = nodeNumberings.get(method);
+			if (numbering == null) {
+				numbering = new NodeNumbering<N>(programRepresentation().getControlFlowGraph(method));
+				nodeNumberings.put(method, numbering);
+			}
+			return numbering;
+		}
+	}
+
+	/**
+	 * Constructs a new value context for a method, whose node numbering is
+	 * shared with the other contexts of the method.
+	 * 
+	 * @param method the method whose context to create
+	 * @return a new value context with no data flow values
+	 */
+	protected Context<M,N,A> newContext(M method) {
+		return new Context<M,N,A>(method, getNodeNumbering(method), denseValueStorage, internValues ? interner : null);
+	}
+
+	/**
+	 * Returns whether a data flow value read back from a context is the same
+	 * as a value previously stored there. Interned values are compared by
+	 * reference, and other values using {@link Object#equals(Object) equals}.
+	 * 
+	 * @param value    a data flow value stored into a context
+	 * @param oldValue a data flow value previously stored into a context
+	 * @return <tt>true</tt> if the two values are equal
+	 */
+	protected boolean sameValue(A value, A oldValue) {
+		if (internValues) {
+			return value == oldValue;
+		}
+		return value.equals(oldValue);
+	}
+
+	/**
+	 * Adds a newly constructed value context to the list of contexts of its
+	 * method and to the index used for look-ups.
+	 * 
+	 * <p>The value identifying the context (see {@link #contextKey(Context)})
+	 * must be set before the context is added.</p>
+	 * 
+	 * @param context the value context to add
+	 */
+	protected void addContext(Context<M,N,A> context) {
+		M method = context.getMethod();
+		// Ensure memory allocated for this method's contexts
 		if (!contexts.containsKey(method)) {
+			contexts.put(method, new LinkedList<Context<M,N,A>>());
+			contextIndex.put(method, new HashMap<A,Context<M,N,A>>());
+		}
+		contexts.get(method).add(context);
+		contextIndex.get(method).put(contextKey(context), context);
+		// Contexts created beyond the budget summarise further calls
+		if (contextBudget > 0 && contexts.get(method).size() > contextBudget) {
+			mergedContexts.put(method, context);
+		}
+		if (isMonitored()) {
+			for (AnalysisListener<M,N,A> listener : listeners) {
+				listener.contextCreated(context);
+			}
+		}
+	}
+
+	/**
+	 * Registers a listener to be notified of the progress of the analysis.
+	 * 
+	 * @param listener the listener to add
+	 */
+	public void addListener(AnalysisListener<M,N,A> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters a listener of the progress of the analysis.
+	 * 
+	 * @param listener the listener to remove
+	 */
+	public void removeListener(AnalysisListener<M,N,A> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns whether any listeners are registered, in which case solvers
+	 * gather the information to notify them.
+	 * 
+	 * @return <tt>true</tt> if at least one listener is registered
+	 */
+	protected boolean isMonitored() {
+		return !listeners.isEmpty();
+	}
+
+	/**
+	 * Notifies listeners that a node has been processed.
+	 * 
+	 * @param context     the value context of the node
+	 * @param node        the node which was processed
+	 * @param invocations the number of flow functions invoked for the node
+	 * @param nanos       the time spent computing the result of the node
+	 */
+	protected void fireNodeProcessed(Context<M,N,A> context, N node, int invocations, long nanos) {
+		for (AnalysisListener<M,N,A> listener : listeners) {
+			listener.nodeProcessed(context, node, invocations, nanos);
+		}
+	}
+
+	/**
+	 * Adds a context to the work-list of contexts, notifying listeners of
+	 * the new size of the work-list.
+	 * 
+	 * @param context the context to add to the work-list
+	 * @return <tt>true</tt> if the context was not already on the work-list
+	 */
+	protected boolean addToWorkList(Context<M,N,A> context) {
+		if (workList.add(context)) {
+			if (isMonitored()) {
+				for (AnalysisListener<M,N,A> listener : listeners) {
+					listener.workListGrown(workList.size());
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Releases the data flow values of a context's nodes, and notifies
+	 * listeners of the memory freed.
+	 * 
+	 * @param context the value context whose memory to free
+	 */
+	protected void freeContext(Context<M,N,A> context) {
+		if (context.isFreed()) {
+			return;
+		}
+		int nodes = context.getControlFlowGraph() == null ? 0 : context.getControlFlowGraph().size();
+		context.freeMemory();
+		for (AnalysisListener<M,N,A> listener : listeners) {
+			listener.contextFreed(context, nodes);
+		}
+	}
+
+	/**
+	 * Frees the memory of a context which has just been analysed, along with
+	 * that of every context reachable from it in the transition table, unless
+	 * any of the reachable contexts is still pending analysis.
+	 * 
+	 * <p>Rather than computing the full reachable set on every attempt, the
+	 * transition table is searched only until a pending context is found, and
+	 * that context is remembered as the blocker of every context on the path
+	 * to it. Later searches stop as soon as they reach a context whose blocker
+	 * is still pending. Remembered blockers are forgotten whenever a
+	 * transition is replaced or removed, as the path to them may be lost. The
+	 * full reachable set is only computed when it is actually freed.</p>
+	 * 
+	 * <p>If the parallel solver is in use, the caller must hold the lock
+	 * guarding the transition table.</p>
+	 * 
+	 * @param context the context which has just been analysed
+	 * @param pending the contexts which are yet to be analysed, i.e. the
+	 *                work-list or stack of contexts
+	 * @see #freeResultsOnTheFly
+	 */
+	protected void freeIfNotPending(Context<M,N,A> context, Collection<Context<M,N,A>> pending) {
+		// Forget remembered blockers if they may no longer be reachable
+		if (freeBlockersModificationCount != contextTransitions.getModificationCount()) {
+			freeBlockers.clear();
+			freeBlockersModificationCount = contextTransitions.getModificationCount();
+		}
+
+		// If a reachable context is still pending, then we cannot free memory
+		if (isBlocker(freeBlockers.get(context), pending) || findBlocker(context, pending) != null) {
+			return;
+		}
+
+		// If no reachable contexts are pending, then free memory associated
+		// with this context and those reachable from it
+		for (Context<M,N,A> reachableContext : contextTransitions.reachableSet(context, true)) {
+			freeContext(reachableContext);
+		}
+	}
+
+	/**
+	 * Searches the contexts reachable from a source context for one which is
+	 * pending, ignoring freed contexts, and remembers the result for each
+	 * context on the path to it.
+	 * 
+	 * @param source  the context to search from
+	 * @param pending the contexts which are yet to be analysed
+	 * @return a pending context reachable from <tt>source</tt>, or <tt>null</tt>
+	 */
+	private Context<M,N,A> findBlocker(Context<M,N,A> source, Collection<Context<M,N,A>> pending) {
+		Map<Context<M,N,A>,Set<CallSite<M,N,A>>> callSitesOfContexts = contextTransitions.getCallSitesOfContexts();
+		Set<CallSite<M,N,A>> defaultCallSites = contextTransitions.getDefaultCallSites();
+		// A mapping from visited contexts to the context from which they were reached
+		Map<Context<M,N,A>,Context<M,N,A>> parents = new HashMap<Context<M,N,A>,Context<M,N,A>>();
+		Stack<Context<M,N,A>> stack = new Stack<Context<M,N,A>>();
+		stack.push(source);
+		Context<M,N,A> blocker = null;
+		Context<M,N,A> last = null;
+		search:
+		while (stack.isEmpty() == false) {
+			Context<M,N,A> context = stack.pop();
+			Set<CallSite<M,N,A>> callSites = callSitesOfContexts.get(context);
+			if (callSites == null) {
+				continue;
+			}
+			for (CallSite<M,N,A> callSite : callSites) {
+				// Don't worry about DEFAULT edges
+				if (defaultCallSites.contains(callSite)) {
+					continue;
+				}
+				for (Context<M,N,A> target : contextTransitions.getTargets(callSite).values()) {
+					if (target.isFreed() || parents.containsKey(target)) {
+						continue;
+					}
+					parents.put(target, context);
+					if (pending.contains(target)) {
+						blocker = target;
+					} else if (isBlocker(freeBlockers.get(target), pending)) {
+						blocker = freeBlockers.get(target);
+					} else {
+						stack.push(target);
+						continue;
+					}
+					last = target;
+					break search;
+				}
+			}
+		}
+		// Remember the blocker of each context on the path to it
+		if (blocker != null) {
+			Context<M,N,A> context = last;
+			do {
+				context = parents.get(context);
+				freeBlockers.put(context, blocker);
+			} while (context != source);
+		}
+		return blocker;
+	}
+
+	// Returns whether a remembered blocker still prevents freeing memory
+	private boolean isBlocker(Context<M,N,A> blocker, Collection<Context<M,N,A>> pending) {
+		return blocker != null && blocker.isFreed() == false && pending.contains(blocker);
+	}
+
+	/**
+	 * Returns whether the results of a method's contexts may be stored in the
+	 * {@link #summaryStore} and re-used in later runs.
+	 * 
+	 * <p>This must only hold for methods whose results are not affected by
+	 * changes to the program between runs, for example library methods which
+	 * do not call back into application code. Summaries are keyed only by the
+	 * signature of a method and a data flow value, so a summary of a method
+	 * whose body has changed since it was stored would be silently re-used.
+	 * The default implementation therefore returns <tt>false</tt> for all
+	 * methods, and clients opt in by overriding it.</p>
+	 * 
+	 * @param method a method
+	 * @return <tt>true</tt> if summaries of <tt>method</tt> may be re-used
+	 */
+	protected boolean isSummaryCacheable(M method) {
+		return false;
+	}
+
+	/**
+	 * Creates an analysed value context from a stored summary, if one
+	 * exists for the given method and identifying value.
+	 * 
+	 * <p>The context is added to the index used by {@link #getContext(Object, Object)
+	 * getContext}, but not to the list of contexts of the method, as it has no
+	 * data flow values for individual nodes.</p>
+	 * 
+	 * @param method the method whose context is required
+	 * @param value  the data flow value which identifies the context
+	 * @return a new analysed context, or <tt>null</tt> if no summary is stored
+	 */
+	protected Context<M,N,A> loadSummary(M method, A value) {
+		if (summaryStore == null || !isSummaryCacheable(method)) {
+			return null;
+		}
+		A result = summaryStore.get(method, value);
+		if (result == null) {
 			return null;
 		}
-		// Otherwise, look for a context in this method's list with the given value.
-        switch (direction){
-            case FORWARD:
-                // Forward flow, so check for ENTRY FLOWS
-                for (Context<M,N,A> context : contexts.get(method)) {
-                    if (value.equals(context.getEntryValue())) {
-                        return context;
-                    }
-                }
-                break;
-
-            case BACKWARD:
-                // Backward flow, so check for EXIT FLOWS
-                for (Context<M,N,A> context : contexts.get(method)) {
-                    if (value.equals(context.getExitValue())) {
-                        return context;
-                    }
-                }
-                break;
-            case BI_DIRECTION:
-                //Cannot check here. This function has to be overridden in Bidirectional class
-                return null;
-        }
-
-		// If nothing found return null.
-		return null;
+		// Construct a context without nodes
+		Context<M,N,A> context = new Context<M,N,A>(method);
+		if (direction == Direction.FORWARD) {
+			context.setEntryValue(copy(value));
+			context.setExitValue(result);
+		} else if (direction == Direction.BACKWARD) {
+			context.setEntryValue(result);
+			context.setExitValue(copy(value));
+		} else {
+			throw new UnsupportedOperationException("No summaries for direction " + direction);
+		}
+		context.markAnalysed();
+		// Index it, so that later look-ups find it
+		if (!contextIndex.containsKey(method)) {
+			contextIndex.put(method, new HashMap<A,Context<M,N,A>>());
+		}
+		contextIndex.get(method).put(contextKey(context), context);
+		return context;
+	}
+
+	/**
+	 * Adds the results of all analysed contexts of cacheable methods to the
+	 * {@link #summaryStore}, and flushes it.
+	 */
+	protected void saveSummaries() {
+		if (summaryStore == null) {
+			return;
+		}
+		for (M method : contexts.keySet()) {
+			if (!isSummaryCacheable(method)) {
+				continue;
+			}
+			for (Context<M,N,A> context : contexts.get(method)) {
+				if (context.isAnalysed()) {
+					if (direction == Direction.FORWARD) {
+						summaryStore.put(method, context.getEntryValue(), context.getExitValue());
+					} else {
+						summaryStore.put(method, context.getExitValue(), context.getEntryValue());
+					}
+				}
+			}
+		}
+		try {
+			summaryStore.flush();
+		} catch (java.io.IOException e) {
+			System.err.println("*** ATTENTION ***: Could not save summaries: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Removes a value context from the list of contexts of its method, the
+	 * index used for look-ups, the work-list and the context transition table.
+	 * 
+	 * @param context the value context to remove
+	 */
+	protected void removeContext(Context<M,N,A> context) {
+		M method = context.getMethod();
+		if (contexts.containsKey(method)) {
+			contexts.get(method).remove(context);
+		}
+		if (contextIndex.containsKey(method)) {
+			Map<A,Context<M,N,A>> index = contextIndex.get(method);
+			A key = contextKey(context);
+			if (index.get(key) == context) {
+				index.remove(key);
+			}
+		}
+		if (mergedContexts.get(method) == context) {
+			mergedContexts.remove(method);
+		}
+		if (entryContexts.get(method) == context) {
+			entryContexts.remove(method);
+		}
+		workList.remove(context);
+		contextTransitions.removeContext(context);
 	}
 
 	/**
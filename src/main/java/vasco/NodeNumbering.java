@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import soot.toolkits.graph.DirectedGraph;
+import soot.toolkits.graph.SlowPseudoTopologicalOrderer;
+
+/**
+ * A dense numbering of the nodes of a control-flow graph in pseudo-topological
+ * order.
+ *
+ * <p>
+ * The numbering of a method is computed once and shared by all value contexts
+ * of that method. Node indices range from <tt>0</tt> to <tt>size() - 1</tt>, so
+ * that a forward flow processes nodes in increasing order of their index and a
+ * backward flow in decreasing order.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ * @param <N> the type of a node in the CFG
+ */
+public class NodeNumbering<N> {
+
+	/** The control-flow graph whose nodes are numbered. */
+	private final DirectedGraph<N> controlFlowGraph;
+
+	/** The nodes in pseudo-topological order. */
+	private final Object[] nodes;
+
+	/** A mapping from a node to its position in the order. */
+	private final Map<N,Integer> indices;
+
+	/** The indices of the predecessors of each node, by the node's index. */
+	private final int[][] predecessors;
+
+	/** The indices of the successors of each node, by the node's index. */
+	private final int[][] successors;
+
+	/** Whether each node, by its index, is a head of the control-flow graph. */
+	private final boolean[] heads;
+
+	/** Whether each node, by its index, is a tail of the control-flow graph. */
+	private final boolean[] tails;
+
+	/**
+	 * Computes the numbering of the nodes of a control-flow graph.
+	 *
+	 * @param cfg the control-flow graph of a method
+	 */
+	public NodeNumbering(DirectedGraph<N> cfg) {
+		this.controlFlowGraph = cfg;
+
+		// Create a total order.
+		@SuppressWarnings("unchecked")
+		List<N> orderedNodes = new SlowPseudoTopologicalOrderer().newList(cfg, false);
+		this.nodes = orderedNodes.toArray();
+
+		// Then a mapping from a node to the position in the order.
+		this.indices = new HashMap<N,Integer>(nodes.length * 2);
+		for (int i = 0; i < nodes.length; i++) {
+			@SuppressWarnings("unchecked")
+			N node = (N) nodes[i];
+			indices.put(node, i);
+		}
+
+		// Then the edges and boundary nodes, in terms of indices.
+		this.predecessors = new int[nodes.length][];
+		this.successors = new int[nodes.length][];
+		for (int i = 0; i < nodes.length; i++) {
+			@SuppressWarnings("unchecked")
+			N node = (N) nodes[i];
+			predecessors[i] = indicesOf(cfg.getPredsOf(node));
+			successors[i] = indicesOf(cfg.getSuccsOf(node));
+		}
+		this.heads = new boolean[nodes.length];
+		for (int i : indicesOf(cfg.getHeads())) {
+			heads[i] = true;
+		}
+		this.tails = new boolean[nodes.length];
+		for (int i : indicesOf(cfg.getTails())) {
+			tails[i] = true;
+		}
+	}
+
+	// Returns the indices of a list of nodes
+	private int[] indicesOf(List<N> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = indices.get(list.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the control-flow graph whose nodes are numbered.
+	 *
+	 * @return the control-flow graph whose nodes are numbered
+	 */
+	public DirectedGraph<N> getControlFlowGraph() {
+		return controlFlowGraph;
+	}
+
+	/**
+	 * Returns the node at the given position in the order.
+	 *
+	 * @param index the index of a node
+	 * @return the node with the given index
+	 */
+	@SuppressWarnings("unchecked")
+	public N getNode(int index) {
+		return (N) nodes[index];
+	}
+
+	/**
+	 * Returns the position of a node in the order.
+	 *
+	 * @param node a node in the control-flow graph
+	 * @return the index of the node, or <tt>-1</tt> if it is not in the graph
+	 */
+	public int indexOf(N node) {
+		Integer index = indices.get(node);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the indices of the predecessors of a node, in the order of
+	 * {@link DirectedGraph#getPredsOf(Object)}. The array must not be modified.
+	 *
+	 * @param index the index of a node
+	 * @return the indices of the predecessors of the node
+	 */
+	public int[] getPredecessors(int index) {
+		return predecessors[index];
+	}
+
+	/**
+	 * Returns the indices of the successors of a node, in the order of
+	 * {@link DirectedGraph#getSuccsOf(Object)}. The array must not be modified.
+	 *
+	 * @param index the index of a node
+	 * @return the indices of the successors of the node
+	 */
+	public int[] getSuccessors(int index) {
+		return successors[index];
+	}
+
+	/**
+	 * Returns whether a node is a head of the control-flow graph.
+	 *
+	 * @param index the index of a node
+	 * @return <tt>true</tt> if the node is an entry point of the method
+	 */
+	public boolean isHead(int index) {
+		return heads[index];
+	}
+
+	/**
+	 * Returns whether a node is a tail of the control-flow graph.
+	 *
+	 * @param index the index of a node
+	 * @return <tt>true</tt> if the node is an exit point of the method
+	 */
+	public boolean isTail(int index) {
+		return tails[index];
+	}
+
+	/**
+	 * Returns the number of nodes in the control-flow graph.
+	 *
+	 * @return the number of nodes in the control-flow graph
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+}
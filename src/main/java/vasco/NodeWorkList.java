@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A work-list of CFG nodes of a single value context.
+ *
+ * <p>
+ * Pending nodes are stored as bits indexed by their {@link NodeNumbering}, so
+ * that adding and polling nodes does not allocate. A forward work-list yields
+ * nodes in increasing order of their index and a backward work-list in
+ * decreasing order. The <tt>null</tt> node, which is used to aggregate
+ * ENTRY/EXIT flows, always has the lowest priority.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ * @param <N> the type of a node in the CFG
+ */
+public class NodeWorkList<N> extends AbstractSet<N> {
+
+	/** The numbering of the nodes of the method. */
+	private final NodeNumbering<N> numbering;
+
+	/** Whether nodes are processed in decreasing order of their index. */
+	private final boolean reverse;
+
+	/** The indices of pending nodes. */
+	private final BitSet pending;
+
+	/** Whether the <tt>null</tt> node is pending. */
+	private boolean boundaryPending;
+
+	/**
+	 * Creates a new empty work-list.
+	 *
+	 * @param numbering the numbering of the nodes of the method, which may be
+	 *                  <tt>null</tt> if only the <tt>null</tt> node will be added
+	 * @param reverse   <tt>true</tt> if nodes are to be processed in decreasing
+	 *                  order of their index
+	 */
+	public NodeWorkList(NodeNumbering<N> numbering, boolean reverse) {
+		this.numbering = numbering;
+		this.reverse = reverse;
+		this.pending = new BitSet(numbering == null ? 0 : numbering.size());
+		this.boundaryPending = false;
+	}
+
+	/**
+	 * Adds a node to the work-list.
+	 *
+	 * @param node a node in the control-flow graph, or <tt>null</tt>
+	 * @return <tt>true</tt> if the node was not already on the work-list
+	 */
+	@Override
+	public boolean add(N node) {
+		if (node == null) {
+			boolean added = !boundaryPending;
+			boundaryPending = true;
+			return added;
+		}
+		int index = indexOf(node);
+		if (pending.get(index)) {
+			return false;
+		}
+		pending.set(index);
+		return true;
+	}
+
+	/**
+	 * Adds a node to the work-list by its index in the numbering.
+	 *
+	 * @param index the index of a node in the {@link NodeNumbering}
+	 * @return <tt>true</tt> if the node was not already on the work-list
+	 */
+	public boolean add(int index) {
+		if (pending.get(index)) {
+			return false;
+		}
+		pending.set(index);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		pending.clear();
+		boundaryPending = false;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object o) {
+		if (o == null) {
+			return boundaryPending;
+		}
+		if (numbering == null) {
+			return false;
+		}
+		int index = numbering.indexOf((N) o);
+		return index >= 0 && pending.get(index);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return !boundaryPending && pending.isEmpty();
+	}
+
+	@Override
+	public Iterator<N> iterator() {
+		return new Iterator<N>() {
+			// The index of the next node, or -1 if only the null node may remain
+			int next = nextIndex(first());
+			boolean boundary = boundaryPending;
+			// The index of the last returned node, or -2 if it was the null node
+			int last = -1;
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0 || boundary;
+			}
+
+			@Override
+			public N next() {
+				if (next >= 0) {
+					last = next;
+					next = nextIndex(reverse ? next - 1 : next + 1);
+					return numbering.getNode(last);
+				} else if (boundary) {
+					boundary = false;
+					last = -2;
+					return null;
+				} else {
+					throw new NoSuchElementException();
+				}
+			}
+
+			@Override
+			public void remove() {
+				if (last == -2) {
+					boundaryPending = false;
+				} else if (last >= 0) {
+					pending.clear(last);
+				} else {
+					throw new IllegalStateException();
+				}
+				last = -1;
+			}
+		};
+	}
+
+	/**
+	 * Removes and returns the node with the highest priority.
+	 *
+	 * @return the node with the highest priority, or <tt>null</tt> if the
+	 * work-list contained only the <tt>null</tt> node or is empty
+	 */
+	public N pollFirst() {
+		int index = pollFirstIndex();
+		return index >= 0 ? numbering.getNode(index) : null;
+	}
+
+	/**
+	 * Removes the node with the highest priority and returns its index.
+	 *
+	 * @return the index of the node with the highest priority, or <tt>-1</tt>
+	 * if the work-list contained only the <tt>null</tt> node or is empty
+	 */
+	public int pollFirstIndex() {
+		int index = nextIndex(first());
+		if (index >= 0) {
+			pending.clear(index);
+			return index;
+		}
+		boundaryPending = false;
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o) {
+		if (o == null) {
+			boolean removed = boundaryPending;
+			boundaryPending = false;
+			return removed;
+		}
+		if (contains(o)) {
+			pending.clear(numbering.indexOf((N) o));
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return pending.cardinality() + (boundaryPending ? 1 : 0);
+	}
+
+	// Returns the index from which to start searching for pending nodes
+	private int first() {
+		return reverse ? pending.length() - 1 : 0;
+	}
+
+	// Returns the first pending index in the direction of the work-list
+	private int nextIndex(int from) {
+		if (from < 0) {
+			return -1;
+		}
+		return reverse ? pending.previousSetBit(from) : pending.nextSetBit(from);
+	}
+
+	// Returns the index of a non-null node
+	private int indexOf(N node) {
+		int index = numbering == null ? -1 : numbering.indexOf(node);
+		if (index < 0) {
+			throw new IllegalArgumentException("Node is not in the control-flow graph: " + node);
+		}
+		return index;
+	}
+
+}
@@ -17,12 +17,15 @@
  */
 package vasco;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A generic forward-flow inter-procedural analysis which is fully context-sensitive. 
@@ -59,136 +62,101 @@ public abstract class OldForwardInterProceduralAnalysis<M,N,A> extends InterProc
 	
 	protected Stack<Context<M,N,A>> analysisStack;
 
+	/**
+	 * The number of worker threads used to analyse value contexts concurrently.
+	 * 
+	 * <p>If this is greater than one, then {@link #doAnalysis()} replaces the
+	 * analysis stack with a work-list of contexts which are analysed by tasks
+	 * on a fork-join pool, as in {@link ForwardInterProceduralAnalysis#parallelism}.
+	 * Each context is analysed by at most one thread at a time, so the flow
+	 * function must be safe for concurrent invocation on distinct contexts, and
+	 * any state it shares between contexts must be guarded by the client.</p>
+	 * 
+	 * <p>The default value is <tt>0</tt>, which selects the stack-based solver.</p>
+	 */
+	protected int parallelism;
+
+	/** 
+	 * A lock guarding the state shared between contexts when the parallel
+	 * solver is in use. The work-list of nodes of a context is additionally 
+	 * guarded by the lock on the context itself.
+	 */
+	private final Object lock = new Object();
+
+	/** The pool of worker threads used by the parallel solver, if any. */
+	private ForkJoinPool pool;
+
+	/** The first exception thrown by a worker thread of the parallel solver. */
+	private Throwable failure;
+
+	/**
+	 * Incremental analysis is not supported by the stack-based solver, whose
+	 * call-stack of contexts cannot be resumed.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void doIncrementalAnalysis(Collection<M> changedMethods) {
+		throw new UnsupportedOperationException("Incremental analysis requires a work-list based solver");
+	}
+
 	/**
 	 * {@inheritDoc}
+	 * 
+	 * <p>A {@link #contextBudget} is not supported, as the stack-based solver
+	 * cannot re-schedule a summary context which is widened while it or its
+	 * callers are on the analysis stack.</p>
+	 * 
+	 * @throws UnsupportedOperationException if a context budget is set
 	 */
 	@Override
 	public void doAnalysis() {
+		if (contextBudget > 0) {
+			throw new UnsupportedOperationException("Context budgets require a work-list based solver");
+		}
 
-		// Initialise the MAIN context
-		for (M entryPoint : programRepresentation().getEntryPoints()) {
-			Context<M,N,A> context = new Context<M,N,A>(entryPoint, programRepresentation().getControlFlowGraph(entryPoint), false);
-			A boundaryInformation = boundaryValue(entryPoint);
-			initContext(context, boundaryInformation);
-			
+		// Create worker threads if the parallel solver is enabled
+		if (parallelism > 1) {
+			pool = new ForkJoinPool(parallelism);
+			failure = null;
 		}
 
-		// Stack-of-work-lists data flow analysis.
-		while (!analysisStack.isEmpty()) {
-			// Get the context at the top of the stack.
-			Context<M,N,A> context = analysisStack.peek();
-
-			// Either analyse the next pending unit or pop out of the method
-			if (!context.getForwardWorkList().isEmpty()) {
-				// work-list contains items; So the next unit to analyse.
-				N unit = context.getForwardWorkList().pollFirst();
-
-				if (unit != null) {
-					// Compute the IN data flow value (only for non-entry units).
-					List<N> predecessors = context.getControlFlowGraph().getPredsOf(unit);
-					if (predecessors.size() != 0) {
-						// Merge all the OUT values of the predecessors
-						Iterator<N> predIterator = predecessors.iterator();
-						// Initialise IN to the OUT value of the first predecessor
-						A in = context.getValueAfter(predIterator.next());
-						// Then, merge OUT of remaining predecessors with the
-						// intermediate IN value
-						while (predIterator.hasNext()) {
-							A predOut = context.getValueAfter(predIterator.next());
-							in = meet(in, predOut);
-						}
-						// Set the IN value at the context
-						context.setValueBefore(unit, in);
-					}
-					
-					// Store the value of OUT before the flow function is processed.
-					A prevOut = context.getValueAfter(unit);
-					
-					// Get the value of IN 
-					A in = context.getValueBefore(unit);
-
-					// Now perform the flow function.
-					A out = flowFunction(context, unit, in);
-
-					// If the result is null, then no change 
-					if (out == null)
-						out = prevOut;
-					
-					// Set the OUT value
-					context.setValueAfter(unit, out);
-					
-					// If the flow function was applied successfully and the OUT changed...
-					if (out.equals(prevOut) == false) {
-						// Then add successors to the work-list.
-						for (N successor : context.getControlFlowGraph().getSuccsOf(unit)) {
-							context.getForwardWorkList().add(successor);
-						}
-						// If the unit is in TAILS, then we have at least one
-						// path to the end of the method, so add the NULL unit
-						if (context.getControlFlowGraph().getTails().contains(unit)) {
-							context.getForwardWorkList().add(null);
-						}
-					}
-				} else {
-					// NULL unit, which means the end of the method.
-					assert (context.getForwardWorkList().isEmpty());
-
-					// Exit flow value is the merge of the OUTs of the tail nodes.
-					A exitFlow = topValue();
-					for (N tail : context.getControlFlowGraph().getTails()) {
-						A tailOut = context.getValueAfter(tail);
-						exitFlow = meet(exitFlow, tailOut);
-					}
-					// Set the exit flow of the context.
-					context.setExitValue(exitFlow);
-					
-					// Mark this context as analysed at least once.
-					context.markAnalysed();
-
-					// Add return nodes to stack (only if there were callers).
-					Set<CallSite<M,N,A>> callersSet =  contextTransitions.getCallers(context);
-					if (callersSet != null) {
-						List<CallSite<M,N,A>> callers = new LinkedList<CallSite<M,N,A>>(callersSet);
-						// Sort the callers in ascending order of their ID so that 
-						// the largest ID is on top of the stack
-						Collections.sort(callers);
-						for (CallSite<M,N,A> callSite : callers) {
-							// Extract the calling context and unit from the caller site.
-							Context<M,N,A> callingContext = callSite.getCallingContext();
-							N callingNode = callSite.getCallNode();
-							// Add the calling unit to the calling context's work-list.
-							callingContext.getForwardWorkList().add(callingNode);
-							// Ensure that the calling context is on the analysis stack,
-							// and if not, push it on to the stack.
-							if (!analysisStack.contains(callingContext)) {
-								analysisStack.push(callingContext);
-							}
-						}
-					}
-					
-					// Free memory on-the-fly if not needed
-					if (freeResultsOnTheFly) {
-						Set<Context<M,N,A>> reachableContexts = contextTransitions.reachableSet(context, true);
-						// If any reachable contexts exist on the stack, then we cannot free memory
-						boolean canFree = true;
-						for (Context<M,N,A> reachableContext : reachableContexts) {
-							if (analysisStack.contains(reachableContext)) {
-								canFree = false;
-								break;
-							}
-						}
-						// If no reachable contexts on the stack, then free memory associated
-						// with this context
-						if (canFree) {
-							for (Context<M,N,A> reachableContext : reachableContexts) {
-								reachableContext.freeMemory();
-							}
-						}
-					}					
+		try {
+			// Initialise the MAIN context
+			synchronized (lock) {
+				for (M entryPoint : programRepresentation().getEntryPoints()) {
+					Context<M,N,A> context = newContext(entryPoint);
+					A boundaryInformation = boundaryValue(entryPoint);
+					initContext(context, boundaryInformation);
+					entryContexts.put(entryPoint, context);
 				}
+			}
+
+			if (pool != null) {
+				// Contexts are analysed by tasks submitted to the pool; wait for them
+				awaitWorkers();
 			} else {
-				// If work-list is empty, then remove it from the analysis.
-				analysisStack.remove(context);
+				// Stack-of-work-lists data flow analysis.
+				while (!analysisStack.isEmpty()) {
+					// Get the context at the top of the stack.
+					Context<M,N,A> context = analysisStack.peek();
+
+					// Either analyse the next pending unit or pop out of the method
+					if (!context.getForwardWorkList().isEmpty()) {
+						// work-list contains items; So the next unit to analyse.
+						N unit = context.getForwardWorkList().pollFirst();
+						processNode(context, unit);
+					} else {
+						// If work-list is empty, then remove it from the analysis.
+						analysisStack.remove(context);
+					}
+				}
+			}
+		} finally {
+			// Release worker threads
+			if (pool != null) {
+				pool.shutdownNow();
+				pool = null;
 			}
 		}
 		
@@ -212,7 +180,8 @@ public abstract class OldForwardInterProceduralAnalysis<M,N,A> extends InterProc
 	 * <li>Initialise all nodes to default flow value (lattice top).</li>
 	 * <li>Initialise the entry nodes (heads) with a copy of the entry value.</li>
 	 * <li>Add entry points to work-list.</li>
-	 * <li>Push this context on the top of the analysis stack.</li>
+	 * <li>Push this context on the top of the analysis stack (or add it to the
+	 * work-list of contexts if the parallel solver is in use).</li>
 	 * </ol>
 	 * </p>
 	 * 
@@ -220,9 +189,6 @@ public abstract class OldForwardInterProceduralAnalysis<M,N,A> extends InterProc
 	 * @param entryValue the data flow value at the entry of this method
 	 */
 	protected void initContext(Context<M,N,A> context, A entryValue) {
-		// Get the method
-		M method = context.getMethod();
-
 		// First initialise all points to default flow value.
 		for (N unit : context.getControlFlowGraph()) {
 			context.setValueBefore(unit, topValue());
@@ -238,14 +204,291 @@ public abstract class OldForwardInterProceduralAnalysis<M,N,A> extends InterProc
 		}
 
 		// Add this new context to the given method's mapping.
-		if (!contexts.containsKey(method)) {
-			contexts.put(method, new LinkedList<Context<M,N,A>>());
-		}
-		contexts.get(method).add(context);
+		addContext(context);
 
 		// Push this context on the top of the analysis stack.
-		analysisStack.add(context);
+		schedule(context);
+
+	}
+
+	/**
+	 * Processes a node removed from the work-list of a context.
+	 * 
+	 * <p>For a non-null node, the IN value is computed as the meet of the OUT 
+	 * values of its predecessors, after which the flow function is applied. For
+	 * the <tt>null</tt> node, the exit value of the context is computed and its
+	 * callers are scheduled for analysis.</p>
+	 * 
+	 * <p>This method may be invoked concurrently for distinct contexts, and
+	 * therefore acquires {@link #lock} whenever shared state is accessed.</p>
+	 * 
+	 * @param context the context being analysed
+	 * @param unit the node to process, or <tt>null</tt> for the end of the method
+	 */
+	private void processNode(Context<M,N,A> context, N unit) {
+		if (unit != null) {
+			// Compute the IN data flow value (only for non-entry units).
+			List<N> predecessors = context.getControlFlowGraph().getPredsOf(unit);
+			if (predecessors.size() != 0) {
+				// Merge all the OUT values of the predecessors
+				Iterator<N> predIterator = predecessors.iterator();
+				// Initialise IN to the OUT value of the first predecessor
+				A in = context.getValueAfter(predIterator.next());
+				// Then, merge OUT of remaining predecessors with the
+				// intermediate IN value
+				while (predIterator.hasNext()) {
+					A predOut = context.getValueAfter(predIterator.next());
+					in = meet(in, predOut);
+				}
+				// Set the IN value at the context
+				context.setValueBefore(unit, in);
+			}
+			
+			// Store the value of OUT before the flow function is processed.
+			A prevOut = context.getValueAfter(unit);
+			
+			// Get the value of IN 
+			A in = context.getValueBefore(unit);
+
+			// Now perform the flow function, measuring time taken if monitored.
+			boolean monitored = isMonitored();
+			long startTime = monitored ? System.nanoTime() : 0L;
+			A out = flowFunction(context, unit, in);
+			if (monitored) {
+				fireNodeProcessed(context, unit, 1, System.nanoTime() - startTime);
+			}
 
+			// If the result is null, then no change 
+			if (out == null)
+				out = prevOut;
+			
+			// Set the OUT value, and read back its canonical instance if values are interned
+			context.setValueAfter(unit, out);
+			out = context.getValueAfter(unit);
+			
+			synchronized (context) {
+				// If the flow function was applied successfully and the OUT changed...
+				if (sameValue(out, prevOut) == false) {
+					// Then add successors to the work-list.
+					for (N successor : context.getControlFlowGraph().getSuccsOf(unit)) {
+						context.getForwardWorkList().add(successor);
+					}
+					// If the unit is in TAILS, then we have at least one
+					// path to the end of the method, so add the NULL unit
+					if (context.getControlFlowGraph().getTails().contains(unit)) {
+						context.getForwardWorkList().add(null);
+					}
+				}
+			}
+		} else {
+			// NULL unit, which means the end of the method (other workers 
+			// may since have added call nodes if the solver is parallel).
+			assert (pool != null || context.getForwardWorkList().isEmpty());
+
+			// Exit flow value is the merge of the OUTs of the tail nodes.
+			A exitFlow = topValue();
+			for (N tail : context.getControlFlowGraph().getTails()) {
+				A tailOut = context.getValueAfter(tail);
+				exitFlow = meet(exitFlow, tailOut);
+			}
+
+			synchronized (lock) {
+				// Set the exit flow of the context.
+				context.setExitValue(exitFlow);
+				
+				// Mark this context as analysed at least once.
+				context.markAnalysed();
+
+				// Add return nodes to stack (only if there were callers).
+				Set<CallSite<M,N,A>> callersSet =  contextTransitions.getCallers(context);
+				if (callersSet != null) {
+					List<CallSite<M,N,A>> callers = new LinkedList<CallSite<M,N,A>>(callersSet);
+					// Sort the callers in ascending order of their ID so that 
+					// the largest ID is on top of the stack
+					Collections.sort(callers);
+					for (CallSite<M,N,A> callSite : callers) {
+						// Extract the calling context and unit from the caller site.
+						Context<M,N,A> callingContext = callSite.getCallingContext();
+						N callingNode = callSite.getCallNode();
+						// Add the calling unit to the calling context's work-list.
+						synchronized (callingContext) {
+							callingContext.getForwardWorkList().add(callingNode);
+						}
+						// Ensure that the calling context is on the analysis stack,
+						// and if not, push it on to the stack.
+						schedule(callingContext);
+					}
+				}
+				
+				// Free memory on-the-fly if not needed
+				if (freeResultsOnTheFly) {
+					freeIfNotPending(context, pool != null ? workList : analysisStack);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ensures that a context with pending nodes will be analysed: by pushing
+	 * it on the analysis stack if it is not already on it, or, if the parallel
+	 * solver is in use, by adding it to the work-list of contexts.
+	 * 
+	 * <p>The caller must hold {@link #lock}.</p>
+	 * 
+	 * @param context the context to schedule
+	 */
+	private void schedule(Context<M,N,A> context) {
+		if (pool != null) {
+			addToWorkList(context);
+		} else if (!analysisStack.contains(context)) {
+			push(context);
+		}
+	}
+
+	/**
+	 * Adds a node of a context back to its work-list and schedules the context
+	 * for analysis.
+	 *
+	 * <p>This is for analyses whose flow functions read state that is shared
+	 * between contexts (such as a global heap), and which must therefore
+	 * re-process the reading nodes whenever that state changes. The context
+	 * must not have been freed, so such analyses must also keep its results
+	 * (and those of its callers) from being freed on-the-fly.</p>
+	 *
+	 * <p>The caller must not hold the lock on any context.</p>
+	 *
+	 * @param context the context whose node is to be re-processed
+	 * @param node the node to re-process
+	 */
+	protected void reprocess(Context<M,N,A> context, N node) {
+		synchronized (lock) {
+			synchronized (context) {
+				context.getForwardWorkList().add(node);
+			}
+			schedule(context);
+		}
+	}
+
+	/**
+	 * Adds a context to the work-list of contexts of the parallel solver, and
+	 * submits a task to analyse it if it was not already on the work-list.
+	 * 
+	 * <p>The caller must hold {@link #lock}.</p>
+	 * 
+	 * @param context the context to add to the work-list
+	 * @return <tt>true</tt> if the context was not already on the work-list
+	 */
+	@Override
+	protected boolean addToWorkList(Context<M,N,A> context) {
+		if (super.addToWorkList(context)) {
+			if (pool != null) {
+				pool.execute(new ContextTask(context));
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Waits until the work-list of contexts becomes empty, which means that
+	 * all tasks submitted to the pool of worker threads have completed.
+	 * 
+	 * <p>If any worker failed with an exception, it is re-thrown here.</p>
+	 */
+	private void awaitWorkers() {
+		synchronized (lock) {
+			while (!workList.isEmpty() && failure == null) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for analysis to complete", e);
+				}
+			}
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			} else if (failure instanceof Error) {
+				throw (Error) failure;
+			} else if (failure != null) {
+				throw new RuntimeException(failure);
+			}
+		}
+	}
+
+	/**
+	 * A task of the parallel solver which processes nodes from the work-list of
+	 * a single context until it becomes empty, after which the context is taken
+	 * out of the work-list of contexts (just as the stack-based solver pops it
+	 * off the analysis stack).
+	 */
+	private class ContextTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The context to analyse. */
+		private final Context<M,N,A> context;
+
+		ContextTask(Context<M,N,A> context) {
+			this.context = context;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				while (true) {
+					// Remove the next node to process from the context's work-list
+					N unit = null;
+					boolean empty;
+					synchronized (context) {
+						empty = context.getForwardWorkList().isEmpty();
+						if (!empty) {
+							unit = context.getForwardWorkList().pollFirst();
+						}
+					}
+
+					if (empty) {
+						// Take the context out of the work-list unless some other 
+						// worker has added a node in the meantime.
+						synchronized (lock) {
+							synchronized (context) {
+								if (context.getForwardWorkList().isEmpty()) {
+									workList.remove(context);
+									if (workList.isEmpty()) {
+										lock.notifyAll();
+									}
+									return;
+								}
+							}
+						}
+					} else {
+						processNode(context, unit);
+					}
+				}
+			} catch (Throwable t) {
+				// Record the failure and wake up the waiting thread
+				synchronized (lock) {
+					if (failure == null) {
+						failure = t;
+					}
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pushes a context on the top of the analysis stack, notifying listeners
+	 * of the new depth of the stack.
+	 * 
+	 * @param context the context to push
+	 */
+	private void push(Context<M,N,A> context) {
+		analysisStack.push(context);
+		if (isMonitored()) {
+			for (AnalysisListener<M,N,A> listener : listeners) {
+				listener.workListGrown(analysisStack.size());
+			}
+		}
 	}
 
 	/**
@@ -292,32 +535,51 @@ public abstract class OldForwardInterProceduralAnalysis<M,N,A> extends InterProc
 	 *         if available, or <tt>null</tt> if unavailable.
 	 */
 	protected A processCall(Context<M,N,A> callerContext, N callNode, M method, A entryValue) {
-		CallSite<M,N,A> callSite = new CallSite<M,N,A>(callerContext, callNode);
+		CallSite<M,N,A> callSite = callerContext.getCallSite(callNode);
 		
-		// Check if the called method has a context associated with this entry flow:
-		Context<M,N,A> calleeContext = getContext(method, entryValue);
-		// If not, then set 'calleeContext' to a new context with the given entry flow.
-		if (calleeContext == null) {
-			calleeContext = new Context<M,N,A>(method, programRepresentation().getControlFlowGraph(method), false);
-			initContext(calleeContext, entryValue);
-			if (verbose) {
-				System.out.println("[NEW] X" + callerContext + " -> X" + calleeContext + " " + method + " ");
+		synchronized (lock) {
+			// Check if the called method has a context associated with this entry flow:
+			Context<M,N,A> calleeContext = findContext(method, entryValue);
+			// If not, then set 'calleeContext' to a new context with the given entry flow.
+			if (calleeContext == null) {
+				calleeContext = newContext(method);
+				initContext(calleeContext, entryValue);
+				if (verbose) {
+					System.out.println("[NEW] X" + callerContext + " -> X" + calleeContext + " " + method + " ");
+				}
 			}
-		}
 
-		// Store the transition from the calling context and site to the called context.
-		contextTransitions.addTransition(callSite, calleeContext);
+			// Store the transition from the calling context and site to the called context.
+			contextTransitions.addTransition(callSite, calleeContext);
 
-		// Check if 'caleeContext' has been analysed (surely not if it is just newly made):
-		if (calleeContext.isAnalysed()) {
-			if (verbose) {
-				System.out.println("[HIT] X" + callerContext + " -> X" + calleeContext + " " + method + " ");
+			// Check if 'caleeContext' has been analysed (surely not if it is just newly made):
+			if (calleeContext.isAnalysed()) {
+				if (verbose) {
+					System.out.println("[HIT] X" + callerContext + " -> X" + calleeContext + " " + method + " ");
+				}
+				// If yes, then return the 'exitFlow' of the 'calleeContext'.
+				return calleeContext.getExitValue();
+			} else {
+				// If not, then return 'null'.
+				return null;
 			}
-			// If yes, then return the 'exitFlow' of the 'calleeContext'.
-			return calleeContext.getExitValue();
-		} else {
-			// If not, then return 'null'.
-			return null;
+		}
+	}
+
+	/**
+	 * Records a call statement as a default call-site, whose targets are not
+	 * analysed (see {@link ContextTransitionTable#getDefaultCallSites()}).
+	 * 
+	 * <p>Like {@link #processCall(Context, Object, Object, Object) processCall},
+	 * this is to be called by {@link #flowFunction(Context, Object, Object) flowFunction}.</p>
+	 * 
+	 * @param callerContext the analysis context at the call-site
+	 * @param callNode the calling statement
+	 */
+	protected void processDefaultCall(Context<M,N,A> callerContext, N callNode) {
+		CallSite<M,N,A> callSite = callerContext.getCallSite(callNode);
+		synchronized (lock) {
+			contextTransitions.addTransition(callSite, null);
 		}
 	}
 	
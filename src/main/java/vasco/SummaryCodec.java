@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A serialisation of methods and data flow values for a {@link SummaryStore}.
+ *
+ * <p>
+ * Summaries are looked up by the bytes written for a method and a data flow
+ * value, so the encoding must be deterministic: equal values must always be
+ * written as the same sequence of bytes, regardless of the order in which
+ * their components happen to be iterated.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ * @param <M> the type of a method
+ * @param <A> the type of a data flow value
+ */
+public interface SummaryCodec<M,A> {
+
+	/**
+	 * Returns a string which identifies a method across runs, such as its
+	 * signature.
+	 *
+	 * @param method a method
+	 * @return a string which identifies the method across runs
+	 */
+	public String signature(M method);
+
+	/**
+	 * Writes a data flow value of a method.
+	 *
+	 * @param method the method to which the value belongs
+	 * @param value  the data flow value to write
+	 * @param out    the output to write to
+	 * @throws IOException if the value cannot be written
+	 */
+	public void writeValue(M method, A value, DataOutput out) throws IOException;
+
+	/**
+	 * Reads a data flow value of a method, as written by
+	 * {@link #writeValue(Object, Object, DataOutput) writeValue}.
+	 *
+	 * @param method the method to which the value belongs
+	 * @param in     the input to read from
+	 * @return the data flow value which was read
+	 * @throws IOException if the value cannot be read
+	 */
+	public A readValue(M method, DataInput in) throws IOException;
+
+}
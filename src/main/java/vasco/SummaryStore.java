@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent store of the results of value contexts, which allows an
+ * analysis to re-use contexts computed in an earlier run.
+ *
+ * <p>
+ * A summary maps a method and the data flow value identifying a context (the
+ * entry value for forward flows or the exit value for backward flows) to the
+ * result of that context (the exit value or the entry value, respectively).
+ * </p>
+ *
+ * <p>
+ * Summaries are kept in a file of records, which is memory-mapped when the
+ * store is opened so that summaries are decoded only when they are looked up.
+ * Summaries added during a run are appended to the file by {@link #flush()}.
+ * Each record consists of the length of its key followed by the key, i.e. the
+ * method signature and the encoded identifying value, and then the length of
+ * the encoded result followed by the result.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ * @param <M> the type of a method
+ * @param <A> the type of a data flow value
+ */
+public class SummaryStore<M,A> implements Closeable {
+
+	/** The magic number at the start of a summary file. */
+	private static final int MAGIC = 0x56534353;
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/** The file backing this store. */
+	private final File file;
+
+	/** The serialisation of methods and values. */
+	private final SummaryCodec<M,A> codec;
+
+	/** The contents of the file when the store was opened, if any. */
+	private final MappedByteBuffer mapped;
+
+	/** A mapping from keys to the positions of results in the mapped file. */
+	private final Map<ByteBuffer,Integer> positions;
+
+	/** A mapping from keys to encoded results added since the store was opened. */
+	private final Map<ByteBuffer,byte[]> added;
+
+	/** Keys of added results which are yet to be written to the file. */
+	private final List<ByteBuffer> unwritten;
+
+	/**
+	 * Opens a summary store, reading the summaries in the given file if it
+	 * exists.
+	 *
+	 * @param file  the file backing the store
+	 * @param codec the serialisation of methods and values
+	 * @throws IOException if the file exists but is not a valid summary file
+	 */
+	public SummaryStore(File file, SummaryCodec<M,A> codec) throws IOException {
+		this.file = file;
+		this.codec = codec;
+		this.positions = new HashMap<ByteBuffer,Integer>();
+		this.added = new HashMap<ByteBuffer,byte[]>();
+		this.unwritten = new LinkedList<ByteBuffer>();
+
+		if (file.exists() && file.length() > 0) {
+			// Map the existing summaries
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				this.mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			} finally {
+				raf.close();
+			}
+			if (mapped.remaining() < 8 || mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+				throw new IOException("Not a summary file: " + file);
+			}
+			// Index the records, ignoring an incomplete record at the end
+			while (mapped.remaining() >= 4) {
+				int keyLength = mapped.getInt();
+				if (keyLength < 0 || mapped.remaining() < keyLength + 4) {
+					break;
+				}
+				ByteBuffer key = mapped.slice();
+				key.limit(keyLength);
+				mapped.position(mapped.position() + keyLength);
+				int resultPosition = mapped.position();
+				int resultLength = mapped.getInt();
+				if (resultLength < 0 || mapped.remaining() < resultLength) {
+					break;
+				}
+				mapped.position(mapped.position() + resultLength);
+				positions.put(key, resultPosition);
+			}
+		} else {
+			this.mapped = null;
+		}
+	}
+
+	/**
+	 * Returns the stored result of a value context.
+	 *
+	 * @param method   the method of the context
+	 * @param keyValue the data flow value which identifies the context
+	 * @return the result of the context, or <tt>null</tt> if no summary is stored
+	 */
+	public synchronized A get(M method, A keyValue) {
+		ByteBuffer key = encodeKey(method, keyValue);
+		byte[] result = added.get(key);
+		if (result == null) {
+			Integer position = positions.get(key);
+			if (position == null) {
+				return null;
+			}
+			ByteBuffer buffer = mapped.duplicate();
+			buffer.position(position);
+			result = new byte[buffer.getInt()];
+			buffer.get(result);
+		}
+		try {
+			return codec.readValue(method, new DataInputStream(new ByteArrayInputStream(result)));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Adds the result of a value context to the store, unless a summary
+	 * for the context is already stored.
+	 *
+	 * @param method      the method of the context
+	 * @param keyValue    the data flow value which identifies the context
+	 * @param resultValue the result of the context
+	 */
+	public synchronized void put(M method, A keyValue, A resultValue) {
+		ByteBuffer key = encodeKey(method, keyValue);
+		if (positions.containsKey(key) || added.containsKey(key)) {
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			codec.writeValue(method, resultValue, new DataOutputStream(bytes));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		added.put(key, bytes.toByteArray());
+		unwritten.add(key);
+	}
+
+	/**
+	 * Returns the number of summaries in the store.
+	 *
+	 * @return the number of summaries in the store
+	 */
+	public synchronized int size() {
+		return positions.size() + added.size();
+	}
+
+	/**
+	 * Appends the summaries added since the last flush to the file.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void flush() throws IOException {
+		if (unwritten.isEmpty()) {
+			return;
+		}
+		boolean exists = file.exists() && file.length() > 0;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		try {
+			if (!exists) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+			}
+			for (ByteBuffer key : unwritten) {
+				byte[] result = added.get(key);
+				out.writeInt(key.remaining());
+				out.write(key.array(), key.arrayOffset() + key.position(), key.remaining());
+				out.writeInt(result.length);
+				out.write(result);
+			}
+		} finally {
+			out.close();
+		}
+		unwritten.clear();
+	}
+
+	/**
+	 * Flushes added summaries to the file.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	// Encodes the signature of a method and a data flow value as a key
+	private ByteBuffer encodeKey(M method, A keyValue) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeUTF(codec.signature(method));
+			codec.writeValue(method, keyValue, out);
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A table of canonical data flow values.
+ *
+ * <p>
+ * Interning maps every value to a single representative among all values
+ * that are equal to it, so that equal values stored in different nodes and
+ * contexts share one instance and can be compared by reference. Canonical
+ * values that are no longer referenced elsewhere are reclaimed by the
+ * garbage collector.
+ * </p>
+ *
+ * <p>
+ * Values must not be modified once they have been interned, as the table
+ * relies on their hash codes remaining stable.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ * @param <A> the type of a data flow value
+ */
+public class ValueInterner<A> {
+
+	/** A mapping from values to their canonical representatives. */
+	private final Map<A,WeakReference<A>> table;
+
+	/**
+	 * Creates a new empty table of canonical values.
+	 */
+	public ValueInterner() {
+		this.table = new WeakHashMap<A,WeakReference<A>>();
+	}
+
+	/**
+	 * Returns the canonical representative of a value, making the value
+	 * itself canonical if no equal value has been interned.
+	 *
+	 * @param value a data flow value, which may be <tt>null</tt>
+	 * @return the canonical value equal to <tt>value</tt>
+	 */
+	public synchronized A intern(A value) {
+		if (value == null) {
+			return null;
+		}
+		WeakReference<A> ref = table.get(value);
+		A canonical = (ref == null) ? null : ref.get();
+		if (canonical == null) {
+			table.put(value, new WeakReference<A>(value));
+			canonical = value;
+		}
+		return canonical;
+	}
+
+	/**
+	 * Returns the number of canonical values currently in the table.
+	 *
+	 * @return the number of canonical values currently in the table
+	 */
+	public synchronized int size() {
+		return table.size();
+	}
+
+}
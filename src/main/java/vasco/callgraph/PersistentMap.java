@@ -0,0 +1,775 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.callgraph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map which is updated by creating new versions that share most
+ * of their structure with the original.
+ *
+ * <p>
+ * The map is a hash array mapped trie: each level of the trie consumes five
+ * bits of the hash code of a key, and only the nodes on the path to the
+ * updated key are copied by {@link #plus(Object, Object) plus} or
+ * {@link #minus(Object) minus}. Updates therefore cost time and memory
+ * logarithmic in the size of the map, while an unchanged map can be shared by
+ * any number of owners without copying.
+ * </p>
+ *
+ * <p>
+ * Each node of the trie caches the sum of the hash codes of the mappings
+ * below it, so {@link #hashCode()} only visits nodes created since it was
+ * last computed. Two tries are compared node by node: shared nodes are equal
+ * without being visited, and nodes with different hash sums are unequal.
+ * Values are therefore expected to be immutable, as the maps are.
+ * </p>
+ *
+ * <p>
+ * The map implements the read-only operations of {@link java.util.Map}, and
+ * is equal to any map with the same mappings. Mutating operations of the
+ * {@link java.util.Map} interface throw an {@link UnsupportedOperationException}.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ * @param <K> the type of a key
+ * @param <V> the type of a value
+ */
+public final class PersistentMap<K,V> extends AbstractMap<K,V> {
+
+	/** The number of hash bits consumed by each level of the trie. */
+	private static final int BITS = 5;
+
+	/** A mask for the hash bits consumed by a level of the trie. */
+	private static final int MASK = (1 << BITS) - 1;
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static final PersistentMap EMPTY = new PersistentMap(null, 0);
+
+	/** The root of the trie, or <tt>null</tt> if the map is empty. */
+	private final Node<K,V> root;
+
+	/** The number of mappings. */
+	private final int size;
+
+	private PersistentMap(Node<K,V> root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the empty map.
+	 *
+	 * @return an empty map
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K,V> PersistentMap<K,V> empty() {
+		return (PersistentMap<K,V>) EMPTY;
+	}
+
+	/**
+	 * Returns a map with the same mappings as this map, except that the given
+	 * key is mapped to the given value.
+	 *
+	 * <p>If the key is already mapped to the same value instance, then this
+	 * map is returned.</p>
+	 *
+	 * @param key   the key to map
+	 * @param value the value to map it to
+	 * @return the updated map
+	 */
+	public PersistentMap<K,V> plus(K key, V value) {
+		int hash = hash(key);
+		if (root == null) {
+			return new PersistentMap<K,V>(new Leaf<K,V>(hash, key, value), 1);
+		}
+		Node<K,V> newRoot = root.plus(hash, key, value, 0);
+		if (newRoot == root) {
+			return this;
+		}
+		// A key that was already mapped does not change the size
+		int newSize = root.find(hash, key, 0) == null ? size + 1 : size;
+		return new PersistentMap<K,V>(newRoot, newSize);
+	}
+
+	/**
+	 * Returns a map with the same mappings as this map, except for the given
+	 * key.
+	 *
+	 * <p>If the key is not mapped, then this map is returned.</p>
+	 *
+	 * @param key the key to remove
+	 * @return the updated map
+	 */
+	public PersistentMap<K,V> minus(Object key) {
+		if (root == null) {
+			return this;
+		}
+		int hash = hash(key);
+		if (root.find(hash, key, 0) == null) {
+			return this;
+		}
+		Node<K,V> newRoot = root.minus(hash, key, 0);
+		if (newRoot == null) {
+			return empty();
+		}
+		return new PersistentMap<K,V>(newRoot, size - 1);
+	}
+
+	/**
+	 * Returns a map with the mappings of both this map and another map, in
+	 * which the values of keys mapped by both are merged.
+	 *
+	 * <p>Sub-tries which are shared by the two maps, or which only one of
+	 * them has, are shared with the result. If the result has the same
+	 * mappings as one of the maps, then that map is returned, provided that
+	 * the merger returns one of its arguments when it contains the other.</p>
+	 *
+	 * @param other  a map
+	 * @param merger merges the values of keys mapped by both maps
+	 * @return the union of the two maps
+	 */
+	@SuppressWarnings("unchecked")
+	public PersistentMap<K,V> union(PersistentMap<K,V> other, Merger<V> merger) {
+		if (other == this || other.root == null) {
+			return this;
+		} else if (this.root == null) {
+			return other;
+		}
+		int[] added = new int[1];
+		Node<K,V> newRoot = union(this.root, other.root, 0, merger, added);
+		if (newRoot == this.root) {
+			return this;
+		} else if (newRoot == other.root) {
+			return other;
+		}
+		// Sub-tries with the same mappings need not be shared, so compare with an operand of the same size
+		int newSize = size + added[0];
+		if (newSize == size && sameMappings(newRoot, this.root, 0)) {
+			return this;
+		} else if (newSize == other.size && sameMappings(newRoot, other.root, 0)) {
+			return other;
+		}
+		return new PersistentMap<K,V>(newRoot, newSize);
+	}
+
+	/**
+	 * Merges the values of a key which is mapped by both operands of a
+	 * {@link PersistentMap#union(PersistentMap, Merger) union}.
+	 *
+	 * @param <V> the type of a value
+	 */
+	public interface Merger<V> {
+
+		/**
+		 * Returns the merge of two values, which should be the first or the
+		 * second value if it already contains the other.
+		 *
+		 * @param first  the value in the first map
+		 * @param second the value in the second map
+		 * @return the merged value
+		 */
+		public V merge(V first, V second);
+
+	}
+
+	/**
+	 * Returns the union of two nodes at the same position of two tries,
+	 * counting the keys which are not in the first node.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static <K,V> Node<K,V> union(Node<K,V> a, Node<K,V> b, int shift, Merger<V> merger, int[] added) {
+		if (a == b) {
+			return a;
+		}
+		if (a instanceof Branch && b instanceof Branch) {
+			Branch<K,V> p = (Branch<K,V>) a;
+			Branch<K,V> q = (Branch<K,V>) b;
+			int bitmap = p.bitmap | q.bitmap;
+			Node<K,V>[] children = new Node[Integer.bitCount(bitmap)];
+			boolean sameAsP = bitmap == p.bitmap;
+			boolean sameAsQ = bitmap == q.bitmap;
+			int i = 0, j = 0, k = 0;
+			for (int bits = bitmap; bits != 0; bits &= bits - 1) {
+				int bit = bits & -bits;
+				Node<K,V> child;
+				if ((q.bitmap & bit) == 0) {
+					child = p.children[i++];
+				} else if ((p.bitmap & bit) == 0) {
+					child = q.children[j++];
+					added[0] += count(child);
+				} else {
+					Node<K,V> pChild = p.children[i++];
+					Node<K,V> qChild = q.children[j++];
+					child = union(pChild, qChild, shift + BITS, merger, added);
+					sameAsP = sameAsP && child == pChild;
+					sameAsQ = sameAsQ && child == qChild;
+				}
+				children[k++] = child;
+			}
+			return sameAsP ? p : sameAsQ ? q : new Branch<K,V>(bitmap, children);
+		}
+		// Otherwise, add the mappings of the smaller node to the larger one
+		int aCount = count(a);
+		int bCount = count(b);
+		boolean intoA = aCount >= bCount;
+		Node<K,V> result = intoA ? a : b;
+		int matched = 0;
+		Iterator<Map.Entry<K,V>> it = new EntryIterator<K,V>(intoA ? b : a);
+		while (it.hasNext()) {
+			Leaf<K,V> leaf = (Leaf<K,V>) it.next();
+			Leaf<K,V> match = result.find(leaf.hash, leaf.key, shift);
+			if (match == null) {
+				result = result.plus(leaf.hash, leaf.key, leaf.value, shift);
+			} else {
+				// Keep the order of the operands for the merger
+				V value = intoA ? merger.merge(match.value, leaf.value) : merger.merge(leaf.value, match.value);
+				result = result.plus(leaf.hash, leaf.key, value, shift);
+				matched++;
+			}
+		}
+		// Either way, the keys of the second node which were not matched are new
+		added[0] += bCount - matched;
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public V get(Object key) {
+		if (root == null) {
+			return null;
+		}
+		Leaf<K,V> leaf = root.find(hash(key), key, 0);
+		return leaf == null ? null : leaf.value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return root != null && root.find(hash(key), key, 0) != null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Set<Map.Entry<K,V>> entrySet() {
+		return new AbstractSet<Map.Entry<K,V>>() {
+			@Override
+			public Iterator<Map.Entry<K,V>> iterator() {
+				return new EntryIterator<K,V>(root);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return root == null ? 0 : root.hashSum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (obj instanceof PersistentMap) {
+			PersistentMap<?,?> other = (PersistentMap<?,?>) obj;
+			if (this.size != other.size) {
+				return false;
+			}
+			return this.root == null || sameMappings(this.root, other.root, 0);
+		}
+		return super.equals(obj);
+	}
+
+	/**
+	 * Determines whether two nodes at the same position of two tries hold the
+	 * same mappings.
+	 */
+	private static boolean sameMappings(Node<?,?> a, Node<?,?> b, int shift) {
+		if (a == b) {
+			return true;
+		}
+		// The nodes hold all the mappings whose keys have the same hash prefix
+		if (a.hashSum() != b.hashSum()) {
+			return false;
+		}
+		if (a instanceof Branch && b instanceof Branch) {
+			Branch<?,?> p = (Branch<?,?>) a;
+			Branch<?,?> q = (Branch<?,?>) b;
+			if (p.bitmap != q.bitmap) {
+				return false;
+			}
+			for (int i = 0; i < p.children.length; i++) {
+				if (!sameMappings(p.children[i], q.children[i], shift + BITS)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		// Otherwise, look up each mapping of one node in the other
+		if (count(a) != count(b)) {
+			return false;
+		}
+		Iterator<Map.Entry<Object,Object>> it = new EntryIterator<Object,Object>(cast(a));
+		while (it.hasNext()) {
+			Leaf<?,?> leaf = (Leaf<?,?>) it.next();
+			Leaf<?,?> match = b.find(leaf.hash, leaf.key, shift);
+			if (match == null || !Leaf.eq(leaf.value, match.value)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Returns the number of mappings below a node
+	private static int count(Node<?,?> node) {
+		if (node instanceof Leaf) {
+			return 1;
+		} else if (node instanceof Collision) {
+			return ((Collision<?,?>) node).leaves.length;
+		}
+		int count = 0;
+		for (Node<?,?> child : ((Branch<?,?>) node).children) {
+			count += count(child);
+		}
+		return count;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Node<Object,Object> cast(Node<?,?> node) {
+		return (Node<Object,Object>) node;
+	}
+
+	// Spreads the higher bits of a hash code, as the trie is indexed by the lower bits first
+	private static int hash(Object key) {
+		int h = key == null ? 0 : key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	// Returns the index of a level's hash bits in the bitmap of a node
+	private static int bit(int hash, int shift) {
+		return 1 << ((hash >>> shift) & MASK);
+	}
+
+	/**
+	 * A node of the trie.
+	 */
+	private static abstract class Node<K,V> {
+
+		/** The sum of the hash codes of the mappings below this node, or <tt>0</tt> if it has not been computed. */
+		private int hashSum;
+
+		/** Returns the sum of the hash codes of the mappings below this node. */
+		final int hashSum() {
+			int h = hashSum;
+			if (h == 0) {
+				h = computeHashSum();
+				hashSum = h;
+			}
+			return h;
+		}
+
+		/** Computes the sum of the hash codes of the mappings below this node. */
+		abstract int computeHashSum();
+
+		/** Returns the leaf with the given key, or <tt>null</tt> if there is none. */
+		abstract Leaf<K,V> find(int hash, Object key, int shift);
+
+		/** Returns this node with the given mapping, or this node if it already holds it. */
+		abstract Node<K,V> plus(int hash, K key, V value, int shift);
+
+		/** Returns this node without the given key, which must be present, or <tt>null</tt> if it becomes empty. */
+		abstract Node<K,V> minus(int hash, Object key, int shift);
+
+	}
+
+	/**
+	 * A single mapping, which is also an entry of the map.
+	 */
+	private static final class Leaf<K,V> extends Node<K,V> implements Map.Entry<K,V> {
+
+		final int hash;
+		final K key;
+		final V value;
+
+		Leaf(int hash, K key, V value) {
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		Leaf<K,V> find(int hash, Object key, int shift) {
+			return (this.hash == hash && eq(this.key, key)) ? this : null;
+		}
+
+		@Override
+		Node<K,V> plus(int hash, K key, V value, int shift) {
+			if (this.hash == hash) {
+				if (eq(this.key, key)) {
+					return this.value == value ? this : new Leaf<K,V>(hash, key, value);
+				}
+				return new Collision<K,V>(hash, this, new Leaf<K,V>(hash, key, value));
+			}
+			// Push both leaves down to a new level of the trie
+			return Branch.<K,V>empty().plusNode(this.hash, this, shift).plus(hash, key, value, shift);
+		}
+
+		@Override
+		Node<K,V> minus(int hash, Object key, int shift) {
+			return null;
+		}
+
+		@Override
+		int computeHashSum() {
+			return hashCode();
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?,?> other = (Map.Entry<?,?>) obj;
+			return eq(key, other.getKey()) && eq(value, other.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+
+		static boolean eq(Object a, Object b) {
+			return a == b || (a != null && a.equals(b));
+		}
+	}
+
+	/**
+	 * An inner node of the trie, holding a child node for each hash
+	 * bit pattern which is present at its level.
+	 */
+	private static final class Branch<K,V> extends Node<K,V> {
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private static final Branch EMPTY_BRANCH = new Branch(0, new Node[0]);
+
+		/** The bit patterns present at this level. */
+		final int bitmap;
+
+		/** The children, in the order of their bit patterns. */
+		final Node<K,V>[] children;
+
+		Branch(int bitmap, Node<K,V>[] children) {
+			this.bitmap = bitmap;
+			this.children = children;
+		}
+
+		@SuppressWarnings("unchecked")
+		static <K,V> Branch<K,V> empty() {
+			return (Branch<K,V>) EMPTY_BRANCH;
+		}
+
+		// Returns the position of the child with the given bit
+		private int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		@Override
+		Leaf<K,V> find(int hash, Object key, int shift) {
+			int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0) {
+				return null;
+			}
+			return children[index(bit)].find(hash, key, shift + BITS);
+		}
+
+		@Override
+		Node<K,V> plus(int hash, K key, V value, int shift) {
+			int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0) {
+				return plusNode(hash, new Leaf<K,V>(hash, key, value), shift);
+			}
+			int index = index(bit);
+			Node<K,V> child = children[index];
+			Node<K,V> newChild = child.plus(hash, key, value, shift + BITS);
+			if (newChild == child) {
+				return this;
+			}
+			Node<K,V>[] newChildren = children.clone();
+			newChildren[index] = newChild;
+			return new Branch<K,V>(bitmap, newChildren);
+		}
+
+		// Returns this node with a new child for a bit pattern which is not present
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		Branch<K,V> plusNode(int hash, Node<K,V> node, int shift) {
+			int bit = bit(hash, shift);
+			int index = index(bit);
+			Node<K,V>[] newChildren = new Node[children.length + 1];
+			System.arraycopy(children, 0, newChildren, 0, index);
+			newChildren[index] = node;
+			System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+			return new Branch<K,V>(bitmap | bit, newChildren);
+		}
+
+		@Override
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		Node<K,V> minus(int hash, Object key, int shift) {
+			int bit = bit(hash, shift);
+			int index = index(bit);
+			Node<K,V> newChild = children[index].minus(hash, key, shift + BITS);
+			if (newChild != null) {
+				// A single leaf below a branch can be pulled up into this level
+				if (children.length == 1 && newChild instanceof Leaf) {
+					return newChild;
+				}
+				Node<K,V>[] newChildren = children.clone();
+				newChildren[index] = newChild;
+				return new Branch<K,V>(bitmap, newChildren);
+			}
+			if (children.length == 1) {
+				return null;
+			}
+			// If only a leaf remains, then it can replace this node
+			if (children.length == 2 && children[1 - index] instanceof Leaf) {
+				return children[1 - index];
+			}
+			Node<K,V>[] newChildren = new Node[children.length - 1];
+			System.arraycopy(children, 0, newChildren, 0, index);
+			System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+			return new Branch<K,V>(bitmap & ~bit, newChildren);
+		}
+
+		@Override
+		int computeHashSum() {
+			int h = 0;
+			for (Node<K,V> child : children) {
+				h += child.hashSum();
+			}
+			return h;
+		}
+	}
+
+	/**
+	 * A node holding several leaves whose keys have the same hash code.
+	 */
+	private static final class Collision<K,V> extends Node<K,V> {
+
+		final int hash;
+		final Leaf<K,V>[] leaves;
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		Collision(int hash, Leaf<K,V> first, Leaf<K,V> second) {
+			this(hash, new Leaf[] { first, second });
+		}
+
+		Collision(int hash, Leaf<K,V>[] leaves) {
+			this.hash = hash;
+			this.leaves = leaves;
+		}
+
+		@Override
+		Leaf<K,V> find(int hash, Object key, int shift) {
+			if (this.hash == hash) {
+				for (Leaf<K,V> leaf : leaves) {
+					if (leaf.find(hash, key, shift) != null) {
+						return leaf;
+					}
+				}
+			}
+			return null;
+		}
+
+		@Override
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		Node<K,V> plus(int hash, K key, V value, int shift) {
+			if (this.hash != hash) {
+				// Push this node down to a new level of the trie
+				return Branch.<K,V>empty().plusNode(this.hash, this, shift).plus(hash, key, value, shift);
+			}
+			for (int i = 0; i < leaves.length; i++) {
+				if (leaves[i].find(hash, key, shift) != null) {
+					if (leaves[i].value == value) {
+						return this;
+					}
+					Leaf<K,V>[] newLeaves = leaves.clone();
+					newLeaves[i] = new Leaf<K,V>(hash, key, value);
+					return new Collision<K,V>(hash, newLeaves);
+				}
+			}
+			Leaf<K,V>[] newLeaves = new Leaf[leaves.length + 1];
+			System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+			newLeaves[leaves.length] = new Leaf<K,V>(hash, key, value);
+			return new Collision<K,V>(hash, newLeaves);
+		}
+
+		@Override
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		Node<K,V> minus(int hash, Object key, int shift) {
+			for (int i = 0; i < leaves.length; i++) {
+				if (leaves[i].find(hash, key, shift) != null) {
+					if (leaves.length == 2) {
+						return leaves[1 - i];
+					}
+					Leaf<K,V>[] newLeaves = new Leaf[leaves.length - 1];
+					System.arraycopy(leaves, 0, newLeaves, 0, i);
+					System.arraycopy(leaves, i + 1, newLeaves, i, leaves.length - i - 1);
+					return new Collision<K,V>(hash, newLeaves);
+				}
+			}
+			return this;
+		}
+
+		@Override
+		int computeHashSum() {
+			int h = 0;
+			for (Leaf<K,V> leaf : leaves) {
+				h += leaf.hashSum();
+			}
+			return h;
+		}
+	}
+
+	/**
+	 * An iterator over the leaves of a trie, in depth-first order.
+	 */
+	private static final class EntryIterator<K,V> implements Iterator<Map.Entry<K,V>> {
+
+		/** The arrays of nodes on the path to the next leaf. */
+		private final Node<K,V>[][] arrays;
+
+		/** The positions of the next node in each array. */
+		private final int[] positions;
+
+		/** The depth of the current array, or <tt>-1</tt> if there are no more leaves. */
+		private int depth;
+
+		/** The next leaf to return. */
+		private Leaf<K,V> next;
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		EntryIterator(Node<K,V> root) {
+			// Hash codes have 32 bits, so the trie has at most 7 branch levels and a collision level
+			this.arrays = new Node[9][];
+			this.positions = new int[9];
+			this.depth = -1;
+			if (root != null) {
+				push(new Node[] { root });
+				advance();
+			}
+		}
+
+		private void push(Node<K,V>[] array) {
+			depth++;
+			arrays[depth] = array;
+			positions[depth] = 0;
+		}
+
+		// Moves to the next leaf in depth-first order
+		private void advance() {
+			next = null;
+			while (depth >= 0) {
+				if (positions[depth] == arrays[depth].length) {
+					arrays[depth] = null;
+					depth--;
+					continue;
+				}
+				Node<K,V> node = arrays[depth][positions[depth]++];
+				if (node instanceof Leaf) {
+					next = (Leaf<K,V>) node;
+					return;
+				} else if (node instanceof Branch) {
+					push(((Branch<K,V>) node).children);
+				} else {
+					push(((Collision<K,V>) node).leaves);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<K,V> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Leaf<K,V> leaf = next;
+			advance();
+			return leaf;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
@@ -18,9 +18,15 @@
 package vasco.callgraph;
 
 
+import java.util.AbstractCollection;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import soot.Local;
 import soot.RefLikeType;
@@ -53,7 +59,6 @@ import soot.jimple.StaticInvokeExpr;
 import soot.jimple.Stmt;
 import soot.jimple.VirtualInvokeExpr;
 import soot.jimple.internal.JNewArrayExpr;
-import vasco.CallSite;
 import vasco.Context;
 import vasco.OldForwardInterProceduralAnalysis;
 import vasco.ProgramRepresentation;
@@ -87,27 +92,70 @@ public class PointsToAnalysis extends OldForwardInterProceduralAnalysis<SootMeth
 	 * <p>For static load/store statements, we union this points-to graph with the
 	 * points-to graph in the flow function, perform the operation, and then
 	 * separate stuff out again.</p>
+	 * 
+	 * <p>As this graph is shared by all contexts, it is only accessed while
+	 * holding {@link #staticLock}.</p>
 	 */
 	private PointsToGraph staticHeap;
 	
 	/**
-	 * A set of classes whose static initialisers have been processed.
+	 * A lock guarding {@link #staticHeap}, which may be accessed concurrently
+	 * if the parallel solver is in use.
+	 */
+	private final Object staticLock = new Object();
+	
+	/**
+	 * A set of classes whose static initialisation has been triggered. The
+	 * context which triggers it waits for <tt>&lt;clinit&gt;</tt> to return,
+	 * but other contexts may access the class while it is still being
+	 * analysed, in which case they rely on {@link #staticReaders} to see its
+	 * effects.
 	 */
 	private Set<SootClass> clinitCalled;
+	
+	/**
+	 * A map from contexts to their statements which have read {@link #staticHeap}.
+	 * 
+	 * <p>The static heap only grows during the analysis, but it is shared
+	 * by all contexts and so it may grow after a statement has read it (for
+	 * example, while a <tt>&lt;clinit&gt;</tt> is still being analysed,
+	 * or when contexts are analysed concurrently). These statements are
+	 * therefore re-processed whenever the static heap changes, and their
+	 * contexts are never freed on-the-fly.</p>
+	 * 
+	 * <p>The sets of statements are only accessed while holding
+	 * {@link #staticLock}.</p>
+	 */
+	private final Map<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>> staticReaders;
 
 	/**
 	 * Constructs a new points-to analysis as a forward-flow inter-procedural
 	 * analysis.
 	 */
 	public PointsToAnalysis() {
+		this(0);
+	}
+
+	/**
+	 * Constructs a new points-to analysis as a forward-flow inter-procedural
+	 * analysis, which analyses contexts concurrently using the given number of
+	 * worker threads.
+	 * 
+	 * @param parallelism the number of worker threads, or <tt>0</tt> for the
+	 *        sequential stack-based solver
+	 * @see OldForwardInterProceduralAnalysis#parallelism
+	 */
+	public PointsToAnalysis(int parallelism) {
 		super();
 		
 		// Play around with these flags
 		this.freeResultsOnTheFly = true;
 		this.verbose = true;
+		this.parallelism = parallelism;
 		
 		// No classes statically initialised yet
-		this.clinitCalled = new HashSet<SootClass>();
+		this.clinitCalled = Collections.synchronizedSet(new HashSet<SootClass>());
+		this.staticReaders = new ConcurrentHashMap<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>>();
 		
 		// Create a static points-to graph with a single "global" root object
 		this.staticHeap = topValue();
@@ -176,7 +224,6 @@ public class PointsToAnalysis extends OldForwardInterProceduralAnalysis<SootMeth
 			Value rhsOp = ((DefinitionStmt) stmt).getRightOp();
 
 			// Invoke static initialisers if static members accessed
-			// for the first time
 			StaticFieldRef staticReference = null;
 			if (lhsOp instanceof StaticFieldRef) {
 				staticReference = ((StaticFieldRef) lhsOp);				
@@ -185,34 +232,47 @@ public class PointsToAnalysis extends OldForwardInterProceduralAnalysis<SootMeth
 			}
 			if (staticReference != null) {
 				SootClass declaringClass = staticReference.getField().getDeclaringClass();
-				if (clinitCalled.contains(declaringClass) == false) {
-					clinitCalled.add(declaringClass);
-					// Don't initialise library classes
-					if (declaringClass.isLibraryClass()) {
+				// Check and mark the class at once, as other contexts may be accessing it too
+				boolean trigger = clinitCalled.add(declaringClass);
+				// Don't initialise library classes
+				if (declaringClass.isLibraryClass()) {
+					if (trigger) {
 						// Set all static fields to null
-						for (SootField field : declaringClass.getFields()) {
-							// Only for static reference fields
-							if (field.isStatic() && field.getType() instanceof RefLikeType) {
-								staticHeap.setFieldSummary(PointsToGraph.GLOBAL_LOCAL, field);
+						Map<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>> readers;
+						synchronized (staticLock) {
+							PointsToGraph heap = new PointsToGraph(staticHeap);
+							for (SootField field : declaringClass.getFields()) {
+								// Only for static reference fields
+								if (field.isStatic() && field.getType() instanceof RefLikeType) {
+									heap.setFieldSummary(PointsToGraph.GLOBAL_LOCAL, field);
+								}
 							}
+							readers = updateStaticHeap(heap);
 						}
-					} else {
-						// We have to initialise this class...
-						if (declaringClass.declaresMethodByName("<clinit>")) {
-							// Get the static initialisation method
-							SootMethod clinit = declaringClass.getMethodByName("<clinit>");
-							// At its entry use a blank value (with STICKY to avoid TOP termination)
-							PointsToGraph clinitEntryValue =  topValue();
-							clinitEntryValue.assign(PointsToGraph.STICKY_LOCAL, null);
-							// Make the call!
-							this.processCall(context, stmt, clinit,clinitEntryValue);
-							// Do not process this statement now, wait for clinit to return
-							// and this statement as a "return site"
-							return null; 
+						reprocessStaticReaders(readers);
+					}
+				} else if (declaringClass.declaresMethodByName("<clinit>")) {
+					// We have to initialise this class...
+					SootMethod clinit = declaringClass.getMethodByName("<clinit>");
+					// ...unless we are already in its static initialiser
+					if (context.getMethod() != clinit) {
+						// At its entry use a blank value (with STICKY to avoid TOP termination)
+						PointsToGraph clinitEntryValue =  topValue();
+						clinitEntryValue.assign(PointsToGraph.STICKY_LOCAL, null);
+						// Make the call! Every access may be the one that triggers
+						// initialisation, so the call-site is recorded in every context,
+						// whichever context gets here first.
+						PointsToGraph clinitExitValue = this.processCall(context, stmt, clinit, clinitEntryValue);
+						// If clinit has not returned yet, the triggering context does not
+						// process this statement now, but waits for clinit to return and
+						// this statement as a "return site". Others go ahead, and re-read
+						// the static heap when clinit updates it.
+						if (trigger && clinitExitValue == null) {
+							return null;
 						}
-						// If no <clinit> defined for this class, then continue as normal :-)
 					}
 				}
+				// If no <clinit> defined for this class, then continue as normal :-)
 			}
 			
 
@@ -269,29 +329,35 @@ public class PointsToAnalysis extends OldForwardInterProceduralAnalysis<SootMeth
 				} else if (lhsOp instanceof StaticFieldRef) { 
 					// Get parameters
 					SootField staticField = ((StaticFieldRef) lhsOp).getField();
-					// Temporarily union locals and globals
-					PointsToGraph tmp = topValue();
-					tmp.union(out, staticHeap);
-					// Store RHS into static field
-					if (rhsOp instanceof Local) {
-						Local rhsLocal = (Local) rhsOp;
-						tmp.setField(PointsToGraph.GLOBAL_LOCAL, staticField, rhsLocal);
-					} else if (rhsOp instanceof Constant) {
-						Constant rhsConstant = (Constant) rhsOp;
-						tmp.setFieldConstant(PointsToGraph.GLOBAL_LOCAL, staticField, rhsConstant);
-					} else {
-						throw new RuntimeException(rhsOp.toString());
-					}
-					// Now get rid of all locals, params, etc.
-					Set<Local> locals = new HashSet<Local>(tmp.roots.keySet());
-					for (Local local : locals) {
-						// Everything except the GLOBAL must go!
-						if (local != PointsToGraph.GLOBAL_LOCAL) {
-							tmp.kill(local);
+					// The read and update of the global information must be atomic
+					Map<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>> readers;
+					synchronized (staticLock) {
+						// Temporarily union locals and globals
+						PointsToGraph tmp = topValue();
+						tmp.union(out, staticHeap);
+						// Store RHS into static field
+						if (rhsOp instanceof Local) {
+							Local rhsLocal = (Local) rhsOp;
+							tmp.setField(PointsToGraph.GLOBAL_LOCAL, staticField, rhsLocal);
+						} else if (rhsOp instanceof Constant) {
+							Constant rhsConstant = (Constant) rhsOp;
+							tmp.setFieldConstant(PointsToGraph.GLOBAL_LOCAL, staticField, rhsConstant);
+						} else {
+							throw new RuntimeException(rhsOp.toString());
+						}
+						// Now get rid of all locals, params, etc.
+						Set<Local> locals = new HashSet<Local>(tmp.roots.keySet());
+						for (Local local : locals) {
+							// Everything except the GLOBAL must go!
+							if (local != PointsToGraph.GLOBAL_LOCAL) {
+								tmp.kill(local);
+							}
 						}
+						// Global information is updated!
+						readers = updateStaticHeap(tmp);
 					}
-					// Global information is updated!
-					staticHeap = tmp;
+					// Statements which read stale global information must be re-processed
+					reprocessStaticReaders(readers);
 					
 				} else if (rhsOp instanceof StaticFieldRef) {
 					// Get parameters
@@ -299,7 +365,16 @@ public class PointsToAnalysis extends OldForwardInterProceduralAnalysis<SootMeth
 					SootField staticField = ((StaticFieldRef) rhsOp).getField();
 					// Temporarily union locals and globals
 					PointsToGraph tmp = topValue();
-					tmp.union(out, staticHeap);
+					synchronized (staticLock) {
+						// Re-process this statement if the global information changes
+						Set<Unit> reads = staticReaders.get(context);
+						if (reads == null) {
+							reads = new HashSet<Unit>();
+							staticReaders.put(context, reads);
+						}
+						reads.add(stmt);
+						tmp.union(out, staticHeap);
+					}
 					// Load static field into LHS local
 					tmp.getField(lhsLocal, PointsToGraph.GLOBAL_LOCAL, staticField);
 					// Now get rid of globals that we do not care about
@@ -370,11 +445,86 @@ public class PointsToAnalysis extends OldForwardInterProceduralAnalysis<SootMeth
 			}
 		}
 
+		// Collect the garbage left by the updates of this statement
+		if (out != null) {
+			out.gc();
+		}
 		return out;
 
 	}
 
 
+	/**
+	 * Replaces the static heap with an updated version of it.
+	 * 
+	 * <p>The caller must hold {@link #staticLock}, and must then pass the
+	 * result to {@link #reprocessStaticReaders(Map)} once it has released
+	 * the lock.</p>
+	 * 
+	 * @param heap the updated static heap
+	 * @return a copy of {@link #staticReaders} if the static heap has changed,
+	 *         or an empty map otherwise
+	 */
+	private Map<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>> updateStaticHeap(PointsToGraph heap) {
+		if (heap.equals(staticHeap)) {
+			return Collections.emptyMap();
+		}
+		staticHeap = heap;
+		Map<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>> readers = new HashMap<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>>();
+		for (Map.Entry<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>> entry : staticReaders.entrySet()) {
+			readers.put(entry.getKey(), new HashSet<Unit>(entry.getValue()));
+		}
+		return readers;
+	}
+	
+	/**
+	 * Re-processes statements which have read a static heap that has since
+	 * changed.
+	 * 
+	 * @param readers the statements to re-process, as returned by
+	 *        {@link #updateStaticHeap(PointsToGraph)}
+	 */
+	private void reprocessStaticReaders(Map<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>> readers) {
+		for (Map.Entry<Context<SootMethod,Unit,PointsToGraph>,Set<Unit>> entry : readers.entrySet()) {
+			for (Unit unit : entry.getValue()) {
+				reprocess(entry.getKey(), unit);
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Contexts which have read the static heap are treated as if they
+	 * were always pending, as they are re-processed whenever the static heap
+	 * changes. Hence, neither they nor the contexts from which they are
+	 * reachable are ever freed.</p>
+	 */
+	@Override
+	protected void freeIfNotPending(Context<SootMethod,Unit,PointsToGraph> context, 
+			final Collection<Context<SootMethod,Unit,PointsToGraph>> pending) {
+		if (staticReaders.containsKey(context)) {
+			return;
+		}
+		// Only membership of the pending contexts is ever tested
+		super.freeIfNotPending(context, new AbstractCollection<Context<SootMethod,Unit,PointsToGraph>>() {
+			@Override
+			public boolean contains(Object o) {
+				return staticReaders.containsKey(o) || pending.contains(o);
+			}
+			
+			@Override
+			public Iterator<Context<SootMethod,Unit,PointsToGraph>> iterator() {
+				return pending.iterator();
+			}
+
+			@Override
+			public int size() {
+				return pending.size();
+			}
+		});
+	}
+
 	/**
 	 * Computes the targets of an invoke expression using a given points-to graph.
 	 * 
@@ -471,7 +621,7 @@ public class PointsToAnalysis extends OldForwardInterProceduralAnalysis<SootMeth
 		// So we use the DUMMY METHOD (which is a method with no body)
 		if (targets == null) {
 			targets = getDummyTarget();			
-			this.contextTransitions.addTransition(new CallSite<SootMethod,Unit,PointsToGraph>(callerContext, callStmt), null);
+			this.processDefaultCall(callerContext, callStmt);
 			if (verbose) {
 				System.out.println("[DEF] X" + callerContext + " -> DEFAULT " + ie.getMethod());
 			}
@@ -640,11 +790,17 @@ public class PointsToAnalysis extends OldForwardInterProceduralAnalysis<SootMeth
 
 	/**
 	 * Returns the union of two points-to graphs.
+	 * 
+	 * <p>If the second graph already contains the first, then it is returned
+	 * as is, so that the solver's comparison of a merged OUT value with the
+	 * previous one is an identity check.</p>
 	 */
 	@Override
 	public PointsToGraph meet(PointsToGraph op1, PointsToGraph op2) {
-		PointsToGraph result = new PointsToGraph();
-		result.union(op1, op2);
+		PointsToGraph result = new PointsToGraph(op2);
+		if (result.unionWith(op1) == false) {
+			return op2;
+		}
 		return result;
 	}
 
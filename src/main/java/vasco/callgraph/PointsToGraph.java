@@ -17,13 +17,14 @@
  */
 package vasco.callgraph;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import soot.ArrayType;
 import soot.Local;
@@ -56,6 +57,26 @@ import soot.jimple.internal.JimpleLocal;
  * return values, etc. and artificial sites are used for summary nodes. For arrays
  * an artificial field is used to represent element access.</p>
  * 
+ * <p>The targets of edges are {@link PointsToSet}s, which are bitsets over
+ * a global numbering of allocation sites, so that they are merged and
+ * compared a machine word at a time.</p>
+ * 
+ * <p>Both the edges from root variables and the edges between objects are
+ * stored in {@link PersistentMap}s, so that copying a graph takes constant
+ * time and each update only copies the path to the updated edges, sharing
+ * the rest of the structure with the graphs it was copied from.</p>
+ * 
+ * <p>The maps cache the hash codes of their sub-tries, so hashing a graph
+ * only visits the parts which are new since it was last hashed, and two
+ * graphs are compared by skipping shared parts and rejecting parts whose
+ * hash codes differ.</p>
+ * 
+ * <p>Operations which may leave heap nodes unreachable only mark the graph as
+ * dirty, and the unreachable nodes are removed by {@link #gc()} when the graph
+ * is next compared, merged or printed, or when a removed node is about to be
+ * re-created. A sequence of updates within a flow function therefore pays
+ * for a single traversal of the heap.</p>
+ * 
  * @author Rohan Padhye
  */
 public class PointsToGraph {
@@ -73,16 +94,63 @@ public class PointsToGraph {
 	public static final NewExpr GLOBAL_SITE = new JNewExpr(Scene.v().getObjectType());
 	
 
-	protected Map<Local,Set<AnyNewExpr>> roots;
-	protected Map<AnyNewExpr,Map<SootField,Set<AnyNewExpr>>> heap;
+	/** The initial out-edges of a new array, whose element field points to nothing. */
+	private static final PersistentMap<SootField,PointsToSet> EMPTY_ARRAY_EDGES = PersistentMap.<SootField,PointsToSet>empty().plus(ARRAY_FIELD, PointsToSet.EMPTY);
+
+	/** The initial out-edges of a new array, whose element field points to the summary node. */
+	private static final PersistentMap<SootField,PointsToSet> SUMMARY_ARRAY_EDGES = PersistentMap.<SootField,PointsToSet>empty().plus(ARRAY_FIELD, PointsToSet.of(SUMMARY_NODE));
+
+	/** The reference-like instance fields of each class, including inherited ones. */
+	private static final Map<SootClass,List<SootField>> classFields = new HashMap<SootClass,List<SootField>>();
+
+	/** The initial out-edges of new objects of each class, without field summaries. */
+	private static final Map<SootClass,PersistentMap<SootField,PointsToSet>> emptyClassEdges = new HashMap<SootClass,PersistentMap<SootField,PointsToSet>>();
+
+	/** The initial out-edges of new objects of each class, with fields pointing to the summary node. */
+	private static final Map<SootClass,PersistentMap<SootField,PointsToSet>> summaryClassEdges = new HashMap<SootClass,PersistentMap<SootField,PointsToSet>>();
+
+	/** Merges the targets of an edge in both operands of a union. */
+	private static final PersistentMap.Merger<PointsToSet> TARGETS_UNION = new PersistentMap.Merger<PointsToSet>() {
+		@Override
+		public PointsToSet merge(PointsToSet first, PointsToSet second) {
+			return first.union(second);
+		}
+	};
+
+	/** Merges the field edges of a node in both operands of a union. */
+	private static final PersistentMap.Merger<PersistentMap<SootField,PointsToSet>> EDGES_UNION = new PersistentMap.Merger<PersistentMap<SootField,PointsToSet>>() {
+		@Override
+		public PersistentMap<SootField,PointsToSet> merge(PersistentMap<SootField,PointsToSet> first, PersistentMap<SootField,PointsToSet> second) {
+			return first.union(second, TARGETS_UNION);
+		}
+	};
+
+	/** Memoized results of {@link #canCast(SootClass, SootClass)}, by source and target class. */
+	private static final ConcurrentHashMap<SootClass,ConcurrentHashMap<SootClass,Boolean>> castResults = new ConcurrentHashMap<SootClass,ConcurrentHashMap<SootClass,Boolean>>();
+
+	protected PersistentMap<Local,PointsToSet> roots;
+	protected PersistentMap<AnyNewExpr,PersistentMap<SootField,PointsToSet>> heap;
+
+	/**
+	 * Whether the heap may contain nodes which have become unreachable since
+	 * the last garbage collection.
+	 */
+	protected boolean dirty;
+
+	/**
+	 * Whether the heap may contain unreachable nodes which were deliberately
+	 * retained by {@link #killWithoutGC(Local)}, and which are to be removed
+	 * by the next update that collects garbage.
+	 */
+	protected boolean retained;
 	
 	
 	/**
 	 * Constructs a new empty points-to graph.
 	 */
 	public PointsToGraph() {
-		roots = new HashMap<Local,Set<AnyNewExpr>>();
-		heap = new HashMap<AnyNewExpr,Map<SootField,Set<AnyNewExpr>>>();
+		roots = PersistentMap.empty();
+		heap = PersistentMap.empty();
 	}
 
 	/** 
@@ -91,10 +159,12 @@ public class PointsToGraph {
 	 * @param other the points-to graph to copy
 	 */
 	public PointsToGraph(PointsToGraph other) {
-		// As the data inside the top-level maps are immutable, just a shallow
-		// copy will suffice
-		this.roots = new HashMap<Local,Set<AnyNewExpr>>(other.roots);
-		this.heap = new HashMap<AnyNewExpr,Map<SootField,Set<AnyNewExpr>>>(other.heap);
+		// As the maps are persistent, they can be shared until either
+		// graph is updated
+		this.roots = other.roots;
+		this.heap = other.heap;
+		this.dirty = other.dirty;
+		this.retained = other.retained;
 	}
 
 	/**
@@ -110,14 +180,12 @@ public class PointsToGraph {
 		ensureNode(n2);
 
 		// Add the field edge to a copy of the current edges.
-		Map<SootField,Set<AnyNewExpr>> oldEdges = heap.get(n1);
-		Map<SootField,Set<AnyNewExpr>> newEdges = new HashMap<SootField,Set<AnyNewExpr>>(oldEdges);
-		Set<AnyNewExpr> oldTargets = oldEdges.containsKey(field) ? oldEdges.get(field) : new HashSet<AnyNewExpr>();
-		Set<AnyNewExpr> newTargets = new HashSet<AnyNewExpr>(oldTargets);
-		boolean change = newTargets.add(n2);
+		PersistentMap<SootField,PointsToSet> oldEdges = heap.get(n1);
+		PointsToSet oldTargets = oldEdges.containsKey(field) ? oldEdges.get(field) : PointsToSet.EMPTY;
+		PointsToSet newTargets = oldTargets.union(PointsToSet.of(n2));
+		boolean change = newTargets != oldTargets;
 		if (change) {
-			newEdges.put(field, Collections.unmodifiableSet(newTargets));
-			heap.put(n1, Collections.unmodifiableMap(newEdges));
+			heap = heap.plus(n1, oldEdges.plus(field, newTargets));
 		}
 	}
 
@@ -132,11 +200,11 @@ public class PointsToGraph {
 		ensureNode(node);
 		
 		// Add the root variable edge.
-		Set<AnyNewExpr> oldPointees = roots.containsKey(var) ? roots.get(var) : new HashSet<AnyNewExpr>();
-		Set<AnyNewExpr> newPointees = new HashSet<AnyNewExpr>(oldPointees);
-		boolean change = newPointees.add(node);
+		PointsToSet oldPointees = roots.containsKey(var) ? roots.get(var) : PointsToSet.EMPTY;
+		PointsToSet newPointees = oldPointees.union(PointsToSet.of(node));
+		boolean change = newPointees != oldPointees;
 		if (change) {
-			roots.put(var, Collections.unmodifiableSet(newPointees)); 
+			roots = roots.plus(var, newPointees);
 		}
 	}
 	
@@ -153,25 +221,29 @@ public class PointsToGraph {
 	 */
 	public void assign(Local lhs, Local rhs) {		
 		// Find whatever the RHS was pointing to.
-		Set<AnyNewExpr> rhsTargets = roots.get(rhs);
+		PointsToSet rhsTargets = roots.get(rhs);
 		
 		// We will fill this up with correctly typed targets
-		Set<AnyNewExpr> lhsTargets = new HashSet<AnyNewExpr>();
+		PointsToSet lhsTargets = PointsToSet.EMPTY;
 		Type lhsType = lhs.getType();
 		if (lhsType instanceof ArrayType) {
 			lhsType = ((ArrayType) lhsType).baseType;
 		}
 		if (rhsTargets != null) {
 			// Handle references and arrays separately
-			if (lhsType instanceof RefType) {
+			if (lhsType.equals(Scene.v().getObjectType())) {
+				// Every target can be cast to java.lang.Object
+				lhsTargets = rhsTargets;
+			} else if (lhsType instanceof RefType) {
 				SootClass toClass = ((RefType) lhsType).getSootClass();
+				PointsToSet.Builder typedTargets = new PointsToSet.Builder();
 				for (AnyNewExpr rhsTarget : rhsTargets) {
 					// Handle only instance objects
 					if (rhsTarget instanceof AnyNewExpr) {
 						// Do not type-check for summary nodes and when the LHS is java.lang.Object
-						if (rhsTarget == SUMMARY_NODE || lhsType.equals(Scene.v().getObjectType())) {
+						if (rhsTarget == SUMMARY_NODE) {
 							// Add by default
-							lhsTargets.add(rhsTarget);
+							typedTargets.add(rhsTarget);
 							continue;
 						}
 						Type rhsTargetType = rhsTarget.getType();
@@ -183,25 +255,23 @@ public class PointsToGraph {
 							SootClass fromClass = ((RefType) rhsTargetType).getSootClass();
 							if (PointsToGraph.canCast(fromClass, toClass)) {
 								// Yes, add this target
-								lhsTargets.add(rhsTarget);
+								typedTargets.add(rhsTarget);
 							}
 						} else {
 							// For non-ref base types (e.g. char[]), just add
-							lhsTargets.add(rhsTarget);
+							typedTargets.add(rhsTarget);
 						}
 					}
 				}
+				lhsTargets = typedTargets.build();
 			} else if (lhsType instanceof ArrayType) {
 				// We are not so fickle about arrays
-				lhsTargets.addAll(rhsTargets);
+				lhsTargets = rhsTargets;
 			}
 		}
 
 		// Add the targets to the LHS edges.
-		roots.put(lhs, Collections.unmodifiableSet(lhsTargets)); 
-		
-		// Ensure reachability
-		gc();
+		replaceTargets(lhs, lhsTargets);
 	}
 
 	/**
@@ -222,11 +292,12 @@ public class PointsToGraph {
 	 * Assigns the sticky local to a parameter.
 	 */
 	public void assignSticky(Local sticky, Local parameter) {
-		Set<AnyNewExpr> rhsTargets = roots.get(parameter);
-		Set<AnyNewExpr> lhsTargets = new HashSet<AnyNewExpr>(roots.get(sticky));
-		boolean change = lhsTargets.addAll(rhsTargets);
+		PointsToSet rhsTargets = roots.get(parameter);
+		PointsToSet oldTargets = roots.get(sticky);
+		PointsToSet lhsTargets = oldTargets.union(rhsTargets);
+		boolean change = lhsTargets != oldTargets;
 		if (change) {
-			roots.put(sticky, Collections.unmodifiableSet(lhsTargets));
+			roots = roots.plus(sticky, lhsTargets);
 		}
 	}
 
@@ -253,12 +324,7 @@ public class PointsToGraph {
 		newNode(allocSite, false);
 		
 		// Assign LHS to the new node
-		Set<AnyNewExpr> target = new HashSet<AnyNewExpr>();
-		target.add(allocSite);
-		roots.put(lhs, Collections.unmodifiableSet(target));
-	
-		// Ensure reachability.
-		gc();
+		replaceTargets(lhs, PointsToSet.of(allocSite));
 	}
 	
 	/**
@@ -271,10 +337,20 @@ public class PointsToGraph {
 		}
 		
 		// Assign LHS to all these nodes
-		roots.put(lhs, Collections.unmodifiableSet(targets));
-		
-		// Ensure reachability.
-		gc();
+		replaceTargets(lhs, PointsToSet.copyOf(targets));
+	}
+	
+	/**
+	 * Replaces the out-edges of a root variable, marking the graph as dirty
+	 * if any of the old targets is no longer pointed-to by the variable or
+	 * if retained garbage is to be collected.
+	 */
+	private void replaceTargets(Local lhs, PointsToSet targets) {
+		PointsToSet oldTargets = roots.get(lhs);
+		if (retained || (oldTargets != null && !targets.containsAll(oldTargets))) {
+			dirty = true;
+		}
+		roots = roots.plus(lhs, targets);
 	}
 	
 	/**
@@ -284,14 +360,69 @@ public class PointsToGraph {
 		assignNew(lhs, SUMMARY_NODE);
 	}
 
+	/**
+	 * Clears the state shared by all points-to graphs, i.e. the numbering of
+	 * allocation sites used by {@link PointsToSet}, the caches of fields and
+	 * initial edges of each class, and the memoized results of
+	 * {@link #canCast(SootClass, SootClass)}.
+	 * 
+	 * <p>This releases the allocation sites and classes of an analysed program,
+	 * and must be called when the Soot scene is reset, e.g. by <tt>G.reset()</tt>,
+	 * before another program is analysed. Graphs and sets created before the
+	 * reset must no longer be used.</p>
+	 */
+	public static void reset() {
+		synchronized (summaryClassEdges) {
+			summaryClassEdges.clear();
+		}
+		synchronized (emptyClassEdges) {
+			emptyClassEdges.clear();
+		}
+		synchronized (classFields) {
+			classFields.clear();
+		}
+		castResults.clear();
+		// The constant sites are in static sets, so they keep their numbers
+		PointsToSet.reset(SUMMARY_NODE, STRING_SITE, CLASS_SITE, GLOBAL_SITE);
+	}
+
 	/**
 	 * Determines whether an object of one class can be cast to another class.
 	 * 
+	 * <p>The result for each pair of classes is computed once and memoized, as
+	 * the same pairs are checked every time a variable is assigned. Memoized
+	 * results are read without locking; two threads may compute the same result
+	 * concurrently, which is harmless. They are cleared by {@link #reset()}.</p>
+	 * 
 	 * @param fromClass the source type
 	 * @param toClass the target type
 	 * @return <tt>true</tt> if and only if <tt>fromClass</tt> is a sub-type of (or implements) <tt>toClass</tt>
 	 */
 	public static boolean canCast(SootClass fromClass, SootClass toClass) {
+		// Look up a memoized result
+		ConcurrentHashMap<SootClass,Boolean> results = castResults.get(fromClass);
+		if (results == null) {
+			results = new ConcurrentHashMap<SootClass,Boolean>();
+			ConcurrentHashMap<SootClass,Boolean> existing = castResults.putIfAbsent(fromClass, results);
+			if (existing != null) {
+				results = existing;
+			}
+		}
+		Boolean memoized = results.get(toClass);
+		if (memoized != null) {
+			return memoized;
+		}
+		// Otherwise compute it, which recurses on super-types
+		boolean result = computeCanCast(fromClass, toClass);
+		results.put(toClass, result);
+		return result;
+	}
+
+	/**
+	 * Determines whether an object of one class can be cast to another class
+	 * by walking the super-types of the source class.
+	 */
+	private static boolean computeCanCast(SootClass fromClass, SootClass toClass) {
 		// Handle classes and interfaces differently
 		if (toClass.isInterface()) {
 			// For interfaces, the fromClass (or one of its super-classes) must
@@ -347,7 +478,7 @@ public class PointsToGraph {
 	private void ensureNode(AnyNewExpr node) {
 		// WARNING: No fields are added if this is used!
 		if (node != null && !heap.containsKey(node))
-			heap.put(node, Collections.unmodifiableMap(new HashMap<SootField,Set<AnyNewExpr>>()));
+			heap = heap.plus(node, PersistentMap.<SootField,PointsToSet>empty());
 	}
 
 	/**
@@ -362,6 +493,12 @@ public class PointsToGraph {
 		if (!(obj instanceof PointsToGraph))
 			return false;
 		PointsToGraph other = (PointsToGraph) obj;
+		// Variables are not garbage collected, so their count can be compared first
+		if (roots.size() != other.roots.size())
+			return false;
+		// Compare only reachable nodes
+		this.gc();
+		other.gc();
 		if (heap == null) {
 			if (other.heap != null)
 				return false;
@@ -376,20 +513,26 @@ public class PointsToGraph {
 	}
 
 	/**
-	 * Removes all unreachable nodes from the edge sets.
+	 * Removes all unreachable nodes from the edge sets, if any may have
+	 * become unreachable since the last collection.
 	 */
 	public void gc() {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		retained = false;
+
 		// Maintain a work-list of (reachable) nodes to process.
 		LinkedList<AnyNewExpr> worklist = new LinkedList<AnyNewExpr>();
 
 		// Add all the nodes pointed-to by root variables to the work-list.
-		for (Set<AnyNewExpr> nodes : roots.values()) {
+		for (PointsToSet nodes : roots.values()) {
 			worklist.addAll(nodes);
 		}
 
-		// Start with an empty field map (save the old one!)
-		Map<AnyNewExpr,Map<SootField,Set<AnyNewExpr>>> oldHeap = this.heap;
-		Map<AnyNewExpr,Map<SootField,Set<AnyNewExpr>>> newHeap = new HashMap<AnyNewExpr,Map<SootField,Set<AnyNewExpr>>>();
+		// Collect the reachable nodes
+		PointsToSet.Builder reachable = new PointsToSet.Builder();
 
 		// Process work-list.
 		while (!worklist.isEmpty()) {
@@ -398,26 +541,30 @@ public class PointsToGraph {
 			// Ignore null pointees from the work-list
 			if (node == null)
 				throw new NullPointerException();
-			// If this is already there in the new map, then ignore (duplicate
+			// If this has already been reached, then ignore (duplicate
 			// processing)
-			if (newHeap.containsKey(node))
+			if (!reachable.add(node))
 				continue;
 
-			// Otherwise, just get the original stuff back
-			// No need to do deep copy as (1) it is our own data and (2) target
-			// nodes of edges will be reachable
-			// (3) Also oldHeap.get(node) should return an unmodifiable map
-			newHeap.put(node, oldHeap.get(node)); 
-
 			// Add targets of this node to the work-list.
-			for (Set<AnyNewExpr> targets : newHeap.get(node).values()) {
+			for (PointsToSet targets : heap.get(node).values()) {
 				worklist.addAll(targets);
 			}
 
 		}
 
-		// Set this heap to the new minimal heap
-		this.heap = newHeap;
+		// Remove the unreachable nodes, sharing the rest of the heap
+		if (reachable.size() < heap.size()) {
+			PointsToSet reachableNodes = reachable.build();
+			PersistentMap<AnyNewExpr,PersistentMap<SootField,PointsToSet>> newHeap = heap;
+			for (AnyNewExpr node : heap.keySet()) {
+				if (!reachableNodes.contains(node)) {
+					newHeap = newHeap.minus(node);
+				}
+			}
+			// Set this heap to the new minimal heap
+			this.heap = newHeap;
+		}
 
 	}
 
@@ -426,24 +573,21 @@ public class PointsToGraph {
 	 */
 	public void getField(Local lhs, Local rhs, SootField field) {
 		// Find whatever the RHS->F was pointing to.
-		Set<AnyNewExpr> rhsPointees = roots.get(rhs);		
-		Set<AnyNewExpr> rhsFieldPointees = new HashSet<AnyNewExpr>();
+		PointsToSet rhsPointees = roots.get(rhs);		
+		PointsToSet.Builder rhsFieldPointees = new PointsToSet.Builder();
 		for (AnyNewExpr src : rhsPointees) {
 			if (src == null) {
 				throw new NullPointerException();
 			} else if (src == SUMMARY_NODE) { 
 				rhsFieldPointees.add(SUMMARY_NODE);
 			}else if (heap.get(src).containsKey(field)) {
-				Set<AnyNewExpr> targets = heap.get(src).get(field);
+				PointsToSet targets = heap.get(src).get(field);
 				rhsFieldPointees.addAll(targets);
 			}
 		}
 
 		// Add the indirect pointees to the LHS edges
-		roots.put(lhs, Collections.unmodifiableSet(rhsFieldPointees)); 
-		
-		// Ensure reachability.
-		gc();
+		replaceTargets(lhs, rhsFieldPointees.build());
 	}
 	
 	/**
@@ -459,6 +603,7 @@ public class PointsToGraph {
 	 */
 	@Override
 	public int hashCode() {
+		gc();
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((heap == null) ? 0 : heap.hashCode());
@@ -470,11 +615,12 @@ public class PointsToGraph {
 	 * Removes all out-edges of the given variable
 	 */
 	public void kill(Local v) {
-		// Kill the edges
-		roots.remove(v);
-
-		// Ensure reachability.
-		gc();
+		// Kill the edges, which may leave their targets unreachable
+		PointsToSet oldTargets = roots.get(v);
+		if (retained || (oldTargets != null && !oldTargets.isEmpty())) {
+			dirty = true;
+		}
+		roots = roots.minus(v);
 	}
 	
 	/**
@@ -482,14 +628,18 @@ public class PointsToGraph {
 	 * 
 	 */
 	private void newNode(AnyNewExpr allocSite, boolean summarizeFields) {
+		// An unreachable node must not be re-used with its old edges
+		if (dirty && heap.containsKey(allocSite)) {
+			gc();
+		}
+		
 		// Do not re-create a new node unless we are summarizing its fields
 		if (heap.containsKey(allocSite) && !summarizeFields) {
 			return;
 		}
 		
 		
-		// OK, we have to create it. Lets find it's fields.
-		List<SootField> fields = new LinkedList<SootField>();
+		// OK, we have to create it.
 		
 		// If we are going to summarise fields later, ensure summary node exists
 		if (summarizeFields) {
@@ -497,45 +647,76 @@ public class PointsToGraph {
 		}
 		
 		// First decide properly which type of new expression we have
+		PersistentMap<SootField,PointsToSet> edges = PersistentMap.empty();
 		if (allocSite instanceof NewExpr) {
 			// Enumerate fields only for non-summary nodes
 			if (allocSite != SUMMARY_NODE) {
-				// Find all reference-like fields from the soot class of the new expression
 				SootClass sootClass = ((RefType)((NewExpr) allocSite).getType()).getSootClass(); 
-				while(true) {
-					for (SootField field : sootClass.getFields()) {
-						if (field.isStatic() == false && field.getType() instanceof RefLikeType) {
-							fields.add(field);
-						}
-					}
-					// Get fields for all classes up to java.lang.Object
-					if (sootClass.hasSuperclass()) {
-						sootClass = sootClass.getSuperclass();
-					} else {
-						break;
-					}
-				}
+				edges = initialEdges(sootClass, summarizeFields);
 			}
 		} else if (allocSite instanceof NewArrayExpr) {
 			// Has only one field: the element[]
-			fields.add(ARRAY_FIELD);
+			edges = summarizeFields ? SUMMARY_ARRAY_EDGES : EMPTY_ARRAY_EDGES;
 		} else if (allocSite instanceof NewMultiArrayExpr) {
 			// A multi-dimensional array creation
 			// We do not handle multi-arrays right now
 			allocSite = SUMMARY_NODE;
 		}
 		
-		// Create edges
-		Map<SootField,Set<AnyNewExpr>> edges = new HashMap<SootField,Set<AnyNewExpr>>();
-		for (SootField field : fields) {
-			HashSet<AnyNewExpr> targets = new HashSet<AnyNewExpr>();
-			if (summarizeFields) {
-				targets.add(SUMMARY_NODE);
+		// Add the node with its (shared) initial edges
+		heap = heap.plus(allocSite, edges);
+		
+	}
+	
+	/**
+	 * Returns the initial out-edges of a new object of the given class, which
+	 * are from each of its reference-like fields to no objects or, if fields
+	 * are summarized, to the summary node.
+	 * 
+	 * <p>The edges are computed once per class and shared by all nodes.</p>
+	 */
+	private static PersistentMap<SootField,PointsToSet> initialEdges(SootClass sootClass, boolean summarizeFields) {
+		Map<SootClass,PersistentMap<SootField,PointsToSet>> cache = summarizeFields ? summaryClassEdges : emptyClassEdges;
+		synchronized (cache) {
+			PersistentMap<SootField,PointsToSet> edges = cache.get(sootClass);
+			if (edges == null) {
+				PointsToSet targets = summarizeFields ? PointsToSet.of(SUMMARY_NODE) : PointsToSet.EMPTY;
+				edges = PersistentMap.empty();
+				for (SootField field : referenceFields(sootClass)) {
+					edges = edges.plus(field, targets);
+				}
+				cache.put(sootClass, edges);
 			}
-			edges.put(field, Collections.unmodifiableSet(targets));
+			return edges;
+		}
+	}
+	
+	/**
+	 * Returns the instance fields of reference-like type of the given class
+	 * and of all its super-classes.
+	 */
+	private static List<SootField> referenceFields(SootClass sootClass) {
+		synchronized (classFields) {
+			List<SootField> fields = classFields.get(sootClass);
+			if (fields == null) {
+				// Find all reference-like fields from the soot class
+				fields = new ArrayList<SootField>();
+				for (SootClass c = sootClass; ; c = c.getSuperclass()) {
+					for (SootField field : c.getFields()) {
+						if (field.isStatic() == false && field.getType() instanceof RefLikeType) {
+							fields.add(field);
+						}
+					}
+					// Get fields for all classes up to java.lang.Object
+					if (!c.hasSuperclass()) {
+						break;
+					}
+				}
+				fields = Collections.unmodifiableList(fields);
+				classFields.put(sootClass, fields);
+			}
+			return fields;
 		}
-		heap.put(allocSite, Collections.unmodifiableMap(edges));
-		
 	}
 	
 	/**
@@ -550,9 +731,9 @@ public class PointsToGraph {
 			return;
 		
 		// Find the objects whose field is being modified.
-		Set<AnyNewExpr> lhsPointees = roots.get(lhs);
+		PointsToSet lhsPointees = roots.get(lhs);
 		// Find the objects to which the fields will now point to.
-		Set<AnyNewExpr> rhsPointees = roots.get(rhs);
+		PointsToSet rhsPointees = roots.get(rhs);
 		
 		// LHS variable should exist
 		if (lhsPointees == null)
@@ -579,26 +760,24 @@ public class PointsToGraph {
 				continue;
 			}
 			// Add the new edges (copy-and-modify as edges are immutable)
-			Map<SootField,Set<AnyNewExpr>> oldEdges = heap.get(node);
-			Map<SootField,Set<AnyNewExpr>> newEdges = new HashMap<SootField,Set<AnyNewExpr>>(oldEdges);
-			Set<AnyNewExpr> oldTargets = oldEdges.get(field);
+			PersistentMap<SootField,PointsToSet> oldEdges = heap.get(node);
+			PointsToSet oldTargets = oldEdges.get(field);
 			if (oldTargets == null) {
 				if (node == GLOBAL_SITE) {
 					// If the node is global, then field must be static
 					assert_tmp(field.isStatic());
 					// In that case, we allow this condition
-					oldTargets = new HashSet<AnyNewExpr>();
+					oldTargets = PointsToSet.EMPTY;
 				} else {
 					// Otherwise not acceptable as we are doing type-checking
 					System.err.println(this);
 					throw new RuntimeException("Field not found: " + field + " in " + node);
 				}
 			}
-			Set<AnyNewExpr> newTargets = new HashSet<AnyNewExpr>(oldTargets);
-			boolean change = newTargets.addAll(rhsPointees);
+			PointsToSet newTargets = oldTargets.union(rhsPointees);
+			boolean change = newTargets != oldTargets;
 			if (change) {
-				newEdges.put(field, Collections.unmodifiableSet(newTargets));
-				heap.put(node, Collections.unmodifiableMap(newEdges));
+				heap = heap.plus(node, oldEdges.plus(field, newTargets));
 			}
 		}
 		
@@ -634,10 +813,9 @@ public class PointsToGraph {
 		newNode(allocSite, false);
 
 		// Find the objects whose field is being modified.
-		Set<AnyNewExpr> lhsPointees = roots.get(lhs);
+		PointsToSet lhsPointees = roots.get(lhs);
 		// Find the objects to which the fields will now point to.
-		Set<AnyNewExpr> rhsPointees = new HashSet<AnyNewExpr>();
-		rhsPointees.add(allocSite);
+		PointsToSet rhsPointees = PointsToSet.of(allocSite);
 		
 		// LHS variable should exist
 		if (lhsPointees == null)
@@ -652,26 +830,24 @@ public class PointsToGraph {
 			if (node == SUMMARY_NODE) // Don't add any edge to SUMMARY
 				continue; 
 			// Add the new edges (copy-and-modify as edges are immutable)
-			Map<SootField,Set<AnyNewExpr>> oldEdges = heap.get(node);
-			Map<SootField,Set<AnyNewExpr>> newEdges = new HashMap<SootField,Set<AnyNewExpr>>(oldEdges);
-			Set<AnyNewExpr> oldTargets = oldEdges.get(field);
+			PersistentMap<SootField,PointsToSet> oldEdges = heap.get(node);
+			PointsToSet oldTargets = oldEdges.get(field);
 			// Check to see if this node had edges with the given field
 			if (oldTargets == null) {
 				if (node == GLOBAL_SITE) {
 					// If the node is global, then field must be static
 					assert_tmp(field.isStatic());
 					// In that case, we allow this condition
-					oldTargets = new HashSet<AnyNewExpr>();
+					oldTargets = PointsToSet.EMPTY;
 				} else {
 					// Otherwise not acceptable as we are doing type-checking
 					throw new RuntimeException("Field not found: " + field + " in " + node);
 				}
 			}
-			Set<AnyNewExpr> newTargets = new HashSet<AnyNewExpr>(oldTargets);
-			boolean change = newTargets.addAll(rhsPointees);
+			PointsToSet newTargets = oldTargets.union(rhsPointees);
+			boolean change = newTargets != oldTargets;
 			if (change) {
-				newEdges.put(field, Collections.unmodifiableSet(newTargets));
-				heap.put(node, Collections.unmodifiableMap(newEdges));
+				heap = heap.plus(node, oldEdges.plus(field, newTargets));
 			}
 		}
 		
@@ -689,13 +865,14 @@ public class PointsToGraph {
 	 * call-edges.
 	 */
 	public void subtractHeap(PointsToGraph other) {
+		other.gc();
 		for (AnyNewExpr heapNode : other.heap.keySet()) {
-			this.heap.remove(heapNode);
+			this.heap = this.heap.minus(heapNode);
 		}
 	}
 	
 	public void summarizeTargetFields(Local lhs) {
-		Set<AnyNewExpr> targets = roots.get(lhs);
+		PointsToSet targets = roots.get(lhs);
 		// Summarize nodes
 		for (AnyNewExpr allocSite : targets) {
 			newNode(allocSite, true);
@@ -704,6 +881,7 @@ public class PointsToGraph {
 	
 	@Override
 	public String toString() {
+		gc();
 		StringBuffer sb = new StringBuffer();
 
 		for (Local var : roots.keySet()) {
@@ -747,83 +925,57 @@ public class PointsToGraph {
 		// an issue)
 		assert_tmp (this != p && this != q);
 
-		// Clear the current data.
-		this.roots = new HashMap<Local,Set<AnyNewExpr>>();
-		this.heap = new HashMap<AnyNewExpr,Map<SootField,Set<AnyNewExpr>>>();
-
-		// Union root variable edges.
-		Set<Local> vars1 = p.roots.keySet();
-		Set<Local> vars2 = q.roots.keySet();
-		Set<Local> allVars = new HashSet<Local>();
-		allVars.addAll(vars1);
-		allVars.addAll(vars2);
-
-		for (Local v : allVars) {
-			// Collect all pointees
-			Set<AnyNewExpr> pointees = new HashSet<AnyNewExpr>();
-			if (vars1.contains(v)) {
-				pointees.addAll(p.roots.get(v));
-			}
-			if (vars2.contains(v)) {
-				pointees.addAll(q.roots.get(v));
-			}
-
-			// Add an immutable version of these pointees
-			this.roots.put(v, Collections.unmodifiableSet(pointees));
-		}
-
-		// Time to union all heap nodes
-		Set<AnyNewExpr> nodes1 = p.heap.keySet();
-		Set<AnyNewExpr> nodes2 = q.heap.keySet();
-		Set<AnyNewExpr> allNodes = new HashSet<AnyNewExpr>();
-		allNodes.addAll(nodes1);
-		allNodes.addAll(nodes2);
-
-		for (AnyNewExpr node : allNodes) {
-			Map<SootField,Set<AnyNewExpr>> edges = new HashMap<SootField,Set<AnyNewExpr>>();
-
-			// First, find all possible fields
-			Set<SootField> fields = new HashSet<SootField>();
-			if (p.heap.containsKey(node))
-				fields.addAll(p.heap.get(node).keySet());
-			if (q.heap.containsKey(node))
-				fields.addAll(q.heap.get(node).keySet());
-
-			// Now, initialise each field with a mutable set of pointees
-			for (SootField field : fields) {
-				edges.put(field, new HashSet<AnyNewExpr>());
-			}
-
-			// Add field edges from first operand
-			if (nodes1.contains(node)) {
-				for (SootField field : fields) {
-					edges.get(field).addAll(p.heap.get(node).get(field));
-				}
-			}
-
-			// Add field edges from second operand
-			if (nodes2.contains(node)) {
-				for (SootField field : fields) {
-					edges.get(field).addAll(q.heap.get(node).get(field));
-				}
-			}
-
-			// Immutalize the field edges
-			for (SootField field : fields) {
-				edges.put(field, Collections.unmodifiableSet(edges.get(field)));
-			}
+		// Start from the first operand and add the second
+		this.roots = p.roots;
+		this.heap = p.heap;
+		this.dirty = p.dirty;
+		this.retained = p.retained;
+		unionWith(q);
+	}
 
-			// Add an immutable version of these edges
-			this.heap.put(node, Collections.unmodifiableMap(edges));
+	/**
+	 * Adds the edges of another graph to this graph.
+	 * 
+	 * <p>The edge maps of this graph are shared with the result wherever the
+	 * other graph adds nothing to them, and are replaced by those of the other
+	 * graph wherever they add nothing to it.</p>
+	 * 
+	 * @param other the graph whose edges to add
+	 * @return <tt>true</tt> if and only if this graph changed
+	 */
+	public boolean unionWith(PointsToGraph other) {
+		// Do not merge the edges of nodes which are no longer reachable
+		this.gc();
+		other.gc();
+
+		// Union root variable edges and heap edges
+		PersistentMap<Local,PointsToSet> newRoots = this.roots.union(other.roots, TARGETS_UNION);
+		PersistentMap<AnyNewExpr,PersistentMap<SootField,PointsToSet>> newHeap = this.heap.union(other.heap, EDGES_UNION);
+		if (newRoots == this.roots && newHeap == this.heap) {
+			return false;
 		}
+		this.roots = newRoots;
+		this.heap = newHeap;
+		this.retained = this.retained || other.retained;
+		return true;
 	}
-	
+
 	private void assert_tmp(boolean b) { 
 		if (b == false)
 			throw new AssertionError();
 	}
 
+	/**
+	 * Removes all out-edges of the given variable, but retains the nodes
+	 * which become unreachable until the next update that collects garbage.
+	 */
 	public void killWithoutGC(Local local) {
-		roots.remove(local);
+		// Collect garbage left by earlier updates, but not by this one
+		gc();
+		Set<AnyNewExpr> oldTargets = roots.get(local);
+		if (oldTargets != null && !oldTargets.isEmpty()) {
+			retained = true;
+		}
+		roots = roots.minus(local);
 	}
 }
@@ -0,0 +1,428 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.callgraph;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import soot.jimple.AnyNewExpr;
+
+/**
+ * An immutable set of allocation sites, represented as a bitset.
+ *
+ * <p>
+ * Allocation sites are numbered densely in the order in which they are first
+ * added to any set, and a set stores the words of its bitset from the lowest
+ * to the highest non-zero word only. Union, containment and equality of two
+ * sets are computed a word at a time.
+ * </p>
+ *
+ * <p>
+ * Only numbering a new site takes a lock. Looking up the number of a site and
+ * the site with a number, as done by {@link #contains(Object)} and by
+ * iteration, read a concurrent map and a published array without locking.
+ * The numbering is global and retains every site until it is cleared with
+ * {@link PointsToGraph#reset()}.
+ * </p>
+ *
+ * <p>
+ * Sets are created with a {@link Builder}, or by {@link #of(AnyNewExpr)} and
+ * {@link #union(PointsToSet)}. Mutating operations of the {@link java.util.Set}
+ * interface throw an {@link UnsupportedOperationException}.
+ * </p>
+ *
+ * @author Rohan Padhye
+ */
+public final class PointsToSet extends AbstractSet<AnyNewExpr> {
+
+	/** The empty set. */
+	public static final PointsToSet EMPTY = new PointsToSet(0, new long[0], 0);
+
+	/** A mapping from allocation sites to their numbers. */
+	private static final ConcurrentMap<AnyNewExpr,Integer> numbers = new ConcurrentHashMap<AnyNewExpr,Integer>();
+
+	/**
+	 * The allocation sites, indexed by their numbers. A new site is stored
+	 * before its number is published in {@link #numbers}, and the array is
+	 * replaced by a larger copy when it is full.
+	 */
+	private static volatile AnyNewExpr[] sites = new AnyNewExpr[64];
+
+	/** The number of the next allocation site, guarded by {@link #lock}. */
+	private static int count;
+
+	/** A lock which serialises the numbering of new allocation sites. */
+	private static final Object lock = new Object();
+
+	/** The index of the first word of the bitset which is stored. */
+	private final int offset;
+
+	/** The stored words of the bitset, of which the first and last are non-zero. */
+	private final long[] words;
+
+	/** The number of allocation sites in this set. */
+	private final int size;
+
+	/** The hash code, or <tt>0</tt> if it has not been computed. */
+	private int hash;
+
+	private PointsToSet(int offset, long[] words, int size) {
+		this.offset = offset;
+		this.words = words;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of an allocation site, numbering it if it has not
+	 * been seen before.
+	 *
+	 * @param site an allocation site
+	 * @return the number of <tt>site</tt>
+	 */
+	static int number(AnyNewExpr site) {
+		Integer number = numbers.get(site);
+		if (number != null) {
+			return number;
+		}
+		synchronized (lock) {
+			number = numbers.get(site);
+			if (number == null) {
+				number = count++;
+				AnyNewExpr[] array = sites;
+				if (number == array.length) {
+					array = Arrays.copyOf(array, 2 * array.length);
+				}
+				array[number] = site;
+				sites = array;
+				numbers.put(site, number);
+			}
+			return number;
+		}
+	}
+
+	/**
+	 * Returns the allocation site with a given number.
+	 */
+	private static AnyNewExpr site(int number) {
+		AnyNewExpr[] array = sites;
+		if (number < array.length && array[number] != null) {
+			return array[number];
+		}
+		// A set published without synchronization may be seen before the array
+		synchronized (lock) {
+			return sites[number];
+		}
+	}
+
+	/**
+	 * Forgets the numbers of all allocation sites except the given ones, which
+	 * keep their numbers so that sets of them remain valid. Sets containing
+	 * any other site must no longer be used.
+	 *
+	 * @param retained allocation sites whose numbers are kept
+	 */
+	static void reset(AnyNewExpr... retained) {
+		synchronized (lock) {
+			AnyNewExpr[] array = new AnyNewExpr[64];
+			Map<AnyNewExpr,Integer> kept = new HashMap<AnyNewExpr,Integer>();
+			count = 0;
+			for (AnyNewExpr site : retained) {
+				Integer number = numbers.get(site);
+				if (number != null) {
+					while (number >= array.length) {
+						array = Arrays.copyOf(array, 2 * array.length);
+					}
+					array[number] = site;
+					kept.put(site, number);
+					count = Math.max(count, number + 1);
+				}
+			}
+			numbers.clear();
+			sites = array;
+			numbers.putAll(kept);
+		}
+	}
+
+	/**
+	 * Returns the set containing only the given allocation site.
+	 *
+	 * @param site an allocation site
+	 * @return a singleton set
+	 */
+	public static PointsToSet of(AnyNewExpr site) {
+		Builder builder = new Builder();
+		builder.add(site);
+		return builder.build();
+	}
+
+	/**
+	 * Returns a set containing the allocation sites in the given collection.
+	 *
+	 * @param sites a collection of allocation sites
+	 * @return a set with the same elements as <tt>sites</tt>
+	 */
+	public static PointsToSet copyOf(Collection<AnyNewExpr> sites) {
+		if (sites instanceof PointsToSet) {
+			return (PointsToSet) sites;
+		}
+		Builder builder = new Builder();
+		for (AnyNewExpr site : sites) {
+			builder.add(site);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns the union of this set and another set.
+	 *
+	 * <p>If either set contains the other, then that set is returned.</p>
+	 *
+	 * @param other a set of allocation sites
+	 * @return the union of the two sets
+	 */
+	public PointsToSet union(PointsToSet other) {
+		if (this.containsAll(other)) {
+			return this;
+		} else if (other.containsAll(this)) {
+			return other;
+		}
+		Builder builder = new Builder();
+		builder.addAll(this);
+		builder.addAll(other);
+		return builder.build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof AnyNewExpr)) {
+			return false;
+		}
+		Integer number = numbers.get(o);
+		if (number == null) {
+			return false;
+		}
+		int word = (number >>> 6) - offset;
+		return word >= 0 && word < words.length && (words[word] & (1L << number)) != 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (!(c instanceof PointsToSet)) {
+			return super.containsAll(c);
+		}
+		PointsToSet other = (PointsToSet) c;
+		if (other.size > this.size) {
+			return false;
+		}
+		if (other.words.length == 0) {
+			return true;
+		}
+		if (other.offset < this.offset || other.offset + other.words.length > this.offset + this.words.length) {
+			return false;
+		}
+		for (int i = 0; i < other.words.length; i++) {
+			long word = this.words[other.offset - this.offset + i];
+			if ((other.words[i] & ~word) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<AnyNewExpr> iterator() {
+		return new Iterator<AnyNewExpr>() {
+			private int next = nextSetBit(0);
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public AnyNewExpr next() {
+				if (next < 0) {
+					throw new NoSuchElementException();
+				}
+				AnyNewExpr site = site(next);
+				next = nextSetBit(next + 1);
+				return site;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	// Returns the least number in this set which is at least 'from', or -1 if there is none
+	private int nextSetBit(int from) {
+		int word = Math.max((from >>> 6) - offset, 0);
+		if (word >= words.length) {
+			return -1;
+		}
+		long bits = words[word];
+		if ((word + offset) == (from >>> 6)) {
+			bits &= -1L << from;
+		}
+		while (true) {
+			if (bits != 0) {
+				return ((word + offset) << 6) + Long.numberOfTrailingZeros(bits);
+			}
+			if (++word == words.length) {
+				return -1;
+			}
+			bits = words[word];
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o instanceof PointsToSet) {
+			PointsToSet other = (PointsToSet) o;
+			return this.size == other.size && this.offset == other.offset && Arrays.equals(this.words, other.words);
+		}
+		return super.equals(o);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		// The hash code of a set is the sum of the hash codes of its elements
+		if (hash == 0 && size > 0) {
+			hash = super.hashCode();
+		}
+		return hash;
+	}
+
+	/**
+	 * A mutable bitset from which sets of allocation sites are built.
+	 */
+	public static final class Builder {
+
+		private long[] words = new long[0];
+
+		private int size;
+
+		/**
+		 * Adds an allocation site.
+		 *
+		 * @param site an allocation site
+		 * @return <tt>true</tt> if the site was not already added
+		 */
+		public boolean add(AnyNewExpr site) {
+			int number = number(site);
+			int word = number >>> 6;
+			ensureCapacity(word + 1);
+			long bit = 1L << number;
+			if ((words[word] & bit) != 0) {
+				return false;
+			}
+			words[word] |= bit;
+			size++;
+			return true;
+		}
+
+		/**
+		 * Adds all allocation sites of a set.
+		 *
+		 * @param set a set of allocation sites
+		 */
+		public void addAll(PointsToSet set) {
+			if (set.words.length == 0) {
+				return;
+			}
+			ensureCapacity(set.offset + set.words.length);
+			for (int i = 0; i < set.words.length; i++) {
+				long word = words[set.offset + i];
+				long union = word | set.words[i];
+				size += Long.bitCount(union) - Long.bitCount(word);
+				words[set.offset + i] = union;
+			}
+		}
+
+		/**
+		 * Returns the number of allocation sites added.
+		 *
+		 * @return the number of allocation sites added
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Returns an immutable set of the allocation sites added.
+		 *
+		 * @return a new set of allocation sites, or {@link PointsToSet#EMPTY}
+		 */
+		public PointsToSet build() {
+			if (size == 0) {
+				return EMPTY;
+			}
+			int first = 0;
+			while (words[first] == 0) {
+				first++;
+			}
+			int last = words.length - 1;
+			while (words[last] == 0) {
+				last--;
+			}
+			return new PointsToSet(first, Arrays.copyOfRange(words, first, last + 1), size);
+		}
+
+		private void ensureCapacity(int length) {
+			if (words.length < length) {
+				words = Arrays.copyOf(words, Math.max(length, 2 * words.length));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,367 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.callgraph;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import soot.Kind;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.callgraph.ContextSensitiveCallGraph;
+import soot.jimple.toolkits.callgraph.ContextSensitiveEdge;
+import soot.jimple.toolkits.callgraph.Edge;
+import vasco.CallSite;
+import vasco.Context;
+import vasco.ContextTransitionTable;
+
+/**
+ * A Soot {@link ContextSensitiveCallGraph} whose contexts are the value
+ * contexts of a {@link PointsToAnalysis}.
+ *
+ * <p>The edges are stored column-wise, i.e. as parallel arrays of their
+ * source contexts, call statements, target methods, target contexts and
+ * kinds, in the order of the transitions of the analysis. The edges out of
+ * and into each context are indexed by arrays of edge positions grouped by
+ * context ID, and the first edge out of each call-site is indexed by the
+ * ID of the call-site (less the smallest such ID), so that it is found in
+ * constant time. As call-site IDs are global to all analyses, this index
+ * may have unused entries for call-sites without edges. Iterators are lazy,
+ * and create an edge object only when it is returned.</p>
+ *
+ * @author Rohan Padhye
+ */
+public class ValueContextCallGraph implements ContextSensitiveCallGraph {
+
+	/** The methods of the program which have been analysed. */
+	private final Set<SootMethod> methods;
+
+	/** The number of edges. */
+	private final int size;
+
+	/** The source context of each edge. */
+	private final Context<SootMethod,Unit,PointsToGraph>[] sourceContexts;
+
+	/** The call statement of each edge. */
+	private final Stmt[] stmts;
+
+	/** The target method of each edge. */
+	private final SootMethod[] targetMethods;
+
+	/** The target context of each edge. */
+	private final Context<SootMethod,Unit,PointsToGraph>[] targetContexts;
+
+	/** The kind of each edge. */
+	private final Kind[] kinds;
+
+	/** The smallest ID of a context with edges. */
+	private final int minId;
+
+	/** Positions of edges grouped by source context, in the order of edges. */
+	private final int[] outEdges;
+
+	/** The start of the group of each context (by ID, less {@link #minId}) in {@link #outEdges}. */
+	private final int[] outStarts;
+
+	/** Positions of edges grouped by target context, in the order of edges. */
+	private final int[] inEdges;
+
+	/** The start of the group of each context (by ID, less {@link #minId}) in {@link #inEdges}. */
+	private final int[] inStarts;
+
+	/** The smallest ID of a call-site with edges. */
+	private final int minCallSiteId;
+
+	/**
+	 * The position in {@link #outEdges} of the first edge of each call-site
+	 * (by ID, less {@link #minCallSiteId}), or <tt>-1</tt> if it has no edges.
+	 */
+	private final int[] callSiteStarts;
+
+	/**
+	 * Constructs a call graph from the transitions between value contexts.
+	 *
+	 * @param ctt the context transition table of an analysis
+	 * @param methods the methods which have been analysed
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public ValueContextCallGraph(ContextTransitionTable<SootMethod,Unit,PointsToGraph> ctt, Set<SootMethod> methods) {
+		this.methods = methods;
+
+		// Count the edges, and the range of context IDs
+		int count = 0;
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (Map.Entry<CallSite<SootMethod,Unit,PointsToGraph>,Map<SootMethod,Context<SootMethod,Unit,PointsToGraph>>> e : ctt.getTransitions().entrySet()) {
+			for (Context<SootMethod,Unit,PointsToGraph> targetContext : e.getValue().values()) {
+				int sourceId = e.getKey().getCallingContext().getId();
+				min = Math.min(min, Math.min(sourceId, targetContext.getId()));
+				max = Math.max(max, Math.max(sourceId, targetContext.getId()));
+				count++;
+			}
+		}
+		this.size = count;
+		this.minId = count == 0 ? 0 : min;
+		int range = count == 0 ? 0 : max - min + 1;
+
+		// Fill the columns
+		this.sourceContexts = new Context[size];
+		this.stmts = new Stmt[size];
+		this.targetMethods = new SootMethod[size];
+		this.targetContexts = new Context[size];
+		this.kinds = new Kind[size];
+		int[] edgeCallSites = new int[size];
+		int edge = 0;
+		for (Map.Entry<CallSite<SootMethod,Unit,PointsToGraph>,Map<SootMethod,Context<SootMethod,Unit,PointsToGraph>>> e : ctt.getTransitions().entrySet()) {
+			CallSite<SootMethod,Unit,PointsToGraph> cs = e.getKey();
+			Stmt stmt = (Stmt) cs.getCallNode();
+			for (Map.Entry<SootMethod,Context<SootMethod,Unit,PointsToGraph>> target : e.getValue().entrySet()) {
+				SootMethod targetMethod = target.getKey();
+				sourceContexts[edge] = cs.getCallingContext();
+				stmts[edge] = stmt;
+				targetMethods[edge] = targetMethod;
+				targetContexts[edge] = target.getValue();
+				edgeCallSites[edge] = cs.getId();
+				if ("<clinit>".equals(targetMethod.getName())) {
+					kinds[edge] = Kind.CLINIT;
+				} else if (stmt.containsInvokeExpr()) {
+					kinds[edge] = Edge.ieToKind(stmt.getInvokeExpr());
+				} else {
+					kinds[edge] = Kind.INVALID;
+				}
+				edge++;
+			}
+		}
+
+		// Group edges by source and target contexts
+		this.outStarts = new int[range + 1];
+		this.outEdges = group(sourceContexts, outStarts);
+		this.inStarts = new int[range + 1];
+		this.inEdges = group(targetContexts, inStarts);
+
+		// Index the first edge of each call-site, whose edges are adjacent
+		int minSite = Integer.MAX_VALUE;
+		int maxSite = Integer.MIN_VALUE;
+		for (int i = 0; i < size; i++) {
+			minSite = Math.min(minSite, edgeCallSites[i]);
+			maxSite = Math.max(maxSite, edgeCallSites[i]);
+		}
+		this.minCallSiteId = size == 0 ? 0 : minSite;
+		this.callSiteStarts = new int[size == 0 ? 0 : maxSite - minSite + 1];
+		Arrays.fill(callSiteStarts, -1);
+		for (int i = 0; i < size; i++) {
+			int site = edgeCallSites[outEdges[i]] - minCallSiteId;
+			if (callSiteStarts[site] < 0) {
+				callSiteStarts[site] = i;
+			}
+		}
+	}
+
+	/**
+	 * Groups the positions of edges by the IDs of the given contexts, keeping
+	 * the order of edges within a group, and fills in the start of each group.
+	 */
+	private int[] group(Context<SootMethod,Unit,PointsToGraph>[] contexts, int[] starts) {
+		for (int i = 0; i < size; i++) {
+			starts[contexts[i].getId() - minId + 1]++;
+		}
+		for (int i = 1; i < starts.length; i++) {
+			starts[i] += starts[i - 1];
+		}
+		int[] next = Arrays.copyOf(starts, starts.length);
+		int[] edges = new int[size];
+		for (int i = 0; i < size; i++) {
+			edges[next[contexts[i].getId() - minId]++] = i;
+		}
+		return edges;
+	}
+
+	// Returns the index of a context in the group starts, or -1 if it has no edges
+	private int indexOf(soot.Context sContext) {
+		if (sContext instanceof Context) {
+			int index = ((Context<?,?,?>) sContext).getId() - minId;
+			if (index >= 0 && index < outStarts.length - 1) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Iterator<?> edgesOutOf(soot.Context sContext, SootMethod m, Unit stmt) {
+		int index = indexOf(sContext);
+		if (index < 0) {
+			return new EdgeIterator(null, 0, 0, null);
+		}
+		// Contexts with edges are those of the analysis, which intern their call-sites
+		CallSite<SootMethod,Unit,PointsToGraph> callSite = ((Context<SootMethod,Unit,PointsToGraph>) sContext).findCallSite(stmt);
+		if (callSite == null) {
+			return new EdgeIterator(null, 0, 0, null);
+		}
+		int site = callSite.getId() - minCallSiteId;
+		if (site < 0 || site >= callSiteStarts.length || callSiteStarts[site] < 0) {
+			return new EdgeIterator(null, 0, 0, null);
+		}
+		// The edges of the call-site are those of its context which follow, up to another statement
+		return new EdgeIterator(outEdges, callSiteStarts[site], outStarts[index + 1], stmt);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<?> edgesOutOf(soot.Context sContext, SootMethod m) {
+		int index = indexOf(sContext);
+		if (index < 0) {
+			return new EdgeIterator(null, 0, 0, null);
+		}
+		return new EdgeIterator(outEdges, outStarts[index], outStarts[index + 1], null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<?> edgesInto(soot.Context sContext, SootMethod m) {
+		int index = indexOf(sContext);
+		if (index < 0) {
+			return new EdgeIterator(null, 0, 0, null);
+		}
+		return new EdgeIterator(inEdges, inStarts[index], inStarts[index + 1], null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<?> edgeSources() {
+		return methods.iterator();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<ContextSensitiveEdge> allEdges() {
+		return new EdgeIterator(null, 0, size, null);
+	}
+
+	/**
+	 * A lazy iterator over a range of edge positions.
+	 */
+	private class EdgeIterator implements Iterator<ContextSensitiveEdge> {
+
+		/** The edges to iterate over, or <tt>null</tt> for all edges in order. */
+		private final int[] edges;
+
+		/** The position of the next edge. */
+		private int position;
+
+		/** The position after the last edge. */
+		private final int end;
+
+		/** The statement of every edge to return, or <tt>null</tt> for any statement. */
+		private final Unit stmt;
+
+		EdgeIterator(int[] edges, int start, int end, Unit stmt) {
+			this.edges = edges;
+			this.position = start;
+			this.end = end;
+			this.stmt = stmt;
+		}
+
+		private int edge(int position) {
+			return edges == null ? position : edges[position];
+		}
+
+		@Override
+		public boolean hasNext() {
+			return position < end && (stmt == null || stmts[edge(position)] == stmt);
+		}
+
+		@Override
+		public ContextSensitiveEdge next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return new EdgeView(edge(position++));
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * A view of the columns of an edge.
+	 */
+	private class EdgeView implements ContextSensitiveEdge {
+
+		/** The position of the edge. */
+		private final int edge;
+
+		EdgeView(int edge) {
+			this.edge = edge;
+		}
+
+		@Override
+		public Kind kind() {
+			return kinds[edge];
+		}
+
+		@Override
+		public SootMethod src() {
+			return sourceContexts[edge].getMethod();
+		}
+
+		@Override
+		public soot.Context srcCtxt() {
+			return sourceContexts[edge];
+		}
+
+		@Override
+		public Stmt srcStmt() {
+			return stmts[edge];
+		}
+
+		@Override
+		public Unit srcUnit() {
+			return stmts[edge];
+		}
+
+		@Override
+		public SootMethod tgt() {
+			return targetMethods[edge];
+		}
+
+		@Override
+		public soot.Context tgtCtxt() {
+			return targetContexts[edge];
+		}
+	}
+
+}
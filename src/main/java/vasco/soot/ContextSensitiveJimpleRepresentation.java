@@ -32,7 +32,7 @@ import soot.Unit;
 import soot.jimple.toolkits.callgraph.ContextSensitiveEdge;
 import soot.toolkits.graph.DirectedGraph;
 import soot.toolkits.graph.ExceptionalUnitGraph;
-import vasco.ProgramRepresentation;
+import vasco.IncrementalProgramRepresentation;
 
 /**
  * A program representation for Soot using the Jimple IR with a context-sensitive
@@ -46,7 +46,7 @@ import vasco.ProgramRepresentation;
  * @author Rohan Padhye
  *
  */
-public class ContextSensitiveJimpleRepresentation implements ProgramRepresentation<MethodOrMethodContext, Unit> {
+public class ContextSensitiveJimpleRepresentation implements IncrementalProgramRepresentation<MethodOrMethodContext, Unit> {
 	
 	// Cache for control flow graphs
 	private Map<SootMethod, DirectedGraph<Unit>> cfgCache;
@@ -76,6 +76,15 @@ public class ContextSensitiveJimpleRepresentation implements ProgramRepresentati
 		return cfgCache.get(momc.method());
 	}
 
+	/**
+	 * Discards the cached control flow graph of a method whose body has
+	 * changed, which is shared by all contexts of the method.
+	 */
+	@Override
+	public void invalidateControlFlowGraph(MethodOrMethodContext momc) {
+		cfgCache.remove(momc.method());
+	}
+
 	/**
 	 * Returns <code>true</code> iff the Jimple statement contains an
 	 * invoke expression.
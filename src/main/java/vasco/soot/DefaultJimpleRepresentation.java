@@ -30,7 +30,7 @@ import soot.Unit;
 import soot.jimple.toolkits.callgraph.Edge;
 import soot.toolkits.graph.DirectedGraph;
 import soot.toolkits.graph.ExceptionalUnitGraph;
-import vasco.ProgramRepresentation;
+import vasco.IncrementalProgramRepresentation;
 
 /**
  * A default program representation for Soot using the Jimple IR. This 
@@ -44,7 +44,7 @@ import vasco.ProgramRepresentation;
  * @author Rohan Padhye
  *
  */
-public class DefaultJimpleRepresentation implements ProgramRepresentation<SootMethod, Unit> {
+public class DefaultJimpleRepresentation implements IncrementalProgramRepresentation<SootMethod, Unit> {
 	
 	// Cache for control flow graphs
 	private Map<SootMethod, DirectedGraph<Unit>> cfgCache;
@@ -74,6 +74,18 @@ public class DefaultJimpleRepresentation implements ProgramRepresentation<SootMe
 		return cfgCache.get(method);
 	}
 
+	/**
+	 * Discards the cached control flow graph of a method whose body has
+	 * changed, so that it is re-built on the next request.
+	 *
+	 * @param method the method whose body has changed
+	 * @see vasco.InterProceduralAnalysis#doIncrementalAnalysis(java.util.Collection)
+	 */
+	@Override
+	public void invalidateControlFlowGraph(SootMethod method) {
+		cfgCache.remove(method);
+	}
+
 	/**
 	 * Returns <code>true</code> iff the Jimple statement contains an
 	 * invoke expression.
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package vasco.soot;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Local;
+import soot.SootMethod;
+import soot.ValueBox;
+
+/**
+ * A projection of data flow values which map Jimple locals to abstract
+ * values onto the locals which a method actually reads.
+ * 
+ * <p>Analyses over such maps can use it to implement
+ * {@link vasco.InterProceduralAnalysis#projectEntryValue(Object, Object) projectEntryValue},
+ * so that calls differing only in locals which the called method never
+ * reads share a value context. The locals read by each method are computed
+ * once, on demand, and may be requested concurrently.</p>
+ * 
+ * @author Rohan Padhye
+ *
+ */
+public class LocalProjection {
+
+	// The locals read by each method, computed on demand.
+	private final Map<SootMethod, Set<Local>> readLocals = new HashMap<SootMethod, Set<Local>>();
+
+	/**
+	 * Returns the locals which are read by a method.
+	 * 
+	 * @param method a method with an active body
+	 * @return the locals used by the statements of the method
+	 */
+	public Set<Local> getReadLocals(SootMethod method) {
+		synchronized (readLocals) {
+			Set<Local> locals = readLocals.get(method);
+			if (locals == null) {
+				locals = new HashSet<Local>();
+				for (ValueBox box : method.getActiveBody().getUseBoxes()) {
+					if (box.getValue() instanceof Local) {
+						locals.add((Local) box.getValue());
+					}
+				}
+				readLocals.put(method, locals);
+			}
+			return locals;
+		}
+	}
+
+	/**
+	 * Removes the entries of locals which are never read by a method.
+	 * 
+	 * @param method a method with an active body
+	 * @param value  a mapping of locals to abstract values
+	 * @return a new mapping which contains only the entries of <tt>value</tt>
+	 *         whose locals are read by <tt>method</tt>
+	 */
+	public <V> Map<Local, V> project(SootMethod method, Map<Local, V> value) {
+		Map<Local, V> projectedValue = new HashMap<Local, V>();
+		Set<Local> locals = getReadLocals(method);
+		for (Map.Entry<Local, V> entry : value.entrySet()) {
+			if (locals.contains(entry.getKey())) {
+				projectedValue.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return projectedValue;
+	}
+
+}
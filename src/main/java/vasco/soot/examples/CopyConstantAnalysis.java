@@ -36,6 +36,7 @@ import vasco.Context;
 import vasco.ForwardInterProceduralAnalysis;
 import vasco.ProgramRepresentation;
 import vasco.soot.DefaultJimpleRepresentation;
+import vasco.soot.LocalProjection;
 
 /**
  * An inter-procedural copy constant propagation analysis.
@@ -55,6 +56,9 @@ public class CopyConstantAnalysis extends ForwardInterProceduralAnalysis<SootMet
 	// An artificial local representing returned value of a procedure (used because a method can have multiple return statements).
 	private static final Local RETURN_LOCAL = new JimpleLocal("@return", null);
 	
+	// The projection of values onto the locals read by each method.
+	private final LocalProjection projection = new LocalProjection();
+	
 	// Simply constructs a forward flow inter-procedural analysis with the VERBOSE option set.
 	public CopyConstantAnalysis() {
 		super();
@@ -152,6 +156,15 @@ public class CopyConstantAnalysis extends ForwardInterProceduralAnalysis<SootMet
 		
 	}
 	
+	/**
+	 * Removes parameters which are never read by the called method, so that
+	 * calls differing only in such arguments share a value context.
+	 */
+	@Override
+	protected Map<Local, Constant> projectEntryValue(SootMethod method, Map<Local, Constant> entryValue) {
+		return projection.project(method, entryValue);
+	}
+	
 	@Override
 	public Map<Local, Constant> boundaryValue(SootMethod method) {
 		return topValue();
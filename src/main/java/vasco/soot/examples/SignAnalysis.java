@@ -48,6 +48,7 @@ import vasco.Context;
 import vasco.ForwardInterProceduralAnalysis;
 import vasco.ProgramRepresentation;
 import vasco.soot.DefaultJimpleRepresentation;
+import vasco.soot.LocalProjection;
 
 /**
  * An inter-procedural simplified sign analysis.
@@ -71,6 +72,9 @@ public class SignAnalysis extends ForwardInterProceduralAnalysis<SootMethod, Uni
 	// An artificial local representing returned value of a procedure (used because a method can have multiple return statements).
 	private static final Local RETURN_LOCAL = new JimpleLocal("@return", IntType.v());
 	
+	// The projection of values onto the locals read by each method.
+	private final LocalProjection projection = new LocalProjection();
+	
 	// Simply constructs a forward flow inter-procedural analysis with the VERBOSE option set.
 	public SignAnalysis() {
 		super();
@@ -218,6 +222,15 @@ public class SignAnalysis extends ForwardInterProceduralAnalysis<SootMethod, Uni
 		
 	}
 	
+	/**
+	 * Removes parameters which are never read by the called method, so that
+	 * calls differing only in such arguments share a value context.
+	 */
+	@Override
+	protected Map<Local, SignAnalysis.Sign> projectEntryValue(SootMethod method, Map<Local, SignAnalysis.Sign> entryValue) {
+		return projection.project(method, entryValue);
+	}
+	
 	@Override
 	public Map<Local, SignAnalysis.Sign> boundaryValue(SootMethod method) {
 		return topValue();
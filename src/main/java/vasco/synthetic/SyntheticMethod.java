@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.synthetic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import soot.toolkits.graph.DirectedGraph;
+
+/**
+ * A method of a {@link SyntheticProgram}, which is also its own control-flow
+ * graph.
+ *
+ * <p>
+ * The first node created in a method is the only head of its control-flow
+ * graph, and the tails are the nodes without successors.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+public class SyntheticMethod implements DirectedGraph<SyntheticNode> {
+
+	private final SyntheticProgram program;
+
+	private final String name;
+
+	private final List<SyntheticNode> nodes;
+
+	// The first node, as a list
+	private List<SyntheticNode> heads;
+
+	// The nodes without successors, in order of creation
+	private final List<SyntheticNode> tails;
+
+	SyntheticMethod(SyntheticProgram program, String name) {
+		this.program = program;
+		this.name = name;
+		this.nodes = new ArrayList<SyntheticNode>();
+		this.heads = Collections.emptyList();
+		this.tails = new ArrayList<SyntheticNode>(1);
+	}
+
+	/**
+	 * Creates a new node in this method.
+	 *
+	 * @return a new ordinary node
+	 */
+	public SyntheticNode newNode() {
+		SyntheticNode node = new SyntheticNode(this, program.nextNodeId());
+		if (nodes.isEmpty()) {
+			heads = Collections.singletonList(node);
+		}
+		nodes.add(node);
+		tails.add(node);
+		return node;
+	}
+
+	/**
+	 * Adds a control-flow edge between two nodes of this method.
+	 *
+	 * @param from the source of the edge
+	 * @param to   the target of the edge
+	 */
+	public void addEdge(SyntheticNode from, SyntheticNode to) {
+		if (from.getMethod() != this || to.getMethod() != this) {
+			throw new IllegalArgumentException("Edge between nodes of different methods: " + from + " -> " + to);
+		}
+		if (from.succs.isEmpty()) {
+			tails.remove(from);
+		}
+		from.succs.add(to);
+		to.preds.add(from);
+	}
+
+	/**
+	 * Returns the name of this method.
+	 *
+	 * @return the name of this method
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the nodes of this method, in order of creation.
+	 *
+	 * @return the nodes of this method
+	 */
+	public List<SyntheticNode> getNodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+
+	@Override
+	public List<SyntheticNode> getHeads() {
+		return heads;
+	}
+
+	/**
+	 * Returns the nodes without successors, which must not be modified.
+	 */
+	@Override
+	public List<SyntheticNode> getTails() {
+		return tails;
+	}
+
+	/**
+	 * Returns the predecessors of a node, which must not be modified.
+	 */
+	@Override
+	public List<SyntheticNode> getPredsOf(SyntheticNode node) {
+		return node.preds;
+	}
+
+	/**
+	 * Returns the successors of a node, which must not be modified.
+	 */
+	@Override
+	public List<SyntheticNode> getSuccsOf(SyntheticNode node) {
+		return node.succs;
+	}
+
+	@Override
+	public int size() {
+		return nodes.size();
+	}
+
+	@Override
+	public Iterator<SyntheticNode> iterator() {
+		return getNodes().iterator();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.synthetic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node in the control-flow graph of a {@link SyntheticMethod}.
+ *
+ * <p>
+ * A node is a call if it has a list of target methods, which is what
+ * {@link SyntheticProgram#resolveTargets(SyntheticMethod, SyntheticNode) resolveTargets}
+ * returns for it.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+public class SyntheticNode {
+
+	private final SyntheticMethod method;
+
+	private final int id;
+
+	private List<SyntheticMethod> targets;
+
+	final List<SyntheticNode> preds = new ArrayList<SyntheticNode>(2);
+
+	final List<SyntheticNode> succs = new ArrayList<SyntheticNode>(2);
+
+	SyntheticNode(SyntheticMethod method, int id) {
+		this.method = method;
+		this.id = id;
+	}
+
+	/**
+	 * Returns the method containing this node.
+	 *
+	 * @return the method containing this node
+	 */
+	public SyntheticMethod getMethod() {
+		return method;
+	}
+
+	/**
+	 * Returns the identifier of this node, which is unique in its program.
+	 *
+	 * @return the identifier of this node
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns whether this node is a call.
+	 *
+	 * @return whether this node is a call
+	 */
+	public boolean isCall() {
+		return targets != null;
+	}
+
+	/**
+	 * Returns the target methods of this call node.
+	 *
+	 * @return the target methods of this node, or <tt>null</tt> if it is not a call
+	 */
+	public List<SyntheticMethod> getTargets() {
+		return targets;
+	}
+
+	/**
+	 * Makes this node a call to the given methods, or an ordinary node if
+	 * the list of targets is <tt>null</tt>.
+	 *
+	 * @param targets the target methods of this node, or <tt>null</tt>
+	 */
+	public void setTargets(List<SyntheticMethod> targets) {
+		this.targets = targets;
+	}
+
+	@Override
+	public String toString() {
+		return method + ":" + id;
+	}
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.synthetic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import soot.toolkits.graph.DirectedGraph;
+import vasco.ProgramRepresentation;
+
+/**
+ * A program representation of a synthetic program, which can be analysed
+ * without loading any classes with Soot.
+ *
+ * <p>
+ * Programs are built by creating methods with {@link #newMethod(String)},
+ * and then nodes, edges and call targets within each method. Larger programs
+ * of random shape are created by the <tt>SyntheticProgramGenerator</tt> of
+ * the test sources, which is shared with the benchmarks.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+public class SyntheticProgram implements ProgramRepresentation<SyntheticMethod, SyntheticNode> {
+
+	private final List<SyntheticMethod> methods;
+
+	private final List<SyntheticMethod> entryPoints;
+
+	private int nodeCount;
+
+	/** Creates an empty program. */
+	public SyntheticProgram() {
+		this.methods = new ArrayList<SyntheticMethod>();
+		this.entryPoints = new ArrayList<SyntheticMethod>();
+	}
+
+	/**
+	 * Creates a new method without any nodes.
+	 *
+	 * @param name the name of the method
+	 * @return a new method
+	 */
+	public SyntheticMethod newMethod(String name) {
+		SyntheticMethod method = new SyntheticMethod(this, name);
+		methods.add(method);
+		return method;
+	}
+
+	/**
+	 * Adds an entry point of the program.
+	 *
+	 * @param method a method of this program
+	 */
+	public void addEntryPoint(SyntheticMethod method) {
+		entryPoints.add(method);
+	}
+
+	/**
+	 * Returns the methods of the program, in order of creation.
+	 *
+	 * @return the methods of the program
+	 */
+	public List<SyntheticMethod> getMethods() {
+		return Collections.unmodifiableList(methods);
+	}
+
+	/**
+	 * Returns the total number of nodes in the program.
+	 *
+	 * @return the total number of nodes in the program
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	// Returns an identifier for a new node
+	int nextNodeId() {
+		return nodeCount++;
+	}
+
+	@Override
+	public List<SyntheticMethod> getEntryPoints() {
+		return Collections.unmodifiableList(entryPoints);
+	}
+
+	/**
+	 * Returns the method itself, which is its control-flow graph.
+	 */
+	@Override
+	public DirectedGraph<SyntheticNode> getControlFlowGraph(SyntheticMethod method) {
+		return method;
+	}
+
+	@Override
+	public boolean isCall(SyntheticNode node) {
+		return node.isCall();
+	}
+
+	@Override
+	public boolean isPhantomMethod(SyntheticMethod method) {
+		return false;
+	}
+
+	@Override
+	public List<SyntheticMethod> resolveTargets(SyntheticMethod callerMethod, SyntheticNode callNode) {
+		return callNode.getTargets();
+	}
+
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javafx.util.Pair;
+
+import org.junit.Test;
+
+import vasco.InterProceduralAnalysis.Direction;
+import vasco.synthetic.CountdownLattice;
+import vasco.synthetic.SyntheticMethod;
+import vasco.synthetic.SyntheticNode;
+import vasco.synthetic.SyntheticProgram;
+import vasco.synthetic.SyntheticProgramGenerator;
+
+/**
+ * Tests of {@link BidirectionalAnalysis}.
+ *
+ * @author Rohan Padhye
+ */
+public class BidirectionalAnalysisTest {
+
+	/**
+	 * Checks that the solution satisfies the data flow equations of every
+	 * context reachable from the entry point, in both directions, whichever
+	 * direction is processed first.
+	 */
+	@Test
+	public void testSolutionIsFixedPoint() {
+		SyntheticProgramGenerator generator = new SyntheticProgramGenerator();
+		generator.setMethodCount(30);
+		generator.setFanOut(2);
+		generator.setSccSize(3);
+		generator.setCallDensity(0.3);
+		for (long seed = 1; seed <= 10; seed++) {
+			generator.setSeed(seed);
+			SyntheticProgram program = generator.generate();
+			Map<String,String> results = null;
+			for (Direction firstDirection : new Direction[] { Direction.FORWARD, Direction.BACKWARD }) {
+				CoupledCountdownAnalysis analysis = new CoupledCountdownAnalysis(program, firstDirection);
+				analysis.doAnalysis();
+				Map<String,String> solution = checkFixedPoint(analysis);
+				if (results == null) {
+					results = solution;
+				} else {
+					assertEquals("seed " + seed, results, solution);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that the callers of a context are only re-analysed when its
+	 * results are first computed or change.
+	 */
+	@Test
+	public void testUnchangedResultsDoNotRequeueCallers() {
+		// main calls leaf, which calls itself or skips the call
+		SyntheticProgram program = new SyntheticProgram();
+		SyntheticMethod main = program.newMethod("main");
+		SyntheticMethod leaf = program.newMethod("leaf");
+		SyntheticNode[] nodes = chain(main, 3);
+		nodes[1].setTargets(Collections.singletonList(leaf));
+		SyntheticNode[] body = chain(leaf, 4);
+		body[1].setTargets(Collections.singletonList(leaf));
+		leaf.addEdge(body[0], body[2]);
+		program.addEntryPoint(main);
+
+		// The forward result of leaf is constant, although its tail is re-processed
+		final int[] callVisits = new int[1];
+		CoupledCountdownAnalysis analysis = new CoupledCountdownAnalysis(program, Direction.FORWARD) {
+			@Override
+			public Integer forwardFlowFunction(Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context, SyntheticNode node, Integer forwardIn, Integer backwardOut) {
+				if (context.getControlFlowGraph().getTails().contains(node)) {
+					return 0;
+				}
+				return forwardIn;
+			}
+
+			@Override
+			public Integer backwardFlowFunction(Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context, SyntheticNode node, Integer backwardOut, Integer forwardIn) {
+				return backwardOut;
+			}
+		};
+		analysis.addListener(new AnalysisMetrics<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>>() {
+			@Override
+			public void nodeProcessed(Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context, SyntheticNode node, int invocations, long nanos) {
+				if (node.isCall()) {
+					callVisits[0]++;
+				}
+			}
+		});
+		analysis.doAnalysis();
+		checkFixedPoint(analysis);
+		assertEquals(1, analysis.getContexts(leaf).size());
+
+		// Once the recursive call returns, leaf re-computes its forward result
+		// without changing it, which must not process the calls once more.
+		assertEquals(6, callVisits[0]);
+	}
+
+	/**
+	 * Checks that the bidirectional solver refuses a context budget, which it
+	 * cannot honour.
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	public void testContextBudgetIsRejected() {
+		SyntheticProgram program = new SyntheticProgram();
+		SyntheticMethod main = program.newMethod("main");
+		chain(main, 2);
+		program.addEntryPoint(main);
+		CoupledCountdownAnalysis analysis = new CoupledCountdownAnalysis(program, Direction.FORWARD);
+		analysis.contextBudget = 1;
+		analysis.doAnalysis();
+	}
+
+	// Creates a chain of nodes in a method
+	private static SyntheticNode[] chain(SyntheticMethod method, int size) {
+		SyntheticNode[] nodes = new SyntheticNode[size];
+		for (int i = 0; i < size; i++) {
+			nodes[i] = method.newNode();
+			if (i > 0) {
+				method.addEdge(nodes[i - 1], nodes[i]);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Checks the data flow equations of every context reachable from the
+	 * entry points, and returns the results of those contexts.
+	 */
+	private static Map<String,String> checkFixedPoint(CoupledCountdownAnalysis analysis) {
+		Set<Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>>> reachable = new HashSet<Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>>>();
+		for (SyntheticMethod method : analysis.programRepresentation().getEntryPoints()) {
+			Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> entryContext = analysis.getContext(method, analysis.boundaryValue(method));
+			assertNotNull(entryContext);
+			reachable.add(entryContext);
+			reachable.addAll(analysis.getContextTransitionTable().reachableSet(entryContext, false));
+		}
+		Map<String,String> results = new HashMap<String,String>();
+		for (Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context : reachable) {
+			assertTrue(context.isAnalysed());
+			SyntheticMethod method = context.getMethod();
+			StringBuilder sb = new StringBuilder();
+			Integer forwardExit = analysis.forwardTopValue();
+			Integer backwardEntry = analysis.backwardTopValue();
+			for (SyntheticNode node : method) {
+				String at = "X" + context + " " + node;
+				Integer forwardIn = context.getValueBefore(node).getKey();
+				Integer backwardIn = context.getValueBefore(node).getValue();
+				Integer forwardOut = context.getValueAfter(node).getKey();
+				Integer backwardOut = context.getValueAfter(node).getValue();
+
+				// Meets over the control-flow graph, or boundary values
+				Integer expectedForwardIn = context.getEntryValue().getKey();
+				if (!method.getPredsOf(node).isEmpty()) {
+					expectedForwardIn = analysis.forwardTopValue();
+					for (SyntheticNode pred : method.getPredsOf(node)) {
+						expectedForwardIn = analysis.forwardMeet(expectedForwardIn, context.getValueAfter(pred).getKey());
+					}
+				}
+				Integer expectedBackwardOut = context.getExitValue().getValue();
+				if (!method.getSuccsOf(node).isEmpty()) {
+					expectedBackwardOut = analysis.backwardTopValue();
+					for (SyntheticNode succ : method.getSuccsOf(node)) {
+						expectedBackwardOut = analysis.backwardMeet(expectedBackwardOut, context.getValueBefore(succ).getValue());
+					}
+				}
+				assertEquals("forward IN of " + at, expectedForwardIn, forwardIn);
+				assertEquals("backward OUT of " + at, expectedBackwardOut, backwardOut);
+
+				// Flow functions
+				Integer expectedForwardOut;
+				Integer expectedBackwardIn;
+				if (node.isCall()) {
+					expectedForwardOut = analysis.forwardCallLocalFlowFunction(context, node, forwardIn, backwardOut);
+					expectedBackwardIn = analysis.backwardCallLocalFlowFunction(context, node, backwardOut, forwardIn);
+					Map<SyntheticMethod,Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>>> targets = analysis.getTargets(context.getCallSite(node));
+					assertNotNull("targets of " + at, targets);
+					for (SyntheticMethod target : node.getTargets()) {
+						Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> targetContext = targets.get(target);
+						assertEquals("context of " + target + " at " + at,
+								analysis.callEntryFlowFunction(context, target, node, forwardIn, backwardOut),
+								analysis.contextKey(targetContext));
+						Pair<Integer,Integer> returned = analysis.callExitFlowFunction(context, target, node,
+								targetContext.getExitValue().getKey(), targetContext.getEntryValue().getValue());
+						expectedForwardOut = analysis.forwardMeet(expectedForwardOut, returned.getKey());
+						expectedBackwardIn = analysis.backwardMeet(expectedBackwardIn, returned.getValue());
+					}
+				} else {
+					expectedForwardOut = analysis.forwardFlowFunction(context, node, forwardIn, backwardOut);
+					expectedBackwardIn = analysis.backwardFlowFunction(context, node, backwardOut, forwardIn);
+				}
+				assertEquals("forward OUT of " + at, expectedForwardOut, forwardOut);
+				assertEquals("backward IN of " + at, expectedBackwardIn, backwardIn);
+
+				if (method.getTails().contains(node)) {
+					forwardExit = analysis.forwardMeet(forwardExit, forwardOut);
+				}
+				if (method.getHeads().contains(node)) {
+					backwardEntry = analysis.backwardMeet(backwardEntry, backwardIn);
+				}
+				sb.append(' ').append(node.getId()).append(':').append(context.getValueBefore(node)).append('/').append(context.getValueAfter(node));
+			}
+			assertEquals("forward EXIT of X" + context, forwardExit, context.getExitValue().getKey());
+			assertEquals("backward ENTRY of X" + context, backwardEntry, context.getEntryValue().getValue());
+			results.put(method + " " + analysis.contextKey(context), sb.toString());
+		}
+		return results;
+	}
+
+	/**
+	 * A bidirectional analysis over a pair of {@link CountdownLattice}s, in
+	 * which each direction is bounded by the value of the other direction.
+	 */
+	static class CoupledCountdownAnalysis extends BidirectionalAnalysis<SyntheticMethod,SyntheticNode,Integer,Integer> {
+
+		private final SyntheticProgram program;
+
+		private final CountdownLattice lattice = new CountdownLattice(12);
+
+		CoupledCountdownAnalysis(SyntheticProgram program, Direction firstDirection) {
+			super(firstDirection);
+			this.program = program;
+		}
+
+		@Override
+		public Integer forwardFlowFunction(Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context, SyntheticNode node, Integer forwardIn, Integer backwardOut) {
+			return lattice.meet(lattice.decrement(forwardIn), backwardOut + 2);
+		}
+
+		@Override
+		public Integer backwardFlowFunction(Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context, SyntheticNode node, Integer backwardOut, Integer forwardIn) {
+			return lattice.meet(lattice.decrement(backwardOut), forwardIn + 1);
+		}
+
+		@Override
+		public Pair<Integer,Integer> callEntryFlowFunction(Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context, SyntheticMethod targetMethod, SyntheticNode node, Integer forwardIn, Integer backwardOut) {
+			return new Pair<Integer,Integer>(forwardIn, backwardOut);
+		}
+
+		@Override
+		public Pair<Integer,Integer> callExitFlowFunction(Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context, SyntheticMethod targetMethod, SyntheticNode node, Integer forwardExit, Integer backwardEntry) {
+			return new Pair<Integer,Integer>(forwardExit, backwardEntry);
+		}
+
+		@Override
+		public Integer forwardCallLocalFlowFunction(Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context, SyntheticNode node, Integer forwardIn, Integer backwardOut) {
+			return lattice.meet(forwardIn, backwardOut + 3);
+		}
+
+		@Override
+		public Integer backwardCallLocalFlowFunction(Context<SyntheticMethod,SyntheticNode,Pair<Integer,Integer>> context, SyntheticNode node, Integer backwardOut, Integer forwardIn) {
+			return lattice.meet(backwardOut, forwardIn + 3);
+		}
+
+		@Override
+		public Integer forwardBoundaryValue(SyntheticMethod entryPoint) {
+			return lattice.top();
+		}
+
+		@Override
+		public Integer backwardBoundaryValue(SyntheticMethod entryPoint) {
+			return lattice.top();
+		}
+
+		@Override
+		public Integer forwardCopy(Integer src) {
+			return src;
+		}
+
+		@Override
+		public Integer backwardCopy(Integer src) {
+			return src;
+		}
+
+		@Override
+		public Integer forwardMeet(Integer op1, Integer op2) {
+			return lattice.meet(op1, op2);
+		}
+
+		@Override
+		public Integer backwardMeet(Integer op1, Integer op2) {
+			return lattice.meet(op1, op2);
+		}
+
+		@Override
+		public Integer forwardTopValue() {
+			return lattice.top();
+		}
+
+		@Override
+		public Integer backwardTopValue() {
+			return lattice.top();
+		}
+
+		@Override
+		public ProgramRepresentation<SyntheticMethod,SyntheticNode> programRepresentation() {
+			return program;
+		}
+
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import vasco.synthetic.CountdownLattice;
+import vasco.synthetic.ForwardCountdownAnalysis;
+import vasco.synthetic.SyntheticMethod;
+import vasco.synthetic.SyntheticNode;
+import vasco.synthetic.SyntheticProgram;
+import vasco.synthetic.SyntheticProgramGenerator;
+
+/**
+ * Tests of the sequential and parallel solvers of {@link ForwardInterProceduralAnalysis}.
+ *
+ * @author Rohan Padhye
+ */
+public class ForwardInterProceduralAnalysisTest {
+
+	/**
+	 * Checks that the parallel solver reaches the same fixed point as the
+	 * sequential solver on recursive programs with virtual calls.
+	 */
+	@Test
+	public void testParallelSolverReachesSameFixedPoint() {
+		SyntheticProgramGenerator generator = new SyntheticProgramGenerator();
+		generator.setMethodCount(60);
+		generator.setFanOut(3);
+		generator.setSccSize(4);
+		generator.setCallDensity(0.3);
+		for (long seed = 1; seed <= 5; seed++) {
+			generator.setSeed(seed);
+			SyntheticProgram program = generator.generate();
+			CountdownLattice lattice = new CountdownLattice(6);
+
+			ForwardCountdownAnalysis sequential = new ForwardCountdownAnalysis(program, lattice);
+			sequential.doAnalysis();
+			Map<String,String> expected = results(sequential);
+
+			for (int parallelism : new int[] { 2, 4, 8 }) {
+				ForwardCountdownAnalysis parallel = new ForwardCountdownAnalysis(program, lattice);
+				parallel.parallelism = parallelism;
+				parallel.doAnalysis();
+				assertFalse(expected.isEmpty());
+				assertEquals("seed " + seed + ", parallelism " + parallelism, expected, results(parallel));
+			}
+		}
+	}
+
+	/**
+	 * Returns the results of every context reachable from the entry points in
+	 * the final transition table, keyed by method and entry value.
+	 *
+	 * <p>Intermediate contexts, which may differ with the order of processing,
+	 * are no longer the target of any transition once a fixed point is reached.</p>
+	 */
+	static Map<String,String> results(InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> analysis) {
+		Set<Context<SyntheticMethod,SyntheticNode,Integer>> reachable = new HashSet<Context<SyntheticMethod,SyntheticNode,Integer>>();
+		for (SyntheticMethod method : analysis.programRepresentation().getEntryPoints()) {
+			Context<SyntheticMethod,SyntheticNode,Integer> entryContext = analysis.getContext(method, analysis.boundaryValue(method));
+			reachable.add(entryContext);
+			reachable.addAll(analysis.getContextTransitionTable().reachableSet(entryContext, false));
+		}
+		Map<String,String> results = new TreeMap<String,String>();
+		for (Context<SyntheticMethod,SyntheticNode,Integer> context : reachable) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(context.isAnalysed()).append(" EXIT=").append(context.getExitValue());
+			for (SyntheticNode node : context.getMethod()) {
+				sb.append(' ').append(node.getId()).append(':')
+					.append(context.getValueBefore(node)).append('/').append(context.getValueAfter(node));
+			}
+			results.put(context.getMethod() + " ENTRY=" + context.getEntryValue(), sb.toString());
+		}
+		return results;
+	}
+
+}
@@ -0,0 +1,533 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package vasco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import soot.toolkits.graph.DirectedGraph;
+import vasco.synthetic.BackwardCountdownAnalysis;
+import vasco.synthetic.CountdownLattice;
+import vasco.synthetic.ForwardCountdownAnalysis;
+import vasco.synthetic.OldForwardCountdownAnalysis;
+import vasco.synthetic.SyntheticMethod;
+import vasco.synthetic.SyntheticNode;
+import vasco.synthetic.SyntheticProgram;
+import vasco.synthetic.SyntheticProgramGenerator;
+
+/**
+ * Tests of the solver-independent parts of {@link InterProceduralAnalysis}.
+ *
+ * @author Rohan Padhye
+ */
+public class InterProceduralAnalysisTest {
+
+	/** Methods are identified by their names, and values are integers. */
+	private static final SummaryCodec<SyntheticMethod,Integer> CODEC = new SummaryCodec<SyntheticMethod,Integer>() {
+		@Override
+		public String signature(SyntheticMethod method) {
+			return method.getName();
+		}
+
+		@Override
+		public void writeValue(SyntheticMethod method, Integer value, DataOutput out) throws IOException {
+			out.writeInt(value);
+		}
+
+		@Override
+		public Integer readValue(SyntheticMethod method, DataInput in) throws IOException {
+			return in.readInt();
+		}
+	};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Checks that incremental analysis re-analyses only the contexts of a
+	 * changed method and its transitive callers, and reaches the same results
+	 * as analysing the changed program from scratch.
+	 */
+	@Test
+	public void testIncrementalAnalysisReanalysesOnlyCallers() {
+		// main calls c and then a, which calls b
+		SyntheticProgram program = new SyntheticProgram();
+		SyntheticMethod main = program.newMethod("main");
+		SyntheticMethod a = program.newMethod("a");
+		SyntheticMethod b = program.newMethod("b");
+		SyntheticMethod c = program.newMethod("c");
+		SyntheticNode callC = chain(main, 4).get(1);
+		callC.setTargets(Collections.singletonList(c));
+		main.getNodes().get(2).setTargets(Collections.singletonList(a));
+		chain(a, 3).get(1).setTargets(Collections.singletonList(b));
+		List<SyntheticNode> bNodes = chain(b, 2);
+		chain(c, 2);
+		program.addEntryPoint(main);
+
+		CountdownLattice lattice = new CountdownLattice(10);
+		final Set<SyntheticMethod> invalidated = new HashSet<SyntheticMethod>();
+		ForwardCountdownAnalysis analysis = new ForwardCountdownAnalysis(program, lattice) {
+			IncrementalProgramRepresentation<SyntheticMethod,SyntheticNode> representation =
+					new CachingRepresentation(super.programRepresentation(), invalidated);
+
+			@Override
+			public ProgramRepresentation<SyntheticMethod,SyntheticNode> programRepresentation() {
+				return representation;
+			}
+		};
+		analysis.doAnalysis();
+		Context<SyntheticMethod,SyntheticNode,Integer> mainContext = analysis.getContexts(main).get(0);
+		Context<SyntheticMethod,SyntheticNode,Integer> cContext = analysis.getContexts(c).get(0);
+
+		// Make b longer, and record the work done to re-analyse the program
+		SyntheticNode bTail = b.newNode();
+		b.addEdge(bNodes.get(1), bTail);
+		RecordingListener listener = new RecordingListener();
+		analysis.addListener(listener);
+		analysis.doIncrementalAnalysis(Collections.singletonList(b));
+
+		Set<SyntheticMethod> callers = new HashSet<SyntheticMethod>(Arrays.asList(main, a, b));
+		assertEquals(Collections.singleton(b), invalidated);
+		assertEquals(callers, listener.created);
+		assertEquals(callers, listener.processed);
+		assertNotSame(mainContext, analysis.getContexts(main).get(0));
+		assertSame(cContext, analysis.getContexts(c).get(0));
+		assertEquals(lattice.top() - 7, (int) analysis.getContexts(b).get(0).getValueAfter(bTail));
+
+		ForwardCountdownAnalysis fresh = new ForwardCountdownAnalysis(program, lattice);
+		fresh.doAnalysis();
+		assertEquals(ForwardInterProceduralAnalysisTest.results(fresh), ForwardInterProceduralAnalysisTest.results(analysis));
+	}
+
+	/**
+	 * Checks that incremental analysis only asks for the boundary values of
+	 * entry points whose contexts were invalidated, and does not look up the
+	 * contexts of the others.
+	 */
+	@Test
+	public void testIncrementalAnalysisRetainsEntryContexts() {
+		// main calls a, while other is a separate entry point
+		SyntheticProgram program = new SyntheticProgram();
+		SyntheticMethod main = program.newMethod("main");
+		SyntheticMethod a = program.newMethod("a");
+		SyntheticMethod other = program.newMethod("other");
+		chain(main, 3).get(1).setTargets(Collections.singletonList(a));
+		List<SyntheticNode> aNodes = chain(a, 2);
+		chain(other, 2);
+		program.addEntryPoint(main);
+		program.addEntryPoint(other);
+
+		final Map<SyntheticMethod,Integer> boundaryValues = new HashMap<SyntheticMethod,Integer>();
+		ForwardCountdownAnalysis analysis = new ForwardCountdownAnalysis(program, new CountdownLattice(10)) {
+			@Override
+			public Integer boundaryValue(SyntheticMethod entryPoint) {
+				Integer calls = boundaryValues.get(entryPoint);
+				boundaryValues.put(entryPoint, calls == null ? 1 : calls + 1);
+				return super.boundaryValue(entryPoint);
+			}
+		};
+		analysis.doAnalysis();
+		Context<SyntheticMethod,SyntheticNode,Integer> otherContext = analysis.getContexts(other).get(0);
+
+		// Change a, which is only reachable from main
+		a.addEdge(aNodes.get(1), a.newNode());
+		RecordingListener listener = new RecordingListener();
+		analysis.addListener(listener);
+		analysis.doIncrementalAnalysis(Collections.singletonList(a));
+
+		assertEquals(2, (int) boundaryValues.get(main));
+		assertEquals(1, (int) boundaryValues.get(other));
+		assertFalse(listener.lookedUp.contains(other));
+		assertSame(otherContext, analysis.getContexts(other).get(0));
+		assertEquals(1, analysis.getContexts(main).size());
+		assertEquals(1, analysis.getContexts(a).size());
+	}
+
+	/**
+	 * Checks that summaries are only re-used for methods which are declared
+	 * cacheable, and that a warm run re-uses them instead of creating contexts.
+	 */
+	@Test
+	public void testSummariesAreOptIn() throws IOException {
+		SyntheticProgram program = new SyntheticProgram();
+		SyntheticMethod main = program.newMethod("main");
+		SyntheticMethod a = program.newMethod("a");
+		chain(main, 3).get(1).setTargets(Collections.singletonList(a));
+		chain(a, 3);
+		program.addEntryPoint(main);
+		CountdownLattice lattice = new CountdownLattice(10);
+		File file = new File(folder.getRoot(), "summaries");
+
+		// Nothing is stored by default
+		ForwardCountdownAnalysis analysis = new ForwardCountdownAnalysis(program, lattice);
+		analysis.summaryStore = new SummaryStore<SyntheticMethod,Integer>(file, CODEC);
+		analysis.doAnalysis();
+		assertEquals(0, analysis.summaryStore.size());
+		Integer exitValue = analysis.getContexts(main).get(0).getExitValue();
+
+		// A cold run of an opted-in analysis stores all contexts
+		analysis = new CachingAnalysis(program, lattice);
+		analysis.summaryStore = new SummaryStore<SyntheticMethod,Integer>(file, CODEC);
+		analysis.doAnalysis();
+		assertEquals(2, analysis.summaryStore.size());
+
+		// A warm run creates a context only for the entry point
+		analysis = new CachingAnalysis(program, lattice);
+		analysis.summaryStore = new SummaryStore<SyntheticMethod,Integer>(file, CODEC);
+		RecordingListener listener = new RecordingListener();
+		analysis.addListener(listener);
+		analysis.doAnalysis();
+		assertEquals(Collections.singleton(main), listener.created);
+		assertEquals(exitValue, analysis.getContexts(main).get(0).getExitValue());
+
+		// Without opting in, the stored summaries are ignored
+		analysis = new ForwardCountdownAnalysis(program, lattice);
+		analysis.summaryStore = new SummaryStore<SyntheticMethod,Integer>(file, CODEC);
+		listener = new RecordingListener();
+		analysis.addListener(listener);
+		analysis.doAnalysis();
+		assertEquals(new HashSet<SyntheticMethod>(Arrays.asList(main, a)), listener.created);
+	}
+
+	/**
+	 * Checks that a subsuming context is chosen deterministically among
+	 * contexts with incomparable values, under both subsumption policies.
+	 */
+	@Test
+	public void testFindContextPrefersOldestMostPreciseContext() {
+		SyntheticProgram program = new SyntheticProgram();
+		SyntheticMethod method = program.newMethod("m");
+		chain(method, 2);
+		program.addEntryPoint(method);
+
+		// Create contexts for two incomparable values in both orders
+		for (boolean reverse : new boolean[] { false, true }) {
+			UnionAnalysis analysis = new UnionAnalysis(program);
+			Context<SyntheticMethod,SyntheticNode,Set<Integer>> first = analysis.initContext(method, set(1, reverse ? 3 : 2));
+			Context<SyntheticMethod,SyntheticNode,Set<Integer>> second = analysis.initContext(method, set(1, reverse ? 2 : 3));
+			Context<SyntheticMethod,SyntheticNode,Set<Integer>> general = analysis.initContext(method, set(1, 2, 3, 4));
+
+			analysis.subsumption = InterProceduralAnalysis.Subsumption.NONE;
+			assertNull(analysis.findContext(method, set(1)));
+			assertSame(second, analysis.findContext(method, set(1, reverse ? 2 : 3)));
+
+			analysis.subsumption = InterProceduralAnalysis.Subsumption.ALL;
+			assertSame(first, analysis.findContext(method, set(1)));
+			assertSame(second, analysis.findContext(method, set(reverse ? 2 : 3)));
+			assertSame(general, analysis.findContext(method, set(4)));
+			assertNull(analysis.findContext(method, set(5)));
+
+			// Only analysed contexts are eligible
+			analysis.subsumption = InterProceduralAnalysis.Subsumption.ANALYSED;
+			assertNull(analysis.findContext(method, set(1)));
+			general.markAnalysed();
+			assertSame(general, analysis.findContext(method, set(1)));
+			second.markAnalysed();
+			assertSame(second, analysis.findContext(method, set(1)));
+			first.markAnalysed();
+			assertSame(first, analysis.findContext(method, set(1)));
+		}
+	}
+
+	/**
+	 * Checks that a context budget bounds the number of contexts of every
+	 * method, and that the widened summary contexts yield sound results, with
+	 * the sequential and parallel forward solvers and the backward solver.
+	 */
+	@Test
+	public void testContextBudgetMergesContextsSoundly() {
+		final int budget = 2;
+		SyntheticProgramGenerator generator = new SyntheticProgramGenerator();
+		generator.setMethodCount(60);
+		generator.setFanOut(3);
+		generator.setSccSize(4);
+		generator.setCallDensity(0.3);
+		CountdownLattice lattice = new CountdownLattice(30);
+		for (long seed = 1; seed <= 5; seed++) {
+			generator.setSeed(seed);
+			SyntheticProgram program = generator.generate();
+
+			ForwardCountdownAnalysis exact = new ForwardCountdownAnalysis(program, lattice);
+			exact.doAnalysis();
+			for (int parallelism : new int[] { 0, 4 }) {
+				ForwardCountdownAnalysis budgeted = new ForwardCountdownAnalysis(program, lattice);
+				budgeted.contextBudget = budget;
+				budgeted.parallelism = parallelism;
+				budgeted.doAnalysis();
+				checkBudget(program, budgeted, exact, budget, "seed " + seed + ", parallelism " + parallelism);
+			}
+
+			BackwardCountdownAnalysis backwardExact = new BackwardCountdownAnalysis(program, lattice);
+			backwardExact.doAnalysis();
+			BackwardCountdownAnalysis backwardBudgeted = new BackwardCountdownAnalysis(program, lattice);
+			backwardBudgeted.contextBudget = budget;
+			backwardBudgeted.doAnalysis();
+			checkBudget(program, backwardBudgeted, backwardExact, budget, "seed " + seed + ", backward");
+		}
+	}
+
+	/**
+	 * Checks that the stack-based solver refuses a context budget, which it
+	 * cannot honour.
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	public void testOldSolverRejectsContextBudget() {
+		SyntheticProgram program = new SyntheticProgram();
+		SyntheticMethod main = program.newMethod("main");
+		chain(main, 2);
+		program.addEntryPoint(main);
+		OldForwardCountdownAnalysis analysis = new OldForwardCountdownAnalysis(program, new CountdownLattice(3));
+		analysis.contextBudget = 1;
+		analysis.doAnalysis();
+	}
+
+	// Checks the contexts of an analysis with a budget against those of an exact analysis
+	private static void checkBudget(SyntheticProgram program, InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> budgeted,
+			InterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> exact, int budget, String message) {
+		boolean forward = budgeted.direction == InterProceduralAnalysis.Direction.FORWARD;
+		boolean merged = false;
+		for (SyntheticMethod method : program.getMethods()) {
+			List<Context<SyntheticMethod,SyntheticNode,Integer>> contexts = budgeted.getContexts(method);
+			if (contexts == null) {
+				continue;
+			}
+			assertTrue(message, contexts.size() <= budget + 1);
+			merged |= exact.getContexts(method).size() > budget + 1;
+			for (Context<SyntheticMethod,SyntheticNode,Integer> context : contexts) {
+				assertTrue(message, context.isAnalysed());
+				Integer key = forward ? context.getEntryValue() : context.getExitValue();
+				Integer result = forward ? context.getExitValue() : context.getEntryValue();
+				// A widening has reached the boundary nodes
+				for (SyntheticNode node : forward ? method.getHeads() : method.getTails()) {
+					if ((forward ? method.getPredsOf(node) : method.getSuccsOf(node)).isEmpty()) {
+						assertEquals(message, key, forward ? context.getValueBefore(node) : context.getValueAfter(node));
+					}
+				}
+				// The result is no greater than that of any exact context it subsumes
+				for (Context<SyntheticMethod,SyntheticNode,Integer> other : exact.getContexts(method)) {
+					Integer otherKey = forward ? other.getEntryValue() : other.getExitValue();
+					if (key <= otherKey) {
+						assertTrue(message + ", X" + context + " of " + method,
+								result <= (forward ? other.getExitValue() : other.getEntryValue()));
+					}
+				}
+			}
+		}
+		assertTrue(message, merged);
+	}
+
+	// Returns a set of integers
+	private static Set<Integer> set(Integer... elements) {
+		return new HashSet<Integer>(Arrays.asList(elements));
+	}
+
+	// Adds a chain of nodes to a method and returns them
+	static List<SyntheticNode> chain(SyntheticMethod method, int size) {
+		List<SyntheticNode> nodes = new ArrayList<SyntheticNode>();
+		for (int i = 0; i < size; i++) {
+			SyntheticNode node = method.newNode();
+			if (i > 0) {
+				method.addEdge(nodes.get(i - 1), node);
+			}
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	/**
+	 * A forward analysis over sets of integers, whose meet is union, so that
+	 * larger sets subsume smaller ones.
+	 */
+	private static class UnionAnalysis extends ForwardInterProceduralAnalysis<SyntheticMethod,SyntheticNode,Set<Integer>> {
+
+		private final SyntheticProgram program;
+
+		UnionAnalysis(SyntheticProgram program) {
+			this.program = program;
+		}
+
+		@Override
+		public Set<Integer> normalFlowFunction(Context<SyntheticMethod,SyntheticNode,Set<Integer>> context, SyntheticNode node, Set<Integer> inValue) {
+			return inValue;
+		}
+
+		@Override
+		public Set<Integer> callEntryFlowFunction(Context<SyntheticMethod,SyntheticNode,Set<Integer>> context, SyntheticMethod targetMethod, SyntheticNode node, Set<Integer> inValue) {
+			return inValue;
+		}
+
+		@Override
+		public Set<Integer> callExitFlowFunction(Context<SyntheticMethod,SyntheticNode,Set<Integer>> context, SyntheticMethod targetMethod, SyntheticNode node, Set<Integer> exitValue) {
+			return exitValue;
+		}
+
+		@Override
+		public Set<Integer> callLocalFlowFunction(Context<SyntheticMethod,SyntheticNode,Set<Integer>> context, SyntheticNode node, Set<Integer> inValue) {
+			return inValue;
+		}
+
+		@Override
+		public Set<Integer> boundaryValue(SyntheticMethod entryPoint) {
+			return topValue();
+		}
+
+		@Override
+		public Set<Integer> copy(Set<Integer> src) {
+			return new HashSet<Integer>(src);
+		}
+
+		@Override
+		public Set<Integer> meet(Set<Integer> op1, Set<Integer> op2) {
+			Set<Integer> result = new HashSet<Integer>(op1);
+			result.addAll(op2);
+			return result;
+		}
+
+		@Override
+		public ProgramRepresentation<SyntheticMethod,SyntheticNode> programRepresentation() {
+			return program;
+		}
+
+		@Override
+		public Set<Integer> topValue() {
+			return new HashSet<Integer>();
+		}
+
+	}
+
+	/**
+	 * An analysis whose summaries of all methods may be re-used.
+	 */
+	private static class CachingAnalysis extends ForwardCountdownAnalysis {
+
+		CachingAnalysis(SyntheticProgram program, CountdownLattice lattice) {
+			super(program, lattice);
+		}
+
+		@Override
+		protected boolean isSummaryCacheable(SyntheticMethod method) {
+			return true;
+		}
+
+	}
+
+	/**
+	 * A listener which records the methods of created and processed contexts.
+	 */
+	static class RecordingListener implements AnalysisListener<SyntheticMethod,SyntheticNode,Integer> {
+
+		final Set<SyntheticMethod> created = new HashSet<SyntheticMethod>();
+
+		final Set<SyntheticMethod> processed = new HashSet<SyntheticMethod>();
+
+		final Set<SyntheticMethod> lookedUp = new HashSet<SyntheticMethod>();
+
+		@Override
+		public void contextCreated(Context<SyntheticMethod,SyntheticNode,Integer> context) {
+			created.add(context.getMethod());
+		}
+
+		@Override
+		public void contextLookedUp(SyntheticMethod method, boolean hit) {
+			lookedUp.add(method);
+		}
+
+		@Override
+		public void nodeProcessed(Context<SyntheticMethod,SyntheticNode,Integer> context, SyntheticNode node, int invocations, long nanos) {
+			processed.add(context.getMethod());
+		}
+
+		@Override
+		public void workListGrown(int size) {
+		}
+
+		@Override
+		public void contextFreed(Context<SyntheticMethod,SyntheticNode,Integer> context, int nodes) {
+		}
+
+	}
+
+	/**
+	 * A program representation which records the methods whose control-flow
+	 * graphs are invalidated.
+	 */
+	private static class CachingRepresentation implements IncrementalProgramRepresentation<SyntheticMethod,SyntheticNode> {
+
+		private final ProgramRepresentation<SyntheticMethod,SyntheticNode> delegate;
+
+		private final Set<SyntheticMethod> invalidated;
+
+		CachingRepresentation(ProgramRepresentation<SyntheticMethod,SyntheticNode> delegate, Set<SyntheticMethod> invalidated) {
+			this.delegate = delegate;
+			this.invalidated = invalidated;
+		}
+
+		@Override
+		public void invalidateControlFlowGraph(SyntheticMethod method) {
+			invalidated.add(method);
+		}
+
+		@Override
+		public List<SyntheticMethod> getEntryPoints() {
+			return delegate.getEntryPoints();
+		}
+
+		@Override
+		public DirectedGraph<SyntheticNode> getControlFlowGraph(SyntheticMethod method) {
+			return delegate.getControlFlowGraph(method);
+		}
+
+		@Override
+		public boolean isCall(SyntheticNode node) {
+			return delegate.isCall(node);
+		}
+
+		@Override
+		public boolean isPhantomMethod(SyntheticMethod method) {
+			return delegate.isPhantomMethod(method);
+		}
+
+		@Override
+		public List<SyntheticMethod> resolveTargets(SyntheticMethod callerMethod, SyntheticNode callNode) {
+			return delegate.resolveTargets(callerMethod, callNode);
+		}
+
+	}
+
+}
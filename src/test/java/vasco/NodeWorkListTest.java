@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import vasco.synthetic.SyntheticMethod;
+import vasco.synthetic.SyntheticNode;
+import vasco.synthetic.SyntheticProgram;
+
+/**
+ * Tests of {@link NodeWorkList}.
+ *
+ * @author Rohan Padhye
+ */
+public class NodeWorkListTest {
+
+	/** More nodes than fit in two words of a bitset. */
+	private static final int SIZE = 150;
+
+	private final NodeNumbering<SyntheticNode> numbering;
+
+	public NodeWorkListTest() {
+		// A chain of nodes with a loop, numbered in pseudo-topological order
+		SyntheticMethod method = new SyntheticProgram().newMethod("m");
+		SyntheticNode previous = null;
+		for (int i = 0; i < SIZE; i++) {
+			SyntheticNode node = method.newNode();
+			if (previous != null) {
+				method.addEdge(previous, node);
+			}
+			previous = node;
+		}
+		method.addEdge(method.getNodes().get(SIZE - 2), method.getNodes().get(1));
+		numbering = new NodeNumbering<SyntheticNode>(method);
+	}
+
+	@Test
+	public void testForwardOrderMatchesNumbering() {
+		NodeWorkList<SyntheticNode> workList = new NodeWorkList<SyntheticNode>(numbering, false);
+		// Add every third node, in reverse order of their numbers
+		List<SyntheticNode> expected = new ArrayList<SyntheticNode>();
+		for (int i = SIZE - 1; i >= 0; i -= 3) {
+			assertTrue(workList.add(numbering.getNode(i)));
+			expected.add(0, numbering.getNode(i));
+		}
+		assertEquals(expected.size(), workList.size());
+		assertEquals(expected, new ArrayList<SyntheticNode>(workList));
+		for (SyntheticNode node : expected) {
+			assertSame(node, workList.pollFirst());
+		}
+		assertTrue(workList.isEmpty());
+	}
+
+	@Test
+	public void testBackwardOrderMatchesReverseNumbering() {
+		NodeWorkList<SyntheticNode> workList = new NodeWorkList<SyntheticNode>(numbering, true);
+		for (int i = 0; i < SIZE; i += 2) {
+			workList.add(numbering.getNode(i));
+		}
+		int last = SIZE;
+		while (!workList.isEmpty()) {
+			int index = numbering.indexOf(workList.pollFirst());
+			assertTrue(index < last);
+			assertEquals(0, index % 2);
+			last = index;
+		}
+		assertEquals(0, last);
+	}
+
+	@Test
+	public void testNullNodeComesLast() {
+		for (boolean reverse : new boolean[] { false, true }) {
+			NodeWorkList<SyntheticNode> workList = new NodeWorkList<SyntheticNode>(numbering, reverse);
+			assertTrue(workList.add(null));
+			workList.add(numbering.getNode(SIZE - 1));
+			workList.add(numbering.getNode(0));
+			assertTrue(workList.contains(null));
+			assertEquals(3, workList.size());
+
+			// Nodes added after the null node are still processed before it
+			assertTrue(workList.pollFirst() != null);
+			workList.add(numbering.getNode(SIZE / 2));
+			assertTrue(workList.pollFirst() != null);
+			assertTrue(workList.pollFirst() != null);
+			assertFalse(workList.isEmpty());
+			assertNull(workList.pollFirst());
+			assertTrue(workList.isEmpty());
+			assertFalse(workList.contains(null));
+		}
+	}
+
+	@Test
+	public void testDuplicatesAreIgnored() {
+		NodeWorkList<SyntheticNode> workList = new NodeWorkList<SyntheticNode>(numbering, false);
+		SyntheticNode node = numbering.getNode(SIZE - 1);
+		assertTrue(workList.add(node));
+		assertFalse(workList.add(node));
+		assertTrue(workList.add(null));
+		assertFalse(workList.add(null));
+		assertEquals(2, workList.size());
+		assertSame(node, workList.pollFirst());
+		assertTrue(workList.add(node));
+	}
+
+	@Test
+	public void testGrowsToAllNodes() {
+		NodeWorkList<SyntheticNode> workList = new NodeWorkList<SyntheticNode>(numbering, false);
+		// Add nodes from the last word of the bitset down to the first
+		for (int i = SIZE - 1; i >= 0; i--) {
+			workList.add(numbering.getNode(i));
+			assertEquals(SIZE - i, workList.size());
+			assertTrue(workList.contains(numbering.getNode(i)));
+		}
+		for (int i = 0; i < SIZE; i++) {
+			assertEquals(i, numbering.indexOf(workList.pollFirst()));
+		}
+		assertTrue(workList.isEmpty());
+	}
+
+	@Test
+	public void testRemove() {
+		NodeWorkList<SyntheticNode> workList = new NodeWorkList<SyntheticNode>(numbering, false);
+		workList.add(numbering.getNode(3));
+		workList.add(numbering.getNode(100));
+		workList.add(null);
+		assertTrue(workList.remove(numbering.getNode(3)));
+		assertFalse(workList.remove(numbering.getNode(3)));
+		assertTrue(workList.remove(null));
+		assertSame(numbering.getNode(100), workList.pollFirst());
+		assertTrue(workList.isEmpty());
+	}
+
+	@Test
+	public void testIndicesMatchNodes() {
+		NodeWorkList<SyntheticNode> workList = new NodeWorkList<SyntheticNode>(numbering, true);
+		assertTrue(workList.add(7));
+		assertFalse(workList.add(numbering.getNode(7)));
+		assertTrue(workList.add(numbering.getNode(SIZE - 1)));
+		workList.add(null);
+		assertEquals(SIZE - 1, workList.pollFirstIndex());
+		assertEquals(7, workList.pollFirstIndex());
+		assertEquals(-1, workList.pollFirstIndex());
+		assertTrue(workList.isEmpty());
+		assertEquals(-1, workList.pollFirstIndex());
+	}
+
+	@Test
+	public void testNumberingEdges() {
+		for (int i = 0; i < SIZE; i++) {
+			SyntheticNode node = numbering.getNode(i);
+			int[] succs = numbering.getSuccessors(i);
+			assertEquals(numbering.getControlFlowGraph().getSuccsOf(node).size(), succs.length);
+			for (int j = 0; j < succs.length; j++) {
+				assertSame(numbering.getControlFlowGraph().getSuccsOf(node).get(j), numbering.getNode(succs[j]));
+			}
+			int[] preds = numbering.getPredecessors(i);
+			assertEquals(numbering.getControlFlowGraph().getPredsOf(node).size(), preds.length);
+			for (int j = 0; j < preds.length; j++) {
+				assertSame(numbering.getControlFlowGraph().getPredsOf(node).get(j), numbering.getNode(preds[j]));
+			}
+			assertEquals(numbering.getControlFlowGraph().getHeads().contains(node), numbering.isHead(i));
+			assertEquals(numbering.getControlFlowGraph().getTails().contains(node), numbering.isTail(i));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testForeignNodeIsRejected() {
+		NodeWorkList<SyntheticNode> workList = new NodeWorkList<SyntheticNode>(numbering, false);
+		workList.add(new SyntheticProgram().newMethod("other").newNode());
+	}
+
+}
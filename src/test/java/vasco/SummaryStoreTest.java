@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package vasco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link SummaryStore} with a {@link SummaryCodec}.
+ *
+ * @author Rohan Padhye
+ */
+public class SummaryStoreTest {
+
+	/** Methods are their signatures, and values are integers. */
+	private static final SummaryCodec<String,Integer> CODEC = new SummaryCodec<String,Integer>() {
+		@Override
+		public String signature(String method) {
+			return method;
+		}
+
+		@Override
+		public void writeValue(String method, Integer value, DataOutput out) throws IOException {
+			out.writeInt(value);
+		}
+
+		@Override
+		public Integer readValue(String method, DataInput in) throws IOException {
+			return in.readInt();
+		}
+	};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSummariesSurviveReopening() throws IOException {
+		File file = new File(folder.getRoot(), "summaries");
+		SummaryStore<String,Integer> store = new SummaryStore<String,Integer>(file, CODEC);
+		store.put("f", 1, 10);
+		store.put("f", 2, 20);
+		store.put("g", 1, 30);
+		// Added summaries are visible before they are flushed
+		assertEquals(Integer.valueOf(20), store.get("f", 2));
+		store.close();
+
+		store = new SummaryStore<String,Integer>(file, CODEC);
+		assertEquals(3, store.size());
+		assertEquals(Integer.valueOf(10), store.get("f", 1));
+		assertEquals(Integer.valueOf(20), store.get("f", 2));
+		assertEquals(Integer.valueOf(30), store.get("g", 1));
+		assertNull(store.get("g", 2));
+		assertNull(store.get("h", 1));
+	}
+
+	@Test
+	public void testFlushAppendsNewSummaries() throws IOException {
+		File file = new File(folder.getRoot(), "summaries");
+		SummaryStore<String,Integer> store = new SummaryStore<String,Integer>(file, CODEC);
+		store.put("f", 1, 10);
+		store.flush();
+		// Flushing twice does not duplicate records
+		store.flush();
+		long length = file.length();
+
+		store = new SummaryStore<String,Integer>(file, CODEC);
+		// A stored summary is not replaced
+		store.put("f", 1, 99);
+		store.flush();
+		assertEquals(length, file.length());
+		store.put("f", 3, 30);
+		store.close();
+
+		store = new SummaryStore<String,Integer>(file, CODEC);
+		assertEquals(2, store.size());
+		assertEquals(Integer.valueOf(10), store.get("f", 1));
+		assertEquals(Integer.valueOf(30), store.get("f", 3));
+	}
+
+	@Test
+	public void testIncompleteRecordIsIgnored() throws IOException {
+		File file = new File(folder.getRoot(), "summaries");
+		SummaryStore<String,Integer> store = new SummaryStore<String,Integer>(file, CODEC);
+		store.put("f", 1, 10);
+		store.put("f", 2, 20);
+		store.close();
+
+		// Cut off the last byte, as if a run was interrupted while flushing
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 1);
+		} finally {
+			raf.close();
+		}
+		store = new SummaryStore<String,Integer>(file, CODEC);
+		assertEquals(1, store.size());
+		assertEquals(Integer.valueOf(10), store.get("f", 1));
+		assertNull(store.get("f", 2));
+	}
+
+	@Test(expected = IOException.class)
+	public void testForeignFileIsRejected() throws IOException {
+		File file = new File(folder.getRoot(), "summaries");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("not a summary file".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		new SummaryStore<String,Integer>(file, CODEC);
+	}
+
+}
@@ -46,7 +46,7 @@ import vasco.ContextTransitionTable;
  * A main class for testing call graph construction using a Flow and Context
  * Sensitive Points-to Analysis (FCPA).
  * 
- * <p>Usage: <tt>java vasco.callgraph.CallGraphTest [-cp CLASSPATH] [-out DIR] [-k DEPTH] MAIN_CLASS</tt></p>
+ * <p>Usage: <tt>java vasco.callgraph.CallGraphTest [-cp CLASSPATH] [-out DIR] [-k DEPTH] [-j THREADS] MAIN_CLASS</tt></p>
  * 
  * @author Rohan Padhye
  */
@@ -59,6 +59,7 @@ public class CallGraphTest {
 		String classPath = System.getProperty("java.class.path");
 		String mainClass = null;
 		int callChainDepth = 10;
+		int parallelism = 0;
 
 		/* ------------------- OPTIONS ---------------------- */
 		try {
@@ -77,6 +78,9 @@ public class CallGraphTest {
 				} else if (args[i].equals("-k")) { 
 					callChainDepth = Integer.parseInt(args[i+1]);
 					i += 2;
+				} else if (args[i].equals("-j")) { 
+					parallelism = Integer.parseInt(args[i+1]);
+					i += 2;
 				} else {
 					mainClass = args[i];
 					i++;
@@ -86,7 +90,7 @@ public class CallGraphTest {
 			if (i != args.length || mainClass == null)
 				throw new Exception();
 		} catch (Exception e) {
-			System.out.println("Usage: java vasco.callgraph.CallGraphTest [-cp CLASSPATH] [-out DIR] [-k DEPTH] MAIN_CLASS");
+			System.out.println("Usage: java vasco.callgraph.CallGraphTest [-cp CLASSPATH] [-out DIR] [-k DEPTH] [-j THREADS] MAIN_CLASS");
 			System.exit(1);
 		}
 
@@ -107,7 +111,7 @@ public class CallGraphTest {
 		
 
 		/* ------------------- ANALYSIS ---------------------- */
-		CallGraphTransformer cgt = new CallGraphTransformer();
+		CallGraphTransformer cgt = new CallGraphTransformer(parallelism);
 		PackManager.v().getPack("wjtp").add(new Transform("wjtp.fcpa", cgt));
 		soot.Main.main(sootArgs);
 		PointsToAnalysis pointsToAnalysis = cgt.getPointsToAnalysis();
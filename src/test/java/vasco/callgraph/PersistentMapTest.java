@@ -0,0 +1,292 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package vasco.callgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link PersistentMap}, checked against a {@link HashMap}.
+ *
+ * @author Rohan Padhye
+ */
+public class PersistentMapTest {
+
+	/** Keeps the greater of two values, returning an argument when they are equal. */
+	private static final PersistentMap.Merger<Integer> MAX = new PersistentMap.Merger<Integer>() {
+		@Override
+		public Integer merge(Integer first, Integer second) {
+			return first >= second ? first : second;
+		}
+	};
+
+	/**
+	 * A key with a chosen hash code, so that tests can force collisions.
+	 */
+	private static final class Key {
+
+		final int id;
+		final int hash;
+
+		Key(int id, int hash) {
+			this.id = id;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).id == id;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public String toString() {
+			return "k" + id;
+		}
+	}
+
+	// Returns keys of which every fourth has the same hash code, and the rest share long hash prefixes
+	private static List<Key> keys(int count) {
+		List<Key> keys = new ArrayList<Key>();
+		for (int i = 0; i < count; i++) {
+			int hash;
+			switch (i % 4) {
+			case 0: hash = 7; break;
+			case 1: hash = (i << 20) | 3; break;
+			case 2: hash = i % 12; break;
+			default: hash = i * 0x9E3779B9; break;
+			}
+			keys.add(new Key(i, hash));
+		}
+		return keys;
+	}
+
+	// Returns a persistent map with the mappings of a hash map, added in the given order
+	private static PersistentMap<Key,Integer> build(Map<Key,Integer> mappings, List<Key> order) {
+		PersistentMap<Key,Integer> map = PersistentMap.empty();
+		for (Key key : order) {
+			if (mappings.containsKey(key)) {
+				map = map.plus(key, mappings.get(key));
+			}
+		}
+		return map;
+	}
+
+	// Checks that a persistent map has exactly the mappings of a hash map
+	private static void assertMappings(Map<Key,Integer> expected, PersistentMap<Key,Integer> actual, List<Key> keys) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.size(), actual.entrySet().size());
+		Map<Key,Integer> iterated = new HashMap<Key,Integer>();
+		for (Map.Entry<Key,Integer> entry : actual.entrySet()) {
+			assertNull(iterated.put(entry.getKey(), entry.getValue()));
+		}
+		assertEquals(expected, iterated);
+		for (Key key : keys) {
+			assertEquals(expected.containsKey(key), actual.containsKey(key));
+			assertEquals(expected.get(key), actual.get(key));
+		}
+		assertTrue(actual.equals(expected));
+		assertTrue(expected.equals(actual));
+		assertEquals(expected.hashCode(), actual.hashCode());
+	}
+
+	@Test
+	public void testRandomUpdates() {
+		Random random = new Random(42);
+		List<Key> keys = keys(80);
+		List<Map<Key,Integer>> expectedVersions = new ArrayList<Map<Key,Integer>>();
+		List<PersistentMap<Key,Integer>> versions = new ArrayList<PersistentMap<Key,Integer>>();
+		Map<Key,Integer> expected = new HashMap<Key,Integer>();
+		PersistentMap<Key,Integer> map = PersistentMap.empty();
+		for (int step = 0; step < 4000; step++) {
+			Key key = keys.get(random.nextInt(keys.size()));
+			if (random.nextInt(5) < 3) {
+				Integer value = random.nextInt(4);
+				expected.put(key, value);
+				map = map.plus(key, value);
+			} else {
+				expected.remove(key);
+				map = map.minus(key);
+			}
+			assertEquals(expected.size(), map.size());
+			if (step % 100 == 0) {
+				assertMappings(expected, map, keys);
+				expectedVersions.add(new HashMap<Key,Integer>(expected));
+				versions.add(map);
+			}
+		}
+		// Earlier versions are not affected by later updates
+		for (int i = 0; i < versions.size(); i++) {
+			assertMappings(expectedVersions.get(i), versions.get(i), keys);
+		}
+	}
+
+	@Test
+	public void testFullHashCollisions() {
+		List<Key> keys = new ArrayList<Key>();
+		for (int i = 0; i < 5; i++) {
+			keys.add(new Key(i, 42));
+		}
+		Map<Key,Integer> expected = new HashMap<Key,Integer>();
+		PersistentMap<Key,Integer> map = PersistentMap.empty();
+		for (Key key : keys) {
+			expected.put(key, key.id);
+			map = map.plus(key, key.id);
+			assertMappings(expected, map, keys);
+		}
+
+		// Re-mapping to the same value changes nothing, while a new value replaces the old one
+		assertSame(map, map.plus(keys.get(2), map.get(keys.get(2))));
+		PersistentMap<Key,Integer> replaced = map.plus(keys.get(2), 9);
+		expected.put(keys.get(2), 9);
+		assertMappings(expected, replaced, keys);
+		assertEquals(Integer.valueOf(2), map.get(keys.get(2)));
+
+		// A key with the same hash code which is not mapped is not removed
+		assertSame(map, map.minus(new Key(5, 42)));
+		assertFalse(map.containsKey(new Key(5, 42)));
+	}
+
+	@Test
+	public void testMinusCollapsesToLeafAndEmpty() {
+		// Colliding keys, and keys which only differ in the highest hash bits
+		Key[][] groups = {
+				{ new Key(0, 42), new Key(1, 42), new Key(2, 42) },
+				{ new Key(0, 1), new Key(1, 1 | (1 << 31)), new Key(2, 1 | (1 << 30)) },
+				{ new Key(0, 5), new Key(1, 5), new Key(2, 5 | (1 << 31)) },
+		};
+		for (Key[] group : groups) {
+			List<Key> keys = new ArrayList<Key>();
+			Collections.addAll(keys, group);
+			Map<Key,Integer> expected = new HashMap<Key,Integer>();
+			for (Key key : keys) {
+				expected.put(key, key.id);
+			}
+			PersistentMap<Key,Integer> map = build(expected, keys);
+			for (Key key : keys) {
+				expected.remove(key);
+				map = map.minus(key);
+				assertMappings(expected, map, keys);
+				// The remaining mappings are the same as those of a map built from scratch
+				assertEquals(build(expected, keys), map);
+				assertEquals(build(expected, keys).hashCode(), map.hashCode());
+				// The map can still be updated after it has collapsed
+				if (!expected.isEmpty()) {
+					Map<Key,Integer> readded = new HashMap<Key,Integer>(expected);
+					readded.put(key, key.id);
+					assertMappings(readded, map.plus(key, key.id), keys);
+				}
+			}
+			assertSame(PersistentMap.<Key,Integer>empty(), map);
+			assertSame(map, map.minus(keys.get(0)));
+		}
+	}
+
+	@Test
+	public void testUnion() {
+		Random random = new Random(7);
+		List<Key> keys = keys(60);
+		for (int round = 0; round < 200; round++) {
+			Map<Key,Integer> first = new HashMap<Key,Integer>();
+			Map<Key,Integer> second = new HashMap<Key,Integer>();
+			for (Key key : keys) {
+				int in = random.nextInt(round % 2 == 0 ? 4 : 12);
+				if (in == 0 || in == 2) {
+					first.put(key, random.nextInt(3));
+				}
+				if (in == 1 || in == 2) {
+					second.put(key, random.nextInt(3));
+				}
+			}
+			PersistentMap<Key,Integer> a = build(first, keys);
+			PersistentMap<Key,Integer> b = build(second, keys);
+			Map<Key,Integer> expected = new HashMap<Key,Integer>(first);
+			for (Map.Entry<Key,Integer> entry : second.entrySet()) {
+				Integer value = expected.get(entry.getKey());
+				expected.put(entry.getKey(), value == null ? entry.getValue() : MAX.merge(value, entry.getValue()));
+			}
+			assertMappings(expected, a.union(b, MAX), keys);
+			assertMappings(expected, b.union(a, MAX), keys);
+
+			// An operand which already holds the union is returned
+			PersistentMap<Key,Integer> union = a.union(b, MAX);
+			assertSame(union, union.union(a, MAX));
+			assertSame(union, union.union(b, MAX));
+			assertSame(union, a.union(union, MAX));
+			assertSame(union, union.union(union, MAX));
+			assertSame(a, a.union(PersistentMap.<Key,Integer>empty(), MAX));
+			assertSame(a, PersistentMap.<Key,Integer>empty().union(a, MAX));
+		}
+	}
+
+	@Test
+	public void testEqualsAndHashCodeIndependentOfOrder() {
+		Random random = new Random(3);
+		List<Key> keys = keys(100);
+		Map<Key,Integer> expected = new HashMap<Key,Integer>();
+		for (Key key : keys) {
+			if (random.nextBoolean()) {
+				expected.put(key, random.nextInt(5));
+			}
+		}
+		PersistentMap<Key,Integer> map = build(expected, keys);
+		for (int round = 0; round < 20; round++) {
+			List<Key> order = new ArrayList<Key>(keys);
+			Collections.shuffle(order, random);
+			PersistentMap<Key,Integer> other = build(expected, order);
+			assertEquals(map, other);
+			assertEquals(map.hashCode(), other.hashCode());
+		}
+
+		// Maps with a different value, an extra key, or a missing key are not equal
+		Key key = expected.keySet().iterator().next();
+		assertFalse(map.equals(map.plus(key, expected.get(key) + 1)));
+		assertFalse(map.equals(map.minus(key)));
+		assertFalse(map.minus(key).equals(map));
+		Key absent = null;
+		for (Key k : keys) {
+			if (!expected.containsKey(k)) {
+				absent = k;
+				break;
+			}
+		}
+		assertFalse(map.equals(map.plus(absent, 0)));
+		// Replacing a mapping with an equal value keeps the map equal
+		assertEquals(map, map.plus(key, new Integer(expected.get(key))));
+		assertFalse(map.equals(null));
+		assertTrue(PersistentMap.empty().equals(Collections.emptyMap()));
+		assertEquals(0, PersistentMap.empty().hashCode());
+	}
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package vasco.callgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.TreeSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.PackManager;
+import soot.Scene;
+import soot.SceneTransformer;
+import soot.SootMethod;
+import soot.Transform;
+import soot.Unit;
+import soot.jimple.toolkits.callgraph.ContextSensitiveEdge;
+import vasco.CallSite;
+import vasco.Context;
+import vasco.ContextTransitionTable;
+
+/**
+ * Tests of {@link PointsToAnalysis}.
+ *
+ * @author Rohan Padhye
+ */
+public class PointsToAnalysisTest {
+
+	/** The number of times the parallel analysis is repeated. */
+	private static final int RUNS = 20;
+
+	/** The result of the sequential analysis of the test program. */
+	private static PointsToAnalysis sequentialAnalysis;
+
+	/** The call graph constructed by the sequential analysis. */
+	private static Set<String> sequential;
+
+	/** The distinct call graphs constructed by the parallel analysis. */
+	private static Set<Set<String>> parallel;
+
+	/**
+	 * Analyses the test program sequentially once, and in parallel
+	 * {@link #RUNS} times.
+	 */
+	@BeforeClass
+	public static void analyseProgram() {
+		parallel = new HashSet<Set<String>>();
+		// Method bodies are only available while Soot is running
+		PackManager.v().getPack("wjtp").add(new Transform("wjtp.fcpa", new SceneTransformer() {
+			@SuppressWarnings("rawtypes")
+			@Override
+			protected void internalTransform(String phaseName, Map options) {
+				sequentialAnalysis = new PointsToAnalysis(0);
+				sequentialAnalysis.doAnalysis();
+				sequential = callGraph(sequentialAnalysis);
+				for (int i = 0; i < RUNS; i++) {
+					PointsToAnalysis parallelAnalysis = new PointsToAnalysis(4);
+					parallelAnalysis.doAnalysis();
+					parallel.add(callGraph(parallelAnalysis));
+				}
+			}
+		}));
+		soot.Main.main(new String[] {
+				"-cp", System.getProperty("java.class.path"), "-pp", 
+				"-w", "-app", 
+				"-p", "cg", "implicit-entry:false",
+				"-p", "cg.spark", "enabled",
+				"-main-class", "vasco.tests.StaticInitTestCase",
+				"-f", "none", "vasco.tests.StaticInitTestCase" 
+		});
+	}
+
+	/**
+	 * Tests that the parallel solver constructs the same call graph as the
+	 * sequential one for a program whose static fields are read by some
+	 * contexts while they are written by others, or before the
+	 * <tt>&lt;clinit&gt;</tt> which writes them has been analysed.
+	 */
+	@Test
+	public void testParallelCallGraphWithStatics() {
+		// Statements reading static fields see every write to them
+		String canvasDraw = "<vasco.tests.StaticInitTestCase: void drawCanvas()> " +
+				"interfaceinvoke $r0.<vasco.tests.StaticInitTestCase$Shape: void draw()>() -> ";
+		assertTrue(sequential.toString(), sequential.contains(canvasDraw + 
+				"<vasco.tests.StaticInitTestCase$Circle: void draw()>"));
+		assertTrue(sequential.toString(), sequential.contains(canvasDraw + 
+				"<vasco.tests.StaticInitTestCase$Square: void draw()>"));
+		assertTrue(sequential.toString(), sequential.contains("<vasco.tests.StaticInitTestCase: void drawLast()> " +
+				"interfaceinvoke $r0.<vasco.tests.StaticInitTestCase$Shape: void draw()>() -> " +
+				"<vasco.tests.StaticInitTestCase$Triangle: void draw()>"));
+		
+		// Every parallel run finds the same call graph
+		assertEquals(1, parallel.size());
+		assertEquals(sequential, parallel.iterator().next());
+	}
+
+	/**
+	 * Tests that the edges out of each call-site of the context-sensitive
+	 * call graph are those of the transitions of the analysis.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testEdgesOutOfCallSites() {
+		ContextTransitionTable<SootMethod,Unit,PointsToGraph> ctt = sequentialAnalysis.getContextTransitionTable();
+		ValueContextCallGraph callGraph = new ValueContextCallGraph(ctt, sequentialAnalysis.getMethods());
+		for (Map.Entry<CallSite<SootMethod,Unit,PointsToGraph>,Map<SootMethod,Context<SootMethod,Unit,PointsToGraph>>> e : ctt.getTransitions().entrySet()) {
+			Context<SootMethod,Unit,PointsToGraph> context = e.getKey().getCallingContext();
+			Unit stmt = e.getKey().getCallNode();
+			Map<SootMethod,Context<SootMethod,Unit,PointsToGraph>> targets = new HashMap<SootMethod,Context<SootMethod,Unit,PointsToGraph>>();
+			for (Iterator<?> edges = callGraph.edgesOutOf(context, context.getMethod(), stmt); edges.hasNext(); ) {
+				ContextSensitiveEdge edge = (ContextSensitiveEdge) edges.next();
+				assertSame(context, edge.srcCtxt());
+				assertSame(stmt, edge.srcStmt());
+				targets.put(edge.tgt(), (Context<SootMethod,Unit,PointsToGraph>) edge.tgtCtxt());
+			}
+			assertEquals(e.getValue(), targets);
+			
+			// Querying a statement which is not a call-site of a context creates nothing
+			for (Context<SootMethod,Unit,PointsToGraph> target : e.getValue().values()) {
+				if (target.findCallSite(stmt) == null) {
+					assertFalse(callGraph.edgesOutOf(target, target.getMethod(), stmt).hasNext());
+					assertNull(target.findCallSite(stmt));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the edges of the call graph constructed by a points-to
+	 * analysis which are reachable from the main method.
+	 */
+	private static Set<String> callGraph(PointsToAnalysis analysis) {
+		ContextTransitionTable<SootMethod,Unit,PointsToGraph> ctt = analysis.getContextTransitionTable();
+		Map<Context<SootMethod,Unit,PointsToGraph>,Set<CallSite<SootMethod,Unit,PointsToGraph>>> callSites = ctt.getCallSitesOfContexts();
+		Set<String> edges = new TreeSet<String>();
+		Set<Context<SootMethod,Unit,PointsToGraph>> visited = new HashSet<Context<SootMethod,Unit,PointsToGraph>>();
+		Stack<Context<SootMethod,Unit,PointsToGraph>> stack = new Stack<Context<SootMethod,Unit,PointsToGraph>>();
+		stack.push(analysis.getContexts(Scene.v().getMainMethod()).get(0));
+		while (stack.isEmpty() == false) {
+			Context<SootMethod,Unit,PointsToGraph> context = stack.pop();
+			if (callSites.containsKey(context) == false) {
+				continue;
+			}
+			for (CallSite<SootMethod,Unit,PointsToGraph> callSite : callSites.get(context)) {
+				String site = context.getMethod() + " " + callSite.getCallNode() + " -> ";
+				if (ctt.getDefaultCallSites().contains(callSite)) {
+					edges.add(site + "DEFAULT");
+					continue;
+				}
+				for (Map.Entry<SootMethod,Context<SootMethod,Unit,PointsToGraph>> target : ctt.getTransitions().get(callSite).entrySet()) {
+					edges.add(site + target.getKey());
+					if (visited.add(target.getValue())) {
+						stack.push(target.getValue());
+					}
+				}
+			}
+		}
+		return edges;
+	}
+
+}
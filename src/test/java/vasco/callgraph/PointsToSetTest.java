@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package vasco.callgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import soot.jimple.AnyNewExpr;
+import soot.jimple.internal.JNewExpr;
+
+/**
+ * Tests of {@link PointsToSet}.
+ *
+ * @author Rohan Padhye
+ */
+public class PointsToSetTest {
+
+	/** Allocation sites spanning several words of a bitset. */
+	private final List<AnyNewExpr> sites = new ArrayList<AnyNewExpr>();
+
+	public PointsToSetTest() {
+		for (int i = 0; i < 300; i++) {
+			AnyNewExpr site = new JNewExpr(null);
+			sites.add(site);
+			PointsToSet.number(site);
+		}
+	}
+
+	// Returns the set of sites with the given indices, built one at a time
+	private PointsToSet set(int... indices) {
+		PointsToSet.Builder builder = new PointsToSet.Builder();
+		for (int i : indices) {
+			builder.add(sites.get(i));
+		}
+		return builder.build();
+	}
+
+	// Returns a hash set of sites with the given indices
+	private Set<AnyNewExpr> hashSet(int... indices) {
+		Set<AnyNewExpr> set = new HashSet<AnyNewExpr>();
+		for (int i : indices) {
+			set.add(sites.get(i));
+		}
+		return set;
+	}
+
+	@Test
+	public void testIterationAcrossWords() {
+		// Sites at word boundaries, and a set which starts past the first word
+		int[][] cases = { { 0, 63, 64, 127, 128 }, { 150, 151, 299 }, { 200 }, { 63 }, { 64, 299 } };
+		for (int[] indices : cases) {
+			PointsToSet set = set(indices);
+			assertEquals(indices.length, set.size());
+			List<AnyNewExpr> elements = new ArrayList<AnyNewExpr>(set);
+			List<AnyNewExpr> expected = new ArrayList<AnyNewExpr>();
+			for (int i : indices) {
+				expected.add(sites.get(i));
+			}
+			assertEquals(expected, elements);
+			for (int i = 0; i < sites.size(); i++) {
+				assertEquals(hashSet(indices).contains(sites.get(i)), set.contains(sites.get(i)));
+			}
+		}
+		assertFalse(set(0, 1).contains(new JNewExpr(null)));
+		assertFalse(set(0, 1).contains("not a site"));
+		assertFalse(PointsToSet.EMPTY.iterator().hasNext());
+	}
+
+	@Test
+	public void testUnion() {
+		PointsToSet low = set(1, 63);
+		PointsToSet high = set(130, 299);
+		PointsToSet union = low.union(high);
+		assertEquals(hashSet(1, 63, 130, 299), union);
+		assertEquals(4, union.size());
+		// A set which contains the other is returned as is
+		assertSame(union, union.union(low));
+		assertSame(union, high.union(union));
+		assertSame(low, low.union(PointsToSet.EMPTY));
+		assertSame(high, PointsToSet.EMPTY.union(high));
+		// Overlapping sets
+		assertEquals(hashSet(1, 2, 63, 64), set(1, 63, 64).union(set(2, 63)));
+	}
+
+	@Test
+	public void testContainsAll() {
+		PointsToSet set = set(5, 64, 70, 200);
+		assertTrue(set.containsAll(set(64, 200)));
+		assertTrue(set.containsAll(PointsToSet.EMPTY));
+		assertTrue(set.containsAll(set));
+		assertFalse(set.containsAll(set(5, 6)));
+		// Outside the stored words, on either side
+		assertFalse(set.containsAll(set(0)));
+		assertFalse(set.containsAll(set(299)));
+		assertFalse(set(64, 200).containsAll(set));
+		// Other kinds of collections
+		assertTrue(set.containsAll(hashSet(5, 70)));
+		assertFalse(set.containsAll(hashSet(5, 71)));
+	}
+
+	@Test
+	public void testEqualsAndHashCode() {
+		PointsToSet set = set(3, 64, 250);
+		PointsToSet same = set(250, 3).union(set(64));
+		assertEquals(set, same);
+		assertEquals(set.hashCode(), same.hashCode());
+		// Equal to other sets with the same elements, and vice versa
+		assertEquals(hashSet(3, 64, 250), set);
+		assertEquals(set, hashSet(3, 64, 250));
+		assertEquals(hashSet(3, 64, 250).hashCode(), set.hashCode());
+		assertFalse(set.equals(set(3, 64)));
+		assertFalse(set(64).equals(set(65)));
+		assertEquals(PointsToSet.EMPTY, set(new int[0]));
+		assertEquals(0, PointsToSet.EMPTY.hashCode());
+	}
+
+	@Test
+	public void testResetRetainsGivenSites() {
+		AnyNewExpr retained = sites.get(70);
+		PointsToSet kept = set(70);
+		PointsToSet.reset(retained);
+		// The retained site keeps its number, so old sets of it remain valid
+		assertEquals(kept, PointsToSet.of(retained));
+		assertTrue(kept.contains(retained));
+		assertFalse(kept.contains(sites.get(0)));
+		// Other sites are numbered afresh, around the retained number
+		List<AnyNewExpr> fresh = new ArrayList<AnyNewExpr>();
+		PointsToSet.Builder builder = new PointsToSet.Builder();
+		for (int i = 0; i < 100; i++) {
+			AnyNewExpr site = new JNewExpr(null);
+			fresh.add(site);
+			builder.add(site);
+		}
+		builder.add(retained);
+		PointsToSet set = builder.build();
+		assertEquals(101, set.size());
+		fresh.add(retained);
+		assertEquals(new HashSet<AnyNewExpr>(fresh), set);
+		assertEquals(fresh.size(), new HashSet<AnyNewExpr>(set).size());
+	}
+
+}
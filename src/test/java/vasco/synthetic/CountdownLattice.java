@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.synthetic;
+
+/**
+ * A lattice of the integers from zero to a given height, ordered such that
+ * the meet of two values is their minimum.
+ *
+ * <p>
+ * This is a trivial lattice for exercising the solvers on a {@link SyntheticProgram}.
+ * The flow function of every ordinary node decrements its input until it
+ * reaches zero, so a loop is iterated up to once for every level of the
+ * lattice, and a method is analysed in at most <tt>height + 1</tt> distinct
+ * value contexts.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+public class CountdownLattice {
+
+	private final int height;
+
+	/**
+	 * Creates a lattice of a given height.
+	 *
+	 * @param height the greatest value, which is the top of the lattice
+	 */
+	public CountdownLattice(int height) {
+		if (height < 0) {
+			throw new IllegalArgumentException("height must be non-negative");
+		}
+		this.height = height;
+	}
+
+	/** Returns the top of the lattice. */
+	public Integer top() {
+		return height;
+	}
+
+	/** Returns the minimum of two values. */
+	public Integer meet(Integer op1, Integer op2) {
+		return Math.min(op1, op2);
+	}
+
+	/** Returns a value decremented by one, or zero if the value is zero. */
+	public Integer decrement(Integer value) {
+		return value > 0 ? value - 1 : 0;
+	}
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.synthetic;
+
+import vasco.Context;
+import vasco.ForwardInterProceduralAnalysis;
+import vasco.ProgramRepresentation;
+
+/**
+ * A forward analysis of a {@link SyntheticProgram} over a {@link CountdownLattice}.
+ *
+ * <p>
+ * The value at the entry of a callee is the value before its call site,
+ * and the value after a call is the meet of the value before the call with
+ * the exit values of the callees.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+public class ForwardCountdownAnalysis extends ForwardInterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> {
+
+	private final SyntheticProgram program;
+
+	private final CountdownLattice lattice;
+
+	public ForwardCountdownAnalysis(SyntheticProgram program, CountdownLattice lattice) {
+		super();
+		this.program = program;
+		this.lattice = lattice;
+	}
+
+	@Override
+	public Integer normalFlowFunction(Context<SyntheticMethod,SyntheticNode,Integer> context, SyntheticNode node, Integer inValue) {
+		return lattice.decrement(inValue);
+	}
+
+	@Override
+	public Integer callEntryFlowFunction(Context<SyntheticMethod,SyntheticNode,Integer> context, SyntheticMethod targetMethod, SyntheticNode node, Integer inValue) {
+		return inValue;
+	}
+
+	@Override
+	public Integer callExitFlowFunction(Context<SyntheticMethod,SyntheticNode,Integer> context, SyntheticMethod targetMethod, SyntheticNode node, Integer exitValue) {
+		return exitValue;
+	}
+
+	@Override
+	public Integer callLocalFlowFunction(Context<SyntheticMethod,SyntheticNode,Integer> context, SyntheticNode node, Integer inValue) {
+		return inValue;
+	}
+
+	@Override
+	public Integer boundaryValue(SyntheticMethod entryPoint) {
+		return lattice.top();
+	}
+
+	@Override
+	public Integer copy(Integer src) {
+		return src;
+	}
+
+	@Override
+	public Integer meet(Integer op1, Integer op2) {
+		return lattice.meet(op1, op2);
+	}
+
+	@Override
+	public ProgramRepresentation<SyntheticMethod,SyntheticNode> programRepresentation() {
+		return program;
+	}
+
+	@Override
+	public Integer topValue() {
+		return lattice.top();
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.synthetic;
+
+import vasco.Context;
+import vasco.OldForwardInterProceduralAnalysis;
+import vasco.ProgramRepresentation;
+
+/**
+ * A forward analysis of a {@link SyntheticProgram} over a {@link CountdownLattice},
+ * using the stack-based solver.
+ *
+ * <p>
+ * The flow functions are the same as those of {@link ForwardCountdownAnalysis},
+ * so both analyses compute the same solution.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+@SuppressWarnings("deprecation")
+public class OldForwardCountdownAnalysis extends OldForwardInterProceduralAnalysis<SyntheticMethod,SyntheticNode,Integer> {
+
+	private final SyntheticProgram program;
+
+	private final CountdownLattice lattice;
+
+	public OldForwardCountdownAnalysis(SyntheticProgram program, CountdownLattice lattice) {
+		super();
+		this.program = program;
+		this.lattice = lattice;
+	}
+
+	@Override
+	protected Integer flowFunction(Context<SyntheticMethod,SyntheticNode,Integer> context, SyntheticNode unit, Integer in) {
+		if (program.isCall(unit) == false) {
+			return lattice.decrement(in);
+		}
+		// Merge the value before the call with the exit values of the targets
+		// which have been analysed, as in the call-local flow function
+		Integer out = in;
+		for (SyntheticMethod target : program.resolveTargets(context.getMethod(), unit)) {
+			Integer exitValue = processCall(context, unit, target, in);
+			if (exitValue != null) {
+				out = lattice.meet(out, exitValue);
+			}
+		}
+		return out;
+	}
+
+	@Override
+	public Integer boundaryValue(SyntheticMethod entryPoint) {
+		return lattice.top();
+	}
+
+	@Override
+	public Integer copy(Integer src) {
+		return src;
+	}
+
+	@Override
+	public Integer meet(Integer op1, Integer op2) {
+		return lattice.meet(op1, op2);
+	}
+
+	@Override
+	public ProgramRepresentation<SyntheticMethod,SyntheticNode> programRepresentation() {
+		return program;
+	}
+
+	@Override
+	public Integer topValue() {
+		return lattice.top();
+	}
+
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ *
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package vasco.synthetic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A generator of random {@link SyntheticProgram}s of a configurable size
+ * and shape.
+ *
+ * <p>
+ * Programs are generated from a seed, so that the same configuration always
+ * produces the same program. The method <tt>m0</tt> is the entry point, and
+ * every method is reachable from it. Each method is a chain of nodes, to
+ * which forward edges (branches) and backward edges (loops) may be added
+ * depending on the {@link Shape}; the last node of the chain is the only
+ * tail. As in Jimple, where a body starts with identity statements and ends
+ * with a return statement, neither the head nor the tail of a method is a
+ * call.
+ * </p>
+ *
+ * <p>
+ * Methods are partitioned into consecutive groups of {@link #setSccSize(int) sccSize}
+ * methods. A method calls only methods of its own group or of later groups,
+ * and each group of more than one method is a recursive strongly connected
+ * component of the call graph. Every node is a call with probability
+ * {@link #setCallDensity(double) callDensity}, and resolves to between one
+ * and {@link #setFanOut(int) fanOut} targets.
+ * </p>
+ *
+ * @author Rohan Padhye
+ *
+ */
+public class SyntheticProgramGenerator {
+
+	/**
+	 * The shape of the control-flow graphs of generated methods.
+	 */
+	public enum Shape {
+		/** A chain of nodes. */
+		STRAIGHT,
+		/** A chain of nodes with forward edges that skip some nodes. */
+		BRANCHING,
+		/** A chain of nodes with backward edges. */
+		LOOPING,
+		/** A chain of nodes with both forward and backward edges. */
+		MIXED
+	}
+
+	/** The probability that a node starts a branch, for branching shapes. */
+	private static final double BRANCH_PROBABILITY = 0.25;
+
+	/** The probability that a node ends a loop, for looping shapes. */
+	private static final double LOOP_PROBABILITY = 0.125;
+
+	/** The maximum number of nodes spanned by a branch or loop. */
+	private static final int MAX_SPAN = 4;
+
+	private long seed = 0;
+
+	private int methodCount = 100;
+
+	private int minNodes = 5;
+
+	private int maxNodes = 20;
+
+	private Shape shape = Shape.MIXED;
+
+	private double callDensity = 0.2;
+
+	private int fanOut = 1;
+
+	private int sccSize = 1;
+
+	/** Sets the seed of the random number generator. The default is <tt>0</tt>. */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/** Sets the number of methods to generate. The default is <tt>100</tt>. */
+	public void setMethodCount(int methodCount) {
+		this.methodCount = methodCount;
+	}
+
+	/**
+	 * Sets the range of the number of nodes of each method, which must be at
+	 * least <tt>3</tt> so that every method may contain a call. The default is
+	 * from <tt>5</tt> to <tt>20</tt> nodes.
+	 */
+	public void setNodesPerMethod(int minNodes, int maxNodes) {
+		this.minNodes = minNodes;
+		this.maxNodes = maxNodes;
+	}
+
+	/** Sets the shape of control-flow graphs. The default is {@link Shape#MIXED}. */
+	public void setShape(Shape shape) {
+		this.shape = shape;
+	}
+
+	/** Sets the probability that a node is a call. The default is <tt>0.2</tt>. */
+	public void setCallDensity(double callDensity) {
+		this.callDensity = callDensity;
+	}
+
+	/** Sets the maximum number of targets of a call. The default is <tt>1</tt>. */
+	public void setFanOut(int fanOut) {
+		this.fanOut = fanOut;
+	}
+
+	/**
+	 * Sets the number of methods in each recursive strongly connected component
+	 * of the call graph. The default is <tt>1</tt>, which generates a call
+	 * graph without recursion.
+	 */
+	public void setSccSize(int sccSize) {
+		this.sccSize = sccSize;
+	}
+
+	/**
+	 * Generates a program with the current configuration.
+	 *
+	 * @return a new synthetic program
+	 * @throws IllegalArgumentException if the configuration is invalid
+	 */
+	public SyntheticProgram generate() {
+		if (methodCount < 1 || minNodes < 3 || maxNodes < minNodes || fanOut < 1 || sccSize < 1
+				|| callDensity < 0 || callDensity > 1 || shape == null) {
+			throw new IllegalArgumentException("Invalid configuration of synthetic program");
+		}
+		Random random = new Random(seed);
+		SyntheticProgram program = new SyntheticProgram();
+
+		// Create the methods and their control-flow graphs
+		List<SyntheticMethod> methods = new ArrayList<SyntheticMethod>(methodCount);
+		for (int i = 0; i < methodCount; i++) {
+			SyntheticMethod method = program.newMethod("m" + i);
+			buildBody(method, minNodes + random.nextInt(maxNodes - minNodes + 1), random);
+			methods.add(method);
+		}
+		program.addEntryPoint(methods.get(0));
+
+		// Add calls at random nodes, keeping track of methods called from an earlier method
+		boolean[] reached = new boolean[methodCount];
+		for (int i = 0; i < methodCount; i++) {
+			int first = sccSize > 1 ? i - i % sccSize : i + 1;
+			int range = methodCount - first;
+			if (range <= 0) {
+				continue;
+			}
+			List<SyntheticNode> nodes = methods.get(i).getNodes();
+			for (SyntheticNode node : nodes.subList(1, nodes.size() - 1)) {
+				if (random.nextDouble() < callDensity) {
+					int count = Math.min(1 + random.nextInt(fanOut), range);
+					List<SyntheticMethod> targets = new ArrayList<SyntheticMethod>(count);
+					while (targets.size() < count) {
+						int j = first + random.nextInt(range);
+						if (!targets.contains(methods.get(j))) {
+							targets.add(methods.get(j));
+							reached[j] |= j > i;
+						}
+					}
+					node.setTargets(targets);
+				}
+			}
+		}
+
+		// Make every method reachable by a call from some earlier method
+		for (int j = 1; j < methodCount; j++) {
+			if (!reached[j]) {
+				addCall(methods.get(random.nextInt(j)), methods.get(j), random);
+			}
+		}
+
+		// Close each group of methods into a cycle of calls
+		if (sccSize > 1) {
+			for (int start = 0; start < methodCount; start += sccSize) {
+				int end = Math.min(start + sccSize, methodCount);
+				for (int i = start; i < end; i++) {
+					addCall(methods.get(i), methods.get(i + 1 < end ? i + 1 : start), random);
+				}
+			}
+		}
+
+		return program;
+	}
+
+	// Creates the nodes and edges of a method
+	private void buildBody(SyntheticMethod method, int size, Random random) {
+		List<SyntheticNode> nodes = new ArrayList<SyntheticNode>(size);
+		for (int i = 0; i < size; i++) {
+			nodes.add(method.newNode());
+		}
+		for (int i = 0; i + 1 < size; i++) {
+			method.addEdge(nodes.get(i), nodes.get(i + 1));
+		}
+		// Forward edges, skipping at least one node
+		if (shape == Shape.BRANCHING || shape == Shape.MIXED) {
+			for (int i = 0; i + 2 < size; i++) {
+				if (random.nextDouble() < BRANCH_PROBABILITY) {
+					int span = Math.min(MAX_SPAN, size - 1 - i);
+					method.addEdge(nodes.get(i), nodes.get(i + 2 + random.nextInt(span - 1)));
+				}
+			}
+		}
+		// Backward edges, which neither enter the head nor leave the tail
+		if (shape == Shape.LOOPING || shape == Shape.MIXED) {
+			for (int i = 1; i + 1 < size; i++) {
+				if (random.nextDouble() < LOOP_PROBABILITY) {
+					int span = Math.min(MAX_SPAN, i);
+					method.addEdge(nodes.get(i), nodes.get(i + 1 - span + random.nextInt(span)));
+				}
+			}
+		}
+	}
+
+	// Adds a target to a call in the caller, making a random node other than
+	// the head and tail a call if there are none
+	private void addCall(SyntheticMethod caller, SyntheticMethod callee, Random random) {
+		List<SyntheticNode> calls = new ArrayList<SyntheticNode>();
+		for (SyntheticNode node : caller) {
+			if (node.isCall()) {
+				if (node.getTargets().contains(callee)) {
+					return;
+				}
+				calls.add(node);
+			}
+		}
+		if (calls.isEmpty()) {
+			SyntheticNode node = caller.getNodes().get(1 + random.nextInt(caller.size() - 2));
+			node.setTargets(new ArrayList<SyntheticMethod>(1));
+			calls.add(node);
+		}
+		calls.get(random.nextInt(calls.size())).getTargets().add(callee);
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2013 Rohan Padhye
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package vasco.synthetic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link SyntheticProgramGenerator}.
+ *
+ * @author Rohan Padhye
+ */
+public class SyntheticProgramGeneratorTest {
+
+	@Test
+	public void testSameSeedGeneratesSameProgram() {
+		for (SyntheticProgramGenerator.Shape shape : SyntheticProgramGenerator.Shape.values()) {
+			SyntheticProgramGenerator generator = new SyntheticProgramGenerator();
+			generator.setMethodCount(40);
+			generator.setShape(shape);
+			generator.setFanOut(3);
+			generator.setSccSize(4);
+			generator.setCallDensity(0.3);
+			generator.setSeed(42);
+			String first = describe(generator.generate());
+			String second = describe(generator.generate());
+			assertEquals(shape.toString(), first, second);
+
+			// A fresh generator with the same settings agrees too
+			SyntheticProgramGenerator other = new SyntheticProgramGenerator();
+			other.setMethodCount(40);
+			other.setShape(shape);
+			other.setFanOut(3);
+			other.setSccSize(4);
+			other.setCallDensity(0.3);
+			other.setSeed(42);
+			assertEquals(shape.toString(), first, describe(other.generate()));
+
+			generator.setSeed(43);
+			assertFalse(shape.toString(), first.equals(describe(generator.generate())));
+		}
+	}
+
+	// Returns a description of the methods, edges and calls of a program
+	private static String describe(SyntheticProgram program) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("entry ").append(program.getEntryPoints()).append('\n');
+		for (SyntheticMethod method : program.getMethods()) {
+			sb.append(method).append(" tails ").append(method.getTails()).append('\n');
+			for (SyntheticNode node : method) {
+				sb.append("  ").append(node).append(" -> ").append(method.getSuccsOf(node));
+				if (node.isCall()) {
+					sb.append(" calls ").append(node.getTargets());
+				}
+				sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+}
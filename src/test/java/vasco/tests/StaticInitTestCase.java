@@ -0,0 +1,63 @@
+package vasco.tests;
+
+public class StaticInitTestCase {
+
+	interface Shape {
+		void draw();
+	}
+
+	static class Circle implements Shape {
+		public void draw() { }
+	}
+
+	static class Square implements Shape {
+		public void draw() { }
+	}
+
+	static class Triangle implements Shape {
+		public void draw() { }
+	}
+
+	static class Canvas {
+		static Shape shape;
+		static { shape = new Circle(); }
+	}
+
+	static class Registry {
+		static Shape last;
+	}
+
+	static void drawCanvas() {
+		Canvas.shape.draw();
+	}
+
+	static void paint(Shape s) {
+		Canvas.shape = s;
+	}
+
+	static void drawLast() {
+		Registry.last.draw();
+	}
+
+	static void register(Shape s) {
+		Registry.last = s;
+	}
+
+	public static void main(String[] args) {
+		if (args.length > 0) {
+			drawCanvas();
+		} else {
+			paint(new Square());
+		}
+
+		if (args.length > 1) {
+			drawLast();
+		} else {
+			register(new Triangle());
+		}
+
+		drawLast();
+		drawCanvas();
+	}
+
+}